@@ -0,0 +1,62 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.benchmark;
+
+import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngine;
+import static org.apache.uima.fit.util.JCasUtil.select;
+import static org.apache.uima.fit.util.JCasUtil.selectCovered;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import de.tudarmstadt.ukp.dkpro.core.snowball.SnowballStemmer;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.reader.NERReader;
+
+/**
+ * A fixture of the benchmarks: a CoNLL file read by the NERReader and stemmed like in the NER pipeline, with its
+ * sentences and their tokens.
+ */
+final class BenchmarkCorpus {
+
+    /**
+     * The bundled fixtures, as values of the file parameters of the benchmarks
+     */
+    static final String ENGLISH = "src/main/resources/ner/ner_eng.dev";
+    static final String GERMAN = "src/main/resources/ner/ner_deu.dev";
+
+    final JCas jCas;
+    final List<Sentence> sentences = new ArrayList<>();
+    final List<List<Token>> tokens = new ArrayList<>();
+    final int tokenCount;
+
+    BenchmarkCorpus(String file) throws IOException, UIMAException {
+        jCas = JCasFactory.createJCas();
+        jCas.createView(NERReader.CONLL_VIEW).setDocumentText(
+                new String(Files.readAllBytes(Paths.get(file)), Charset.defaultCharset()));
+        createEngine(NERReader.class).process(jCas);
+        createEngine(SnowballStemmer.class, SnowballStemmer.PARAM_LANGUAGE, getLanguage(file)).process(jCas);
+        int count = 0;
+        for (Sentence sentence : select(jCas, Sentence.class)) {
+            List<Token> sentenceTokens = selectCovered(jCas, Token.class, sentence);
+            sentences.add(sentence);
+            tokens.add(sentenceTokens);
+            count += sentenceTokens.size();
+        }
+        tokenCount = count;
+    }
+
+    /**
+     * @return the language of the stemmer for the fixture
+     */
+    static String getLanguage(String file) {
+        return file.contains("deu") ? "de" : "en";
+    }
+}
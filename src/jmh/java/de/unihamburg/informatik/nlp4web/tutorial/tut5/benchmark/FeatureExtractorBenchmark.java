@@ -0,0 +1,89 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.benchmark;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.cleartk.ml.Feature;
+import org.cleartk.ml.feature.extractor.FeatureExtractor1;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.annotator.NERAnnotator;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.feature.FeatureExtractorFactory;
+
+/**
+ * Throughput of every feature extractor of the {@link FeatureExtractorFactory} on its own, one operation is the
+ * extraction of the features of all tokens of a sentence (like in the NERAnnotator). The "tokens" counter is the
+ * number of tokens per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FeatureExtractorBenchmark {
+
+    @Param({BenchmarkCorpus.ENGLISH, BenchmarkCorpus.GERMAN})
+    public String file;
+
+    /**
+     * the name of the factory method creating the extractor
+     */
+    @Param({"createTokenTypePathExtractors", "createTokenFeatureExtractors", "createTokenContextExtractors",
+            "createNameListExtractors", "createCityListExtractors", "createCountryListExtractors",
+            "createMiscListExtractors", "createOrgListExtractors", "createLocListExtractors",
+            "createGazetteerSpanExtractors", "createTokenSurfaceExtractors"})
+    public String factory;
+
+    private BenchmarkCorpus corpus;
+    private List<FeatureExtractor1<Token>> extractors;
+    private int next = 0;
+
+    /**
+     * Counts the tokens processed, reported as rate next to the operations
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Tokens {
+        public long tokens;
+    }
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        corpus = new BenchmarkCorpus(file);
+        FeatureExtractor1<Token> extractor = (FeatureExtractor1<Token>) FeatureExtractorFactory.class
+                .getMethod(factory).invoke(null);
+        extractors = Collections.singletonList(extractor);
+    }
+
+    @Benchmark
+    public void extractSentence(Tokens tokens, Blackhole blackhole) throws Exception {
+        int s = next;
+        next = (next + 1) % corpus.sentences.size();
+        Sentence sentence = corpus.sentences.get(s);
+        List<Token> sentenceTokens = corpus.tokens.get(s);
+        List<List<List<Feature>>> sentenceFeatures = NERAnnotator.extractSentenceFeatures(extractors, corpus.jCas,
+                sentence, sentenceTokens);
+        for (int t = 0; t < sentenceTokens.size(); ++t)
+            blackhole.consume(NERAnnotator.extractTokenFeatures(extractors.get(0), sentenceFeatures.get(0),
+                    corpus.jCas, sentence, sentenceTokens.get(t), t));
+        tokens.tokens += sentenceTokens.size();
+    }
+}
@@ -0,0 +1,64 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.cleartk.ml.Feature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.feature.NEListExtractor;
+
+/**
+ * Throughput of {@link NEListExtractor#apply(Feature)}, one operation is the lookup of one token of the fixture (the
+ * tokens are taken in the order of the fixture).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NEListExtractorBenchmark {
+
+    @Param({BenchmarkCorpus.ENGLISH, BenchmarkCorpus.GERMAN})
+    public String file;
+
+    @Param({"src/main/resources/ner/eng_LOC.txt", "src/main/resources/ner/firstNames.txt"})
+    public String list;
+
+    private NEListExtractor extractor;
+    private Feature[] features;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkCorpus corpus = new BenchmarkCorpus(file);
+        extractor = new NEListExtractor(list, "list");
+        // the covered texts of the tokens, like the CoveredTextExtractor of the list extractors produces them
+        List<Feature> tokenFeatures = new ArrayList<>(corpus.tokenCount);
+        for (List<Token> sentenceTokens : corpus.tokens)
+            for (Token token : sentenceTokens)
+                tokenFeatures.add(new Feature(null, token.getCoveredText()));
+        features = tokenFeatures.toArray(new Feature[0]);
+    }
+
+    @Benchmark
+    public List<Feature> apply() {
+        Feature feature = features[next];
+        next = next + 1 == features.length ? 0 : next + 1;
+        return extractor.apply(feature);
+    }
+}
@@ -0,0 +1,141 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.benchmark;
+
+import static org.apache.uima.fit.util.JCasUtil.selectCovered;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.cleartk.ml.Feature;
+import org.cleartk.ml.Instance;
+import org.cleartk.ml.SequenceClassifier;
+import org.cleartk.ml.crfsuite.CrfSuiteStringOutcomeDataWriter;
+import org.cleartk.ml.feature.extractor.FeatureExtractor1;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.annotator.NERAnnotator;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.classifier.ViterbiCrfClassifierBuilder;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.feature.FeatureExtractorFactory;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.type.NEIOBAnnotation;
+
+/**
+ * Throughput of the two steps of the NERAnnotator per sentence: {@link #extractSentence} applies all feature
+ * extractors on the tokens of a sentence, {@link #classifySentence} tags the extracted features of a sentence with
+ * the CRF (in the JVM, like the ViterbiCrfClassifierFactory). The "tokens" counter is the number of tokens per second.
+ * <p>
+ * The CRF is trained on the fixture itself (once, in target/jmh), the scores are meaningless but the model has the
+ * size of a real one.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NERAnnotatorBenchmark {
+
+    private static final String MODEL_DIRECTORY = "target/jmh/model-";
+
+    @Param({BenchmarkCorpus.ENGLISH, BenchmarkCorpus.GERMAN})
+    public String file;
+
+    private BenchmarkCorpus corpus;
+    private List<FeatureExtractor1<Token>> extractors;
+    private List<List<List<Feature>>> features;
+    private SequenceClassifier<String> classifier;
+    private int next = 0;
+
+    /**
+     * Counts the tokens processed, reported as rate next to the operations
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Tokens {
+        public long tokens;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        corpus = new BenchmarkCorpus(file);
+        extractors = FeatureExtractorFactory.createAllFeatureExtractors();
+        features = new ArrayList<>(corpus.sentences.size());
+        for (int s = 0; s < corpus.sentences.size(); ++s)
+            features.add(extract(s));
+
+        File modelDirectory = new File(MODEL_DIRECTORY + new File(file).getName());
+        if (!new File(modelDirectory, "model.jar").isFile())
+            train(modelDirectory);
+        classifier = new ViterbiCrfClassifierBuilder().loadClassifierFromTrainingDirectory(modelDirectory);
+    }
+
+    /**
+     * Trains a CRF on the gold values of the fixture
+     */
+    private void train(File modelDirectory) throws Exception {
+        modelDirectory.mkdirs();
+        CrfSuiteStringOutcomeDataWriter dataWriter = new CrfSuiteStringOutcomeDataWriter(modelDirectory);
+        for (int s = 0; s < corpus.sentences.size(); ++s) {
+            List<Instance<String>> instances = new ArrayList<>();
+            List<Token> sentenceTokens = corpus.tokens.get(s);
+            for (int t = 0; t < sentenceTokens.size(); ++t) {
+                NEIOBAnnotation gold = selectCovered(corpus.jCas, NEIOBAnnotation.class, sentenceTokens.get(t)).get(0);
+                instances.add(new Instance<>(gold.getGoldValue(), features.get(s).get(t)));
+            }
+            dataWriter.write(instances);
+        }
+        dataWriter.finish();
+        org.cleartk.ml.jar.Train.main(modelDirectory.getPath());
+    }
+
+    private List<List<Feature>> extract(int s) throws Exception {
+        Sentence sentence = corpus.sentences.get(s);
+        List<Token> sentenceTokens = corpus.tokens.get(s);
+        List<List<List<Feature>>> sentenceFeatures = NERAnnotator.extractSentenceFeatures(extractors, corpus.jCas,
+                sentence, sentenceTokens);
+        List<List<Feature>> tokenFeatures = new ArrayList<>(sentenceTokens.size());
+        for (int t = 0; t < sentenceTokens.size(); ++t) {
+            List<Feature> instanceFeatures = new ArrayList<>();
+            for (int e = 0; e < extractors.size(); ++e)
+                instanceFeatures.addAll(NERAnnotator.extractTokenFeatures(extractors.get(e), sentenceFeatures.get(e),
+                        corpus.jCas, sentence, sentenceTokens.get(t), t));
+            tokenFeatures.add(instanceFeatures);
+        }
+        return tokenFeatures;
+    }
+
+    private int nextSentence() {
+        int s = next;
+        next = (next + 1) % corpus.sentences.size();
+        return s;
+    }
+
+    @Benchmark
+    public void extractSentence(Tokens tokens, Blackhole blackhole) throws Exception {
+        int s = nextSentence();
+        blackhole.consume(extract(s));
+        tokens.tokens += corpus.tokens.get(s).size();
+    }
+
+    @Benchmark
+    public void classifySentence(Tokens tokens, Blackhole blackhole) throws Exception {
+        int s = nextSentence();
+        blackhole.consume(classifier.classify(features.get(s)));
+        tokens.tokens += corpus.tokens.get(s).size();
+    }
+}
@@ -0,0 +1,122 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.benchmark;
+
+import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngine;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.reader.ConllLineScanner;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.reader.NERReader;
+
+/**
+ * Throughput of reading CoNLL files. The "bytes" counter is the number of characters read per second, divided by
+ * 10^6 it is the throughput in MB/s (the corpora are nearly pure ASCII).
+ * <p>
+ * {@link #splitColumns} parses like NERReader did before (regex splits and StringBuffers), {@link #scanColumns}
+ * parses with the {@link ConllLineScanner} and {@link #nerReader} runs the complete NERReader on a CAS.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NERReaderBenchmark {
+
+    @Param({"src/main/resources/ner/ner_eng.train", "src/main/resources/ner/ner_deu.dev"})
+    public String file;
+
+    private String text;
+    private AnalysisEngine reader;
+    private JCas jCas;
+
+    /**
+     * Counts the characters read, reported as rate next to the operations
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Bytes {
+        public long bytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, UIMAException {
+        text = new String(Files.readAllBytes(Paths.get(file)), Charset.defaultCharset());
+        reader = createEngine(NERReader.class);
+        jCas = JCasFactory.createJCas();
+    }
+
+    @Setup(Level.Invocation)
+    public void resetCas() throws UIMAException {
+        jCas.reset();
+        jCas.createView(NERReader.CONLL_VIEW).setDocumentText(text);
+    }
+
+    @Benchmark
+    public void splitColumns(Bytes bytes, Blackhole blackhole) {
+        String tbText = text.charAt(0) != '\n' ? "\n" + text : text;
+        StringBuffer docText = new StringBuffer();
+        StringBuffer sentenceSb = new StringBuffer();
+        for (String line : tbText.split("(\r\n|\n)")) {
+            if (line.equals("")) {
+                docText.append("\n");
+                sentenceSb = new StringBuffer();
+            } else {
+                String[] tag = line.split("\\s");
+                String word = tag[0];
+                blackhole.consume(tag[tag.length - 1]);
+                docText.append(word);
+                sentenceSb.append(word + " ");
+                docText.append(" ");
+            }
+        }
+        blackhole.consume(sentenceSb);
+        blackhole.consume(docText.toString());
+        bytes.bytes += text.length();
+    }
+
+    @Benchmark
+    public void scanColumns(Bytes bytes, Blackhole blackhole) {
+        ConllLineScanner scanner = new ConllLineScanner(text);
+        StringBuilder docText = new StringBuilder(text.length() / 2);
+        while (scanner.next()) {
+            if (scanner.isEmpty()) {
+                docText.append('\n');
+            } else {
+                docText.append(text, scanner.getWordBegin(), scanner.getWordEnd()).append(' ');
+                blackhole.consume(scanner.getTag());
+            }
+        }
+        blackhole.consume(docText.toString());
+        bytes.bytes += text.length();
+    }
+
+    @Benchmark
+    public JCas nerReader(Bytes bytes) throws Exception {
+        reader.process(jCas);
+        bytes.bytes += text.length();
+        return jCas;
+    }
+}
@@ -0,0 +1,78 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.benchmark;
+
+import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngine;
+import static org.apache.uima.fit.util.JCasUtil.select;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.jcas.JCas;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.type.NEIOBAnnotation;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.writer.NERWriter;
+
+/**
+ * Throughput of the evaluation of the NERWriter, one operation is the evaluation of the complete fixture. The
+ * predictions are the gold values, except for every tenth token which is predicted as "O". The "tokens" counter is
+ * the number of tokens per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NERWriterBenchmark {
+
+    @Param({BenchmarkCorpus.ENGLISH, BenchmarkCorpus.GERMAN})
+    public String file;
+
+    private BenchmarkCorpus corpus;
+    private AnalysisEngine writer;
+
+    /**
+     * Counts the tokens processed, reported as rate next to the operations
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Tokens {
+        public long tokens;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        // the statistics are still computed and formatted, but not printed for every operation
+        java.util.logging.Logger.getLogger("").setLevel(java.util.logging.Level.WARNING);
+        corpus = new BenchmarkCorpus(file);
+        JCas jCas = corpus.jCas;
+        List<NEIOBAnnotation> golds = new ArrayList<>(select(jCas, NEIOBAnnotation.class));
+        for (int i = 0; i < golds.size(); ++i) {
+            NEIOBAnnotation gold = golds.get(i);
+            NEIOBAnnotation prediction = new NEIOBAnnotation(jCas, gold.getBegin(), gold.getEnd());
+            prediction.setPredictValue(i % 10 == 9 ? "O" : gold.getGoldValue());
+            prediction.addToIndexes();
+        }
+        writer = createEngine(NERWriter.class, NERWriter.PARAM_NULL_TYPE, "O");
+    }
+
+    @Benchmark
+    public void evaluate(Tokens tokens) throws Exception {
+        writer.process(corpus.jCas);
+        tokens.tokens += corpus.tokenCount;
+    }
+}
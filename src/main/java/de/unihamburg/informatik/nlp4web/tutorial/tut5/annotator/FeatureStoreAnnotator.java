@@ -0,0 +1,111 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.annotator;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.feature.FeatureExtractorFactory;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.feature.FeatureStore;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.gazetteer.GazetteerRegistry;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.type.NEIOBAnnotation;
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.fit.component.JCasAnnotator_ImplBase;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.cleartk.ml.Feature;
+import org.cleartk.ml.feature.extractor.FeatureExtractor1;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.apache.uima.fit.util.JCasUtil.select;
+import static org.apache.uima.fit.util.JCasUtil.selectCovered;
+
+/**
+ * Extracts the features of the training data like the {@link NERAnnotator}, but writes them into a
+ * {@link FeatureStore}, one column per feature extractor. The training data of any subset of the extractors can
+ * then be replayed from the store (e.g. for the feature ablation test) without extracting the features again. By
+ * default the store holds the extractors of the feature ablation, column i is extractor i of
+ * {@link FeatureExtractorFactory#createAblationFeatureExtractors()}.
+ */
+public class FeatureStoreAnnotator extends JCasAnnotator_ImplBase {
+
+    /**
+     * the XStream file of the feature extractors, all feature extractors of the feature ablation if not set
+     */
+    public static final String PARAM_FEATURE_EXTRACTION_FILE = NERAnnotator.PARAM_FEATURE_EXTRACTION_FILE;
+
+    @ConfigurationParameter(name = PARAM_FEATURE_EXTRACTION_FILE, mandatory = false)
+    private String featureExtractionFile = null;
+
+    public static final String PARAM_STORE_DIRECTORY = "StoreDirectory";
+
+    /**
+     * the directory of the feature store to write
+     */
+    @ConfigurationParameter(name = PARAM_STORE_DIRECTORY, mandatory = true)
+    private File storeDirectory = null;
+
+    private List<FeatureExtractor1<Token>> featureExtractors = null;
+    private FeatureStore.Writer writer = null;
+
+    @Override
+    public void initialize(UimaContext context) throws ResourceInitializationException {
+        super.initialize(context);
+        if (featureExtractionFile == null) {
+            try {
+                featureExtractors = FeatureExtractorFactory.createAblationFeatureExtractors();
+            } catch (IOException e) {
+                throw new ResourceInitializationException(e);
+            }
+        } else {
+            featureExtractors = NERAnnotator.loadFeatureExtractors(featureExtractionFile);
+        }
+        try {
+            writer = FeatureStore.create(storeDirectory, featureExtractors.size());
+        } catch (IOException e) {
+            throw new ResourceInitializationException(e);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public void process(JCas jCas) throws AnalysisEngineProcessException {
+        try {
+            for (Sentence sentence : select(jCas, Sentence.class)) {
+                List<Token> tokens = selectCovered(jCas, Token.class, sentence);
+                // all gazetteer lookups of the sentence see the same lists, even if they are reloaded meanwhile
+                try (GazetteerRegistry.Snapshot snapshot = GazetteerRegistry.pin()) {
+                    List<List<List<Feature>>> sentenceFeatures = NERAnnotator.extractSentenceFeatures(
+                            featureExtractors, jCas, sentence, tokens);
+                    int tokenIndex = 0;
+                    for (Token token : tokens) {
+                        List<List<Feature>> features = new ArrayList<>(featureExtractors.size());
+                        for (int e = 0; e < featureExtractors.size(); ++e)
+                            features.add(NERAnnotator.extractTokenFeatures(featureExtractors.get(e),
+                                    sentenceFeatures.get(e), jCas, sentence, token, tokenIndex));
+                        // the gold value of the token is the outcome
+                        NEIOBAnnotation goldNE = selectCovered(jCas, NEIOBAnnotation.class, token).get(0);
+                        writer.write(goldNE.getGoldValue(), features);
+                        ++tokenIndex;
+                    }
+                }
+                writer.endSequence();
+            }
+        } catch (IOException e) {
+            throw new AnalysisEngineProcessException(e);
+        }
+    }
+
+    @Override
+    public void collectionProcessComplete() throws AnalysisEngineProcessException {
+        super.collectionProcessComplete();
+        try {
+            writer.close();
+        } catch (IOException e) {
+            throw new AnalysisEngineProcessException(e);
+        }
+    }
+}
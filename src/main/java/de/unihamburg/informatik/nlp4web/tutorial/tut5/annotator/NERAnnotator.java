@@ -3,8 +3,17 @@ package de.unihamburg.informatik.nlp4web.tutorial.tut5.annotator;
 import com.thoughtworks.xstream.XStream;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.classifier.BatchSequenceClassifier;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.classifier.CrfSuiteBatchClassifierFactory;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.classifier.ViterbiCrfClassifierFactory;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.feature.FeatureCache;
 import de.unihamburg.informatik.nlp4web.tutorial.tut5.feature.FeatureExtractorFactory;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.feature.FeatureHasher;
 import de.unihamburg.informatik.nlp4web.tutorial.tut5.feature.NEListExtractor;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.feature.SentenceFeatureExtractor;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.gazetteer.GazetteerRegistry;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.metrics.PipelineMetrics;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.resource.Resources;
 import de.unihamburg.informatik.nlp4web.tutorial.tut5.type.NEIOBAnnotation;
 import de.unihamburg.informatik.nlp4web.tutorial.tut5.xml.XStreamFactory;
 import org.apache.uima.UimaContext;
@@ -13,9 +22,12 @@ import org.apache.uima.fit.descriptor.ConfigurationParameter;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.resource.ResourceInitializationException;
+import org.cleartk.ml.CleartkProcessingException;
 import org.cleartk.ml.CleartkSequenceAnnotator;
+import org.cleartk.ml.Feature;
 import org.cleartk.ml.Instance;
 import org.cleartk.ml.feature.extractor.CleartkExtractor;
+import org.cleartk.ml.feature.extractor.CleartkExtractorException;
 import org.cleartk.ml.feature.extractor.CoveredTextExtractor;
 import org.cleartk.ml.feature.extractor.FeatureExtractor1;
 import org.cleartk.ml.feature.extractor.TypePathExtractor;
@@ -23,8 +35,15 @@ import org.cleartk.ml.feature.function.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.apache.uima.fit.util.JCasUtil.select;
 import static org.apache.uima.fit.util.JCasUtil.selectCovered;
@@ -41,53 +60,336 @@ public class NERAnnotator extends CleartkSequenceAnnotator<String> {
     @ConfigurationParameter(name = PARAM_FEATURE_EXTRACTION_FILE, mandatory = false)
     private String featureExtractionFile = null;
 
+    public static final String PARAM_EXTRACTION_THREADS = "ExtractionThreads";
+
+    /**
+     * number of threads extracting the features of the sentences concurrently. The instances are still written or
+     * classified in the order of the sentences. Values below 2 extract on the calling thread.
+     */
+    @ConfigurationParameter(name = PARAM_EXTRACTION_THREADS, mandatory = false, defaultValue = "1")
+    private int extractionThreads = 1;
+
+    public static final String PARAM_CLASSIFICATION_BATCH_SIZE = "ClassificationBatchSize";
+
+    /**
+     * number of sentences classified in one call of a {@link BatchSequenceClassifier} (e.g. one run of crfsuite, see
+     * {@link CrfSuiteBatchClassifierFactory}). Values below 1 classify all sentences of a CAS at once.
+     */
+    @ConfigurationParameter(name = PARAM_CLASSIFICATION_BATCH_SIZE, mandatory = false, defaultValue = "1")
+    private int classificationBatchSize = 1;
+
+    public static final String PARAM_FEATURE_HASH_BITS = "FeatureHashBits";
+
+    /**
+     * if positive, the features are hashed to 2^bits indices (see {@link FeatureHasher}), which bounds the size of the
+     * feature dictionary and the model. Training and classification must use the same number of bits.
+     */
+    @ConfigurationParameter(name = PARAM_FEATURE_HASH_BITS, mandatory = false, defaultValue = "0")
+    private int featureHashBits = 0;
+
+    public static final String PARAM_FEATURE_CACHE_DIRECTORY = "FeatureCacheDirectory";
+
+    /**
+     * the directory of the {@link FeatureCache} of the training instances, if not set no cache is used
+     */
+    @ConfigurationParameter(name = PARAM_FEATURE_CACHE_DIRECTORY, mandatory = false)
+    private File featureCacheDirectory = null;
+
+    public static final String PARAM_FEATURE_CACHE_KEY = "FeatureCacheKey";
+
+    /**
+     * the key of the training instances in the feature cache (see {@link FeatureCache#getKey}). If the cache contains
+     * the key, the cached instances are written to the data writer and the CASes are ignored. Otherwise the extracted
+     * instances are added to the cache when the collection is complete.
+     */
+    @ConfigurationParameter(name = PARAM_FEATURE_CACHE_KEY, mandatory = false)
+    private String featureCacheKey = null;
+
+    public static final String PARAM_METRICS_NAME = "MetricsName";
+
+    /**
+     * the name of the {@link PipelineMetrics} the annotator records the extraction of the sentences, the time of every
+     * feature extractor and the classification of the batches in, if not set nothing is recorded
+     */
+    @ConfigurationParameter(name = PARAM_METRICS_NAME, mandatory = false)
+    private String metricsName = null;
+
+    /**
+     * maximum number of sentences per thread extracted ahead of the writer/classifier
+     */
+    private static final int SENTENCES_IN_FLIGHT_PER_THREAD = 16;
+
     private List<FeatureExtractor1<Token>> featureExtractors = new ArrayList<>();
 
-    @SuppressWarnings("unchecked")
+    private FeatureHasher featureHasher = null;
+
+    private ExecutorService extractionExecutor = null;
+
+    private FeatureCache.Writer featureCacheWriter = null;
+
+    private PipelineMetrics.Stage extractionStage = null;
+    private PipelineMetrics.Stage classificationStage = null;
+    /**
+     * the stage of every feature extractor, null if no metrics are recorded
+     */
+    private PipelineMetrics.Stage[] extractorStages = null;
+
+    /**
+     * true if the training instances were replayed from the feature cache
+     */
+    private boolean cached = false;
+
     @Override
     public void initialize(UimaContext context) throws ResourceInitializationException {
         super.initialize(context);
+        if (this.isTraining() && featureCacheDirectory != null && featureCacheKey != null) {
+            FeatureCache featureCache = new FeatureCache(featureCacheDirectory);
+            try {
+                if (featureCache.contains(featureCacheKey)) {
+                    featureCache.replay(featureCacheKey, this.dataWriter);
+                    cached = true;
+                } else {
+                    featureCacheWriter = featureCache.create(featureCacheKey);
+                }
+            } catch (IOException | CleartkProcessingException e) {
+                throw new ResourceInitializationException(e);
+            }
+        }
+        // the cached instances need no feature extractors
+        if (cached)
+            return;
         // instantiate and add feature extractors
-        if (featureExtractionFile == null) {
+        featureExtractors = loadFeatureExtractors(featureExtractionFile);
+        if (metricsName != null) {
+            PipelineMetrics metrics = PipelineMetrics.get(metricsName);
+            extractionStage = metrics.getStage("NERAnnotator.extraction");
+            classificationStage = metrics.getStage("NERAnnotator.classification");
+            extractorStages = new PipelineMetrics.Stage[featureExtractors.size()];
+            for (int e = 0; e < featureExtractors.size(); ++e)
+                extractorStages[e] = metrics.getStage(
+                        "NERAnnotator.extractor." + e + "." + featureExtractors.get(e).getClass().getSimpleName());
+        }
+        if (featureHashBits > 0)
+            featureHasher = new FeatureHasher(featureHashBits);
+        if (extractionThreads > 1)
+            extractionExecutor = Executors.newFixedThreadPool(extractionThreads, runnable -> {
+                Thread thread = new Thread(runnable, "NERAnnotator-extraction");
+                thread.setDaemon(true);
+                return thread;
+            });
+    }
+
+    @Override
+    public void collectionProcessComplete() throws AnalysisEngineProcessException {
+        super.collectionProcessComplete();
+        if (extractionExecutor != null) {
+            extractionExecutor.shutdown();
+            extractionExecutor = null;
+        }
+        if (featureCacheWriter != null) {
             try {
-                featureExtractors = FeatureExtractorFactory.createAllFeatureExtractors();
+                featureCacheWriter.commit();
+            } catch (IOException e) {
+                throw new AnalysisEngineProcessException(e);
+            } finally {
+                featureCacheWriter = null;
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (extractionExecutor != null) {
+            extractionExecutor.shutdownNow();
+            extractionExecutor = null;
+        }
+        if (featureCacheWriter != null) {
+            try {
+                featureCacheWriter.close();
             } catch (IOException e) {
                 e.printStackTrace();
             }
-        } else {
-            // load the settings from a file
-            // initialize the XStream if a xml file is given:
-            XStream xstream = XStreamFactory.createXStream();
-            featureExtractors = (List<FeatureExtractor1<Token>>) xstream.fromXML(new File(featureExtractionFile));
+            featureCacheWriter = null;
         }
+        // the last annotator of a shared classifier drops it
+        if (this.classifier != null)
+            ViterbiCrfClassifierFactory.release(this.classifier);
+        super.destroy();
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public void process(JCas jCas) throws AnalysisEngineProcessException {
+        if (cached)
+            return;
+        if (extractionExecutor != null) {
+            processParallel(jCas);
+            return;
+        }
+        // the sentences waiting for classification
+        List<List<Token>> pendingTokens = new ArrayList<>();
+        List<List<Instance<String>>> pendingInstances = new ArrayList<>();
         //iterate over all sentences in the document (represented by the JCas instance)
         for (Sentence sentence : select(jCas, Sentence.class)) {
-
-            // list of instances -> instance is just a list of features represented by (in this case by T=) String
-            List<Instance<String>> instances = new ArrayList<>();
-
             // iterate over all tokens in the sentence
             List<Token> tokensInSentence = selectCovered(jCas, Token.class, sentence);
+            List<Instance<String>> instances = extractInstances(jCas, sentence, tokensInSentence);
+
+            // TRAINING -> serialize instances (features of tokens) for later classification
+            if (this.isTraining())
+                write(instances);
+            else {
+                // CLASSIFYING -> classify the NE annotations for the tokens based the (before) gathered features of
+                // the tokens(= instances), a batch of sentences at once
+                pendingTokens.add(tokensInSentence);
+                pendingInstances.add(instances);
+                if (classificationBatchSize > 0 && pendingInstances.size() >= classificationBatchSize) {
+                    annotate(jCas, pendingTokens, classifyBatch(pendingInstances));
+                    pendingTokens.clear();
+                    pendingInstances.clear();
+                }
+            }
+        }
+        if (!pendingInstances.isEmpty())
+            annotate(jCas, pendingTokens, classifyBatch(pendingInstances));
+    }
+
+    /**
+     * Extracts the instances of the sentences on the extraction threads while the calling thread writes or classifies
+     * them in the order of the sentences. The CAS is only read during extraction, the predicted annotations are added
+     * after all sentences have been extracted.
+     */
+    private void processParallel(JCas jCas) throws AnalysisEngineProcessException {
+        List<Sentence> sentences = new ArrayList<>(select(jCas, Sentence.class));
+        List<List<Token>> tokens = new ArrayList<>(sentences.size());
+        for (Sentence sentence : sentences)
+            tokens.add(selectCovered(jCas, Token.class, sentence));
+        List<List<String>> predictions = new ArrayList<>(this.isTraining() ? 0 : sentences.size());
+        List<List<Instance<String>>> pendingInstances = new ArrayList<>();
+
+        int maxInFlight = extractionThreads * SENTENCES_IN_FLIGHT_PER_THREAD;
+        Deque<Future<List<Instance<String>>>> inFlight = new ArrayDeque<>(maxInFlight);
+        int submitted = 0;
+        try {
+            for (int done = 0; done < sentences.size(); ++done) {
+                while (submitted < sentences.size() && inFlight.size() < maxInFlight) {
+                    Sentence sentence = sentences.get(submitted);
+                    List<Token> tokensInSentence = tokens.get(submitted);
+                    inFlight.add(extractionExecutor.submit(() -> extractInstances(jCas, sentence, tokensInSentence)));
+                    ++submitted;
+                }
+                List<Instance<String>> instances = inFlight.poll().get();
+                if (this.isTraining())
+                    write(instances);
+                else {
+                    pendingInstances.add(instances);
+                    if (classificationBatchSize > 0 && pendingInstances.size() >= classificationBatchSize) {
+                        predictions.addAll(classifyBatch(pendingInstances));
+                        pendingInstances.clear();
+                    }
+                }
+            }
+            if (!pendingInstances.isEmpty())
+                predictions.addAll(classifyBatch(pendingInstances));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AnalysisEngineProcessException(e);
+        } catch (ExecutionException e) {
+            throw new AnalysisEngineProcessException(e.getCause());
+        } finally {
+            for (Future<List<Instance<String>>> future : inFlight)
+                future.cancel(true);
+        }
+
+        if (!this.isTraining())
+            annotate(jCas, tokens, predictions);
+    }
+
+    /**
+     * Writes the training instances of a sentence to the data writer and the feature cache
+     */
+    private void write(List<Instance<String>> instances) throws AnalysisEngineProcessException {
+        this.dataWriter.write(instances);
+        if (featureCacheWriter != null) {
+            try {
+                featureCacheWriter.write(instances);
+            } catch (IOException e) {
+                throw new AnalysisEngineProcessException(e);
+            }
+        }
+    }
+
+    /**
+     * Classifies the instances of several sentences, in one call if the classifier supports batches.
+     *
+     * @return the predicted outcomes per sentence
+     */
+    @SuppressWarnings("unchecked")
+    private List<List<String>> classifyBatch(List<List<Instance<String>>> batch) throws CleartkProcessingException {
+        long start = classificationStage == null ? 0 : System.nanoTime();
+        long allocated = classificationStage == null ? 0 : PipelineMetrics.getAllocatedBytes();
+        List<List<String>> predictions = new ArrayList<>(batch.size());
+        if (batch.size() > 1 && this.classifier instanceof BatchSequenceClassifier) {
+            List<List<List<Feature>>> sequences = new ArrayList<>(batch.size());
+            for (List<Instance<String>> instances : batch) {
+                List<List<Feature>> features = new ArrayList<>(instances.size());
+                for (Instance<String> instance : instances)
+                    features.add(instance.getFeatures());
+                sequences.add(features);
+            }
+            predictions.addAll(((BatchSequenceClassifier<String>) this.classifier).classifySequences(sequences));
+        } else {
+            for (List<Instance<String>> instances : batch)
+                predictions.add(this.classify(instances));
+        }
+        if (classificationStage != null)
+            classificationStage.record(System.nanoTime() - start, PipelineMetrics.getAllocatedBytes() - allocated);
+        return predictions;
+    }
+
+    /**
+     * Applies all feature extractors on the tokens of the sentence, only reads the CAS.
+     *
+     * @return one instance per token, with the gold value as outcome when training
+     */
+    @SuppressWarnings("try")
+    private List<Instance<String>> extractInstances(JCas jCas, Sentence sentence, List<Token> tokensInSentence)
+            throws CleartkExtractorException {
+        // the time of every extractor is summed up over the tokens and recorded once per sentence
+        long[] extractorNanos = extractorStages == null ? null : new long[this.featureExtractors.size()];
+        long start = extractorStages == null ? 0 : System.nanoTime();
+        long allocated = extractorStages == null ? 0 : PipelineMetrics.getAllocatedBytes();
+
+        // list of instances -> instance is just a list of features represented by (in this case by T=) String
+        List<Instance<String>> instances = new ArrayList<>(tokensInSentence.size());
+
+        // all gazetteer lookups of the sentence see the same lists, even if they are reloaded meanwhile
+        try (GazetteerRegistry.Snapshot snapshot = GazetteerRegistry.pin()) {
+            // sentence level extractors handle all tokens of the sentence in one pass
+            List<List<List<Feature>>> sentenceFeatures = new ArrayList<>(this.featureExtractors.size());
+            for (int e = 0; e < this.featureExtractors.size(); ++e) {
+                long extractorStart = extractorNanos == null ? 0 : System.nanoTime();
+                sentenceFeatures.add(extractSentenceFeatures(this.featureExtractors.get(e), jCas, sentence,
+                        tokensInSentence));
+                if (extractorNanos != null)
+                    extractorNanos[e] += System.nanoTime() - extractorStart;
+            }
+
+            int tokenIndex = 0;
             for (Token token : tokensInSentence) {
 
                 //the features of the token
-                Instance<String> instance = new Instance<>();
+                List<Feature> features = new ArrayList<>();
 
                 // apply all feature extractors on the token
-                for (FeatureExtractor1<Token> extractor : this.featureExtractors) {
-                    // special handling of ClearTkExtractors
-                    if (extractor instanceof CleartkExtractor) {
-                        instance.addAll(
-                                (((CleartkExtractor<Token, Token>) extractor).extractWithin(jCas, token, sentence)));
-                    } else {
-                        instance.addAll(extractor.extract(jCas, token));
-                    }
+                for (int e = 0; e < this.featureExtractors.size(); ++e) {
+                    long extractorStart = extractorNanos == null ? 0 : System.nanoTime();
+                    features.addAll(extractTokenFeatures(this.featureExtractors.get(e), sentenceFeatures.get(e), jCas,
+                            sentence, token, tokenIndex));
+                    if (extractorNanos != null)
+                        extractorNanos[e] += System.nanoTime() - extractorStart;
                 }
+                Instance<String> instance = new Instance<>(featureHasher == null ? features
+                        : featureHasher.hash(features));
 
                 // TRAINING
                 if (this.isTraining()) {
@@ -99,25 +401,103 @@ public class NERAnnotator extends CleartkSequenceAnnotator<String> {
 
                 // add the instance to the list
                 instances.add(instance);
+                ++tokenIndex;
             }
+        }
+        if (extractorNanos != null) {
+            // measured on the extracting thread, so the allocations of the extraction threads are counted too
+            extractionStage.record(System.nanoTime() - start, PipelineMetrics.getAllocatedBytes() - allocated);
+            for (int e = 0; e < extractorNanos.length; ++e)
+                extractorStages[e].record(extractorNanos[e], 0);
+        }
+        return instances;
+    }
 
-            // TRAINING -> serialize instances (features of tokens) for later classification
-            if (this.isTraining())
-                this.dataWriter.write(instances);
-            else {
-                // CLASSIFYING -> classify the NE annotations for the tokens based the (before) gathered features of
-                // the tokens(= instances)
-                List<String> namedEntities = this.classify(instances);
-                int i = 0;
-                for (Token token : tokensInSentence) {
-                    // create the NE annotation for the token
-                    NEIOBAnnotation namedEntity = new NEIOBAnnotation(jCas, token.getBegin(), token.getEnd());
-                    // set the predicted NE classification for the token
-                    namedEntity.setPredictValue(namedEntities.get(i++));
-                    // add annotation to JCas indexes
-                    namedEntity.addToIndexes();
-                }
+    /**
+     * @param featureExtractionFile the XStream file of the feature extractors (see {@link Resources}), null for all
+     *                              feature extractors
+     * @return the feature extractors
+     * @throws ResourceInitializationException if the file is not found or error while reading
+     */
+    @SuppressWarnings("unchecked")
+    static List<FeatureExtractor1<Token>> loadFeatureExtractors(String featureExtractionFile)
+            throws ResourceInitializationException {
+        if (featureExtractionFile == null) {
+            try {
+                return FeatureExtractorFactory.createAllFeatureExtractors();
+            } catch (IOException e) {
+                e.printStackTrace();
+                return new ArrayList<>();
+            }
+        }
+        // load the settings from a file
+        // initialize the XStream if a xml file is given:
+        XStream xstream = XStreamFactory.createXStream();
+        try (InputStream stream = Resources.open(featureExtractionFile)) {
+            return (List<FeatureExtractor1<Token>>) xstream.fromXML(stream);
+        } catch (IOException e) {
+            throw new ResourceInitializationException(e);
+        }
+    }
+
+    /**
+     * Applies the sentence level extractors on all tokens of the sentence in one pass.
+     *
+     * @return the features of every token per extractor, null for the token level extractors
+     */
+    public static List<List<List<Feature>>> extractSentenceFeatures(List<FeatureExtractor1<Token>> featureExtractors,
+                                                                    JCas jCas, Sentence sentence, List<Token> tokens)
+            throws CleartkExtractorException {
+        List<List<List<Feature>>> sentenceFeatures = new ArrayList<>(featureExtractors.size());
+        for (FeatureExtractor1<Token> extractor : featureExtractors)
+            sentenceFeatures.add(extractSentenceFeatures(extractor, jCas, sentence, tokens));
+        return sentenceFeatures;
+    }
+
+    /**
+     * @return the features of every token if the extractor is a sentence level extractor, otherwise null
+     */
+    public static List<List<Feature>> extractSentenceFeatures(FeatureExtractor1<Token> extractor, JCas jCas,
+                                                              Sentence sentence, List<Token> tokens)
+            throws CleartkExtractorException {
+        if (extractor instanceof SentenceFeatureExtractor)
+            return ((SentenceFeatureExtractor) extractor).extractSentence(jCas, sentence, tokens);
+        return null;
+    }
+
+    /**
+     * @param sentenceFeatures the features of the extractor for all tokens of the sentence if it is a sentence level
+     *                         extractor, otherwise null
+     * @return the features of the extractor for the token
+     */
+    @SuppressWarnings("unchecked")
+    public static List<Feature> extractTokenFeatures(FeatureExtractor1<Token> extractor,
+                                                     List<List<Feature>> sentenceFeatures, JCas jCas,
+                                                     Sentence sentence, Token token, int tokenIndex)
+            throws CleartkExtractorException {
+        if (sentenceFeatures != null)
+            return sentenceFeatures.get(tokenIndex);
+        // special handling of ClearTkExtractors
+        if (extractor instanceof CleartkExtractor)
+            return ((CleartkExtractor<Token, Token>) extractor).extractWithin(jCas, token, sentence);
+        return extractor.extract(jCas, token);
+    }
+
+    /**
+     * Adds the predicted NE annotations of the tokens of the sentences to the CAS
+     */
+    private void annotate(JCas jCas, List<List<Token>> tokens, List<List<String>> predictions) {
+        for (int s = 0; s < predictions.size(); ++s) {
+            List<String> namedEntities = predictions.get(s);
+            int i = 0;
+            for (Token token : tokens.get(s)) {
+                // create the NE annotation for the token
+                NEIOBAnnotation namedEntity = new NEIOBAnnotation(jCas, token.getBegin(), token.getEnd());
+                // set the predicted NE classification for the token
+                namedEntity.setPredictValue(namedEntities.get(i++));
+                // add annotation to JCas indexes
+                namedEntity.addToIndexes();
             }
         }
     }
-}
\ No newline at end of file
+}
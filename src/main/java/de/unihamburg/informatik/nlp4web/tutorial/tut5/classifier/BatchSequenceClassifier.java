@@ -0,0 +1,24 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.classifier;
+
+import java.util.List;
+
+import org.cleartk.ml.CleartkProcessingException;
+import org.cleartk.ml.Feature;
+import org.cleartk.ml.SequenceClassifier;
+
+/**
+ * Sequence classifier that tags many sequences (e.g. all sentences of a document) in one call, so the per call
+ * overhead of the classifier is paid once per batch instead of once per sentence.
+ *
+ * @param <OUTCOME_TYPE> the type of the outcomes
+ */
+public interface BatchSequenceClassifier<OUTCOME_TYPE> extends SequenceClassifier<OUTCOME_TYPE> {
+
+    /**
+     * @param sequences the features of the instances of every sequence
+     * @return the outcomes of every sequence, in the order of the sequences
+     * @throws CleartkProcessingException if the classification fails
+     */
+    List<List<OUTCOME_TYPE>> classifySequences(List<List<List<Feature>>> sequences)
+            throws CleartkProcessingException;
+}
@@ -0,0 +1,89 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.classifier;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.cleartk.ml.CleartkProcessingException;
+import org.cleartk.ml.Feature;
+import org.cleartk.ml.crfsuite.CrfSuiteWrapper;
+import org.cleartk.ml.encoder.features.FeaturesEncoder;
+import org.cleartk.ml.encoder.features.NameNumber;
+import org.cleartk.ml.encoder.outcome.OutcomeEncoder;
+import org.cleartk.ml.jar.SequenceClassifier_ImplBase;
+
+/**
+ * CRFsuite classifier tagging a whole batch of sequences with a single run of the crfsuite binary. The sequences are
+ * written into one feature file (separated by empty lines, exactly like the training data), the tags printed by
+ * crfsuite are split up again at the empty lines between the sequences.
+ */
+public class CrfSuiteBatchClassifier extends SequenceClassifier_ImplBase<List<NameNumber>, String, String>
+        implements BatchSequenceClassifier<String> {
+
+    private final File modelFile;
+    private final CrfSuiteWrapper wrapper;
+
+    public CrfSuiteBatchClassifier(FeaturesEncoder<List<NameNumber>> featuresEncoder,
+                                   OutcomeEncoder<String, String> outcomeEncoder, File modelFile) {
+        super(featuresEncoder, outcomeEncoder);
+        this.modelFile = modelFile;
+        this.wrapper = new CrfSuiteWrapper();
+    }
+
+    @Override
+    public List<String> classify(List<List<Feature>> features) throws CleartkProcessingException {
+        return classifySequences(Collections.singletonList(features)).get(0);
+    }
+
+    @Override
+    public List<List<String>> classifySequences(List<List<List<Feature>>> sequences)
+            throws CleartkProcessingException {
+        List<List<String>> outcomes = new ArrayList<>(sequences.size());
+        File featureFile = null;
+        try {
+            featureFile = File.createTempFile("features", ".crfsuite");
+            // crfsuite prints one tag per instance and an empty line between the sequences
+            int lines = -1;
+            try (BufferedWriter out = new BufferedWriter(new FileWriter(featureFile))) {
+                for (List<List<Feature>> sequence : sequences) {
+                    if (sequence.isEmpty())
+                        continue;
+                    if (lines >= 0)
+                        out.append("\n");
+                    ++lines;
+                    for (List<Feature> instance : sequence) {
+                        for (NameNumber nameNumber : this.featuresEncoder.encodeAll(instance)) {
+                            out.append(nameNumber.name);
+                            out.append("\t");
+                        }
+                        out.append("\n");
+                        ++lines;
+                    }
+                }
+            }
+            List<String> tags = lines > 0
+                    ? this.wrapper.classifyFeatures(featureFile, this.modelFile, lines)
+                    : Collections.<String>emptyList();
+
+            int line = 0;
+            for (List<List<Feature>> sequence : sequences) {
+                List<String> sequenceOutcomes = new ArrayList<>(sequence.size());
+                for (int i = 0; i < sequence.size(); ++i)
+                    sequenceOutcomes.add(this.outcomeEncoder.decode(tags.get(line++)));
+                if (!sequence.isEmpty())
+                    ++line; // the empty line after the sequence
+                outcomes.add(sequenceOutcomes);
+            }
+        } catch (IOException e) {
+            throw new CleartkProcessingException(e);
+        } finally {
+            if (featureFile != null)
+                featureFile.delete();
+        }
+        return outcomes;
+    }
+}
@@ -0,0 +1,58 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.classifier;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+
+import org.cleartk.ml.crfsuite.CrfSuiteStringOutcomeClassifierBuilder;
+import org.cleartk.ml.encoder.features.NameNumber;
+import org.cleartk.ml.jar.JarStreams;
+import org.cleartk.ml.jar.SequenceClassifierBuilder_ImplBase;
+
+/**
+ * Builds {@link CrfSuiteBatchClassifier}s from the model jars of the {@link CrfSuiteStringOutcomeClassifierBuilder}
+ * (same training data, same jar layout). Training is delegated to the CRFsuite builder.
+ */
+public class CrfSuiteBatchClassifierBuilder
+        extends SequenceClassifierBuilder_ImplBase<CrfSuiteBatchClassifier, List<NameNumber>, String, String> {
+
+    public static final String MODEL_NAME = "crfsuite.model";
+
+    private final CrfSuiteStringOutcomeClassifierBuilder crfSuiteBuilder = new CrfSuiteStringOutcomeClassifierBuilder();
+    private File modelFile = null;
+
+    @Override
+    public File getTrainingDataFile(File dir) {
+        return this.crfSuiteBuilder.getTrainingDataFile(dir);
+    }
+
+    @Override
+    public void trainClassifier(File dir, String... args) throws Exception {
+        this.crfSuiteBuilder.trainClassifier(dir, args);
+    }
+
+    @Override
+    protected void packageClassifier(File dir, JarOutputStream modelStream) throws IOException {
+        super.packageClassifier(dir, modelStream);
+        JarStreams.putNextJarEntry(modelStream, MODEL_NAME, new File(dir, MODEL_NAME));
+    }
+
+    @Override
+    protected void unpackageClassifier(JarInputStream modelStream) throws IOException {
+        super.unpackageClassifier(modelStream);
+        JarStreams.getNextJarEntry(modelStream, MODEL_NAME);
+        // the crfsuite binary needs the model as file
+        this.modelFile = File.createTempFile("model", ".crfsuite");
+        this.modelFile.deleteOnExit();
+        Files.copy(modelStream, this.modelFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Override
+    protected CrfSuiteBatchClassifier newClassifier() {
+        return new CrfSuiteBatchClassifier(this.featuresEncoder, this.outcomeEncoder, this.modelFile);
+    }
+}
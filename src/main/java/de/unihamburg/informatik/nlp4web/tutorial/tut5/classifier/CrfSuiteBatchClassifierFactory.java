@@ -0,0 +1,15 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.classifier;
+
+import org.cleartk.ml.SequenceClassifier;
+import org.cleartk.ml.jar.JarClassifierBuilder;
+
+/**
+ * Classifier factory loading CRFsuite model jars as {@link CrfSuiteBatchClassifier}.
+ */
+public class CrfSuiteBatchClassifierFactory extends CrfSuiteJarClassifierFactory {
+
+    @Override
+    protected JarClassifierBuilder<? extends SequenceClassifier<String>> newCrfSuiteBuilder() {
+        return new CrfSuiteBatchClassifierBuilder();
+    }
+}
@@ -0,0 +1,90 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.classifier;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.jar.JarInputStream;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.fit.component.initialize.ConfigurationParameterInitializer;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.fit.factory.initializable.Initializable;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.cleartk.ml.SequenceClassifier;
+import org.cleartk.ml.SequenceClassifierFactory;
+import org.cleartk.ml.crfsuite.CrfSuiteStringOutcomeClassifierBuilder;
+import org.cleartk.ml.jar.GenericJarClassifierFactory;
+import org.cleartk.ml.jar.JarClassifierBuilder;
+
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.resource.Resources;
+
+/**
+ * Classifier factory loading the CRFsuite model jars (built by {@link CrfSuiteStringOutcomeClassifierBuilder}) with
+ * another classifier builder. Use it as {@link org.cleartk.ml.CleartkSequenceAnnotator#PARAM_CLASSIFIER_FACTORY_CLASS_NAME}
+ * together with {@link GenericJarClassifierFactory#PARAM_CLASSIFIER_JAR_PATH}. Jars of other classifiers are loaded
+ * as usual.
+ */
+public abstract class CrfSuiteJarClassifierFactory implements SequenceClassifierFactory<String>, Initializable {
+
+    @ConfigurationParameter(name = GenericJarClassifierFactory.PARAM_CLASSIFIER_JAR_PATH, mandatory = true)
+    private String classifierJarPath;
+
+    @Override
+    public void initialize(UimaContext context) throws ResourceInitializationException {
+        ConfigurationParameterInitializer.initialize(this, context);
+    }
+
+    /**
+     * @return the path of the model jar, in the file system, the resource bundle, on the classpath or an URL
+     */
+    protected String getClassifierJarPath() {
+        return this.classifierJarPath;
+    }
+
+    /**
+     * @return the builder loading the CRFsuite model jars
+     */
+    protected abstract JarClassifierBuilder<? extends SequenceClassifier<String>> newCrfSuiteBuilder();
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public SequenceClassifier<String> createClassifier() throws IOException {
+        try (JarInputStream modelStream = new JarInputStream(new BufferedInputStream(openJar(this.classifierJarPath)))) {
+            JarClassifierBuilder<?> builder = JarClassifierBuilder.fromManifest(modelStream.getManifest());
+            if (builder instanceof CrfSuiteStringOutcomeClassifierBuilder)
+                builder = newCrfSuiteBuilder();
+            return (SequenceClassifier<String>) builder.loadClassifier(modelStream);
+        }
+    }
+
+    /**
+     * @return true if the model jar was built by the {@link CrfSuiteStringOutcomeClassifierBuilder}, i.e. it is loaded
+     * by the {@link #newCrfSuiteBuilder() CRFsuite builder}
+     * @throws IOException if error while reading the manifest of the jar
+     */
+    protected boolean isCrfSuiteJar() throws IOException {
+        try (JarInputStream modelStream = new JarInputStream(new BufferedInputStream(openJar(this.classifierJarPath)))) {
+            return JarClassifierBuilder.fromManifest(modelStream.getManifest())
+                    instanceof CrfSuiteStringOutcomeClassifierBuilder;
+        }
+    }
+
+    /**
+     * Opens the jar like the {@link GenericJarClassifierFactory}, from the file system, the resource bundle or the
+     * classpath (see {@link Resources}) or else from an URL
+     */
+    private static InputStream openJar(String classifierJarPath) throws IOException {
+        if (Resources.exists(classifierJarPath))
+            return Resources.open(classifierJarPath);
+        InputStream stream = CrfSuiteJarClassifierFactory.class.getResourceAsStream(classifierJarPath);
+        if (stream != null)
+            return stream;
+        try {
+            return new URL(classifierJarPath).openStream();
+        } catch (MalformedURLException e) {
+            return Resources.open(classifierJarPath);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.classifier;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The weights of a linear chain CRF trained by CRFsuite (crf1d model file), read once into primitive arrays.
+ * <p>
+ * Attribute names are mapped to their ids by an open addressing table, the state features of every attribute are
+ * stored compressed (the labels and weights of all attributes in two arrays, indexed by the offsets of the attributes)
+ * and the transition weights as dense label x label matrix.
+ */
+public final class CrfSuiteModel {
+
+    private static final int HEADER_SIZE = 48;
+    private static final int CHUNK_HEADER_SIZE = 12;
+    private static final int FEATURE_SIZE = 20;
+    private static final int FEATURE_STATE = 0;
+    private static final int FEATURE_TRANSITION = 1;
+
+    private final String[] labels;
+    private final String[] attributes;
+    // open addressing table of attribute ids (+1, 0 marks an empty slot)
+    private final int[] attributeTable;
+    private final int[] attributeHashes;
+    // the state features of attribute a are at stateOffsets[a] until stateOffsets[a + 1]
+    private final int[] stateOffsets;
+    private final int[] stateLabels;
+    private final double[] stateWeights;
+    // weight of the transition from label i to label j at i * labels.length + j
+    private final double[] transitions;
+
+    private CrfSuiteModel(String[] labels, String[] attributes, int[] stateOffsets, int[] stateLabels,
+                          double[] stateWeights, double[] transitions) {
+        this.labels = labels;
+        this.attributes = attributes;
+        this.stateOffsets = stateOffsets;
+        this.stateLabels = stateLabels;
+        this.stateWeights = stateWeights;
+        this.transitions = transitions;
+
+        this.attributeHashes = new int[attributes.length];
+        this.attributeTable = new int[Math.max(2, Integer.highestOneBit(Math.max(1, attributes.length)) << 2)];
+        int mask = this.attributeTable.length - 1;
+        for (int a = 0; a < attributes.length; ++a) {
+            int hash = hash(attributes[a], 0, attributes[a].length());
+            this.attributeHashes[a] = hash;
+            int slot = hash & mask;
+            while (this.attributeTable[slot] != 0)
+                slot = (slot + 1) & mask;
+            this.attributeTable[slot] = a + 1;
+        }
+    }
+
+    /**
+     * Reads a model file written by "crfsuite learn".
+     *
+     * @param stream the stream of the model file
+     * @return the model
+     * @throws IOException if error while reading or the stream contains no CRFsuite model
+     */
+    public static CrfSuiteModel read(InputStream stream) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1 << 16];
+        int read;
+        while ((read = stream.read(buffer)) > 0)
+            bytes.write(buffer, 0, read);
+        return read(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    /**
+     * Reads a model file written by "crfsuite learn".
+     *
+     * @param buffer the content of the model file
+     * @return the model
+     * @throws IOException if the buffer contains no CRFsuite model
+     */
+    public static CrfSuiteModel read(ByteBuffer buffer) throws IOException {
+        ByteBuffer model = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (model.remaining() < HEADER_SIZE || !"lCRF".equals(chunkId(model, 0)) || !"FOMC".equals(chunkId(model, 8)))
+            throw new IOException("No CRFsuite model");
+        int labelCount = model.getInt(20);
+        int attributeCount = model.getInt(24);
+        int featuresOffset = model.getInt(28);
+        String[] labels = readStrings(model, model.getInt(32), labelCount);
+        String[] attributes = readStrings(model, model.getInt(36), attributeCount);
+
+        if (!"FEAT".equals(chunkId(model, featuresOffset)))
+            throw new IOException("No features in the CRFsuite model");
+        int featureCount = model.getInt(featuresOffset + 8);
+        int first = featuresOffset + CHUNK_HEADER_SIZE;
+
+        double[] transitions = new double[labelCount * labelCount];
+        int[] stateOffsets = new int[attributeCount + 1];
+        for (int f = 0; f < featureCount; ++f) {
+            int position = first + f * FEATURE_SIZE;
+            if (model.getInt(position) == FEATURE_STATE)
+                ++stateOffsets[model.getInt(position + 4) + 1];
+        }
+        for (int a = 0; a < attributeCount; ++a)
+            stateOffsets[a + 1] += stateOffsets[a];
+        int[] stateLabels = new int[stateOffsets[attributeCount]];
+        double[] stateWeights = new double[stateOffsets[attributeCount]];
+        int[] fill = Arrays.copyOf(stateOffsets, attributeCount);
+        for (int f = 0; f < featureCount; ++f) {
+            int position = first + f * FEATURE_SIZE;
+            int type = model.getInt(position);
+            int source = model.getInt(position + 4);
+            int destination = model.getInt(position + 8);
+            double weight = model.getDouble(position + 12);
+            if (type == FEATURE_STATE) {
+                stateLabels[fill[source]] = destination;
+                stateWeights[fill[source]++] = weight;
+            } else if (type == FEATURE_TRANSITION) {
+                transitions[source * labelCount + destination] = weight;
+            }
+        }
+        return new CrfSuiteModel(labels, attributes, stateOffsets, stateLabels, stateWeights, transitions);
+    }
+
+    /**
+     * @param text  the text containing the attribute name
+     * @param begin the begin of the name in the text
+     * @param end   the end of the name in the text
+     * @return the id of the attribute or -1 if the model doesn't know the attribute
+     */
+    public int getAttributeId(CharSequence text, int begin, int end) {
+        int hash = hash(text, begin, end);
+        int mask = this.attributeTable.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = this.attributeTable[slot] - 1;
+            if (id < 0)
+                return -1;
+            if (this.attributeHashes[id] == hash && regionEquals(this.attributes[id], text, begin, end))
+                return id;
+        }
+    }
+
+    /**
+     * Adds the weighted state features of the attribute to the scores of the labels
+     *
+     * @param attribute the id of the attribute
+     * @param value     the value of the attribute
+     * @param scores    the scores of the labels
+     * @param offset    the index of the first label in the scores
+     */
+    public void addStateScores(int attribute, double value, double[] scores, int offset) {
+        for (int f = this.stateOffsets[attribute]; f < this.stateOffsets[attribute + 1]; ++f)
+            scores[offset + this.stateLabels[f]] += this.stateWeights[f] * value;
+    }
+
+    /**
+     * @param from the id of the previous label
+     * @param to   the id of the next label
+     * @return the weight of the transition
+     */
+    public double getTransition(int from, int to) {
+        return this.transitions[from * this.labels.length + to];
+    }
+
+    /**
+     * @return the number of labels
+     */
+    public int getLabelCount() {
+        return this.labels.length;
+    }
+
+    /**
+     * @param label the id of the label
+     * @return the label
+     */
+    public String getLabel(int label) {
+        return this.labels[label];
+    }
+
+    /**
+     * @return the number of attributes
+     */
+    public int getAttributeCount() {
+        return this.attributes.length;
+    }
+
+    @Override
+    public String toString() {
+        return "CrfSuiteModel(" + this.labels.length + " labels, " + this.attributes.length + " attributes, "
+                + this.stateLabels.length + " state features)";
+    }
+
+    private static String chunkId(ByteBuffer model, int position) {
+        byte[] id = new byte[4];
+        for (int i = 0; i < id.length; ++i)
+            id[i] = model.get(position + i);
+        return new String(id, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Reads the strings of a constant quark database (CQDB) by their ids, using its backward array.
+     */
+    private static String[] readStrings(ByteBuffer model, int offset, int count) throws IOException {
+        if (!"CQDB".equals(chunkId(model, offset)))
+            throw new IOException("No string database in the CRFsuite model");
+        int size = model.getInt(offset + 16);
+        int backwardOffset = model.getInt(offset + 20);
+        if (size != count)
+            throw new IOException("Corrupt string database in the CRFsuite model");
+        String[] strings = new String[count];
+        for (int id = 0; id < count; ++id) {
+            int record = offset + model.getInt(offset + backwardOffset + 4 * id);
+            int keySize = model.getInt(record + 4);
+            byte[] key = new byte[Math.max(0, keySize - 1)]; // without the terminating 0
+            for (int i = 0; i < key.length; ++i)
+                key[i] = model.get(record + 8 + i);
+            // crfsuite stores the bytes of the training data, which ClearTK writes in the platform encoding
+            strings[id] = new String(key, Charset.defaultCharset());
+        }
+        return strings;
+    }
+
+    private static boolean regionEquals(String attribute, CharSequence text, int begin, int end) {
+        if (attribute.length() != end - begin)
+            return false;
+        for (int i = 0; i < attribute.length(); ++i)
+            if (attribute.charAt(i) != text.charAt(begin + i))
+                return false;
+        return true;
+    }
+
+    private static int hash(CharSequence text, int begin, int end) {
+        int h = 0;
+        for (int i = begin; i < end; ++i)
+            h = 31 * h + text.charAt(i);
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
+}
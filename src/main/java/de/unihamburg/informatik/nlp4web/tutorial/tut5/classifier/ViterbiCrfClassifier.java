@@ -0,0 +1,153 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.classifier;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cleartk.ml.CleartkProcessingException;
+import org.cleartk.ml.Feature;
+import org.cleartk.ml.encoder.features.FeaturesEncoder;
+import org.cleartk.ml.encoder.features.NameNumber;
+import org.cleartk.ml.encoder.outcome.OutcomeEncoder;
+import org.cleartk.ml.jar.SequenceClassifier_ImplBase;
+
+/**
+ * Tags sequences with the Viterbi algorithm on the weights of a {@link CrfSuiteModel}, inside the JVM and without
+ * temporary files. The encoded features are interpreted like crfsuite reads its input files ("name:value" with
+ * "\:" and "\\" as escapes, value 1 if missing or empty, unknown attributes ignored) and the best path is chosen like
+ * crfsuite does (lowest label id on equal scores).
+ */
+public class ViterbiCrfClassifier extends SequenceClassifier_ImplBase<List<NameNumber>, String, String>
+        implements BatchSequenceClassifier<String> {
+
+    private final CrfSuiteModel model;
+
+    public ViterbiCrfClassifier(FeaturesEncoder<List<NameNumber>> featuresEncoder,
+                                OutcomeEncoder<String, String> outcomeEncoder, CrfSuiteModel model) {
+        super(featuresEncoder, outcomeEncoder);
+        this.model = model;
+    }
+
+    @Override
+    public List<String> classify(List<List<Feature>> features) throws CleartkProcessingException {
+        int labelCount = this.model.getLabelCount();
+        int length = features.size();
+        if (length == 0)
+            return new ArrayList<>();
+
+        double[] scores = new double[length * labelCount];
+        StringBuilder name = new StringBuilder();
+        for (int t = 0; t < length; ++t)
+            for (NameNumber nameNumber : this.featuresEncoder.encodeAll(features.get(t)))
+                addStateScores(nameNumber.name, name, scores, t * labelCount);
+
+        int[] path = viterbi(scores, length, labelCount);
+        List<String> outcomes = new ArrayList<>(length);
+        for (int label : path)
+            outcomes.add(this.outcomeEncoder.decode(this.model.getLabel(label)));
+        return outcomes;
+    }
+
+    @Override
+    public List<List<String>> classifySequences(List<List<List<Feature>>> sequences)
+            throws CleartkProcessingException {
+        List<List<String>> outcomes = new ArrayList<>(sequences.size());
+        for (List<List<Feature>> sequence : sequences)
+            outcomes.add(classify(sequence));
+        return outcomes;
+    }
+
+    /**
+     * @return the model of the classifier
+     */
+    public CrfSuiteModel getModel() {
+        return this.model;
+    }
+
+    /**
+     * Splits an attribute field into name and value like crfsuite and adds its state scores.
+     */
+    private void addStateScores(String field, StringBuilder name, double[] scores, int offset) {
+        int separator = -1;
+        boolean escaped = false;
+        for (int i = 0; i < field.length() && separator < 0; ++i) {
+            char c = field.charAt(i);
+            if (c == '\\' && i + 1 < field.length() && (field.charAt(i + 1) == ':' || field.charAt(i + 1) == '\\')) {
+                escaped = true;
+                ++i;
+            } else if (c == ':') {
+                separator = i;
+            }
+        }
+        int end = separator < 0 ? field.length() : separator;
+        int attribute;
+        if (escaped) {
+            name.setLength(0);
+            for (int i = 0; i < end; ++i) {
+                char c = field.charAt(i);
+                if (c == '\\' && i + 1 < end && (field.charAt(i + 1) == ':' || field.charAt(i + 1) == '\\'))
+                    c = field.charAt(++i);
+                name.append(c);
+            }
+            attribute = this.model.getAttributeId(name, 0, name.length());
+        } else {
+            attribute = this.model.getAttributeId(field, 0, end);
+        }
+        if (attribute < 0)
+            return;
+        double value = separator < 0 || separator + 1 == field.length() ? 1.0 : parseValue(field, separator + 1);
+        this.model.addStateScores(attribute, value, scores, offset);
+    }
+
+    /**
+     * Parses the longest number at the begin of the value (like atof, 0 if there is none)
+     */
+    private static double parseValue(String field, int begin) {
+        int end = begin;
+        while (end < field.length() && "0123456789+-.eE".indexOf(field.charAt(end)) >= 0)
+            ++end;
+        for (; end > begin; --end) {
+            try {
+                return Double.parseDouble(field.substring(begin, end));
+            } catch (NumberFormatException e) {
+                // try a shorter prefix
+            }
+        }
+        return 0.0;
+    }
+
+    /**
+     * @return the labels of the path with the highest score
+     */
+    private int[] viterbi(double[] scores, int length, int labelCount) {
+        int[] backPointers = new int[length * labelCount];
+        double[] previous = new double[labelCount];
+        double[] current = new double[labelCount];
+        System.arraycopy(scores, 0, previous, 0, labelCount);
+        for (int t = 1; t < length; ++t) {
+            for (int j = 0; j < labelCount; ++j) {
+                double max = Double.NEGATIVE_INFINITY;
+                int argMax = 0;
+                for (int i = 0; i < labelCount; ++i) {
+                    double score = previous[i] + this.model.getTransition(i, j);
+                    if (score > max) {
+                        max = score;
+                        argMax = i;
+                    }
+                }
+                backPointers[t * labelCount + j] = argMax;
+                current[j] = max + scores[t * labelCount + j];
+            }
+            double[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+
+        int[] path = new int[length];
+        for (int j = 1; j < labelCount; ++j)
+            if (previous[j] > previous[path[length - 1]])
+                path[length - 1] = j;
+        for (int t = length - 2; t >= 0; --t)
+            path[t] = backPointers[(t + 1) * labelCount + path[t + 1]];
+        return path;
+    }
+}
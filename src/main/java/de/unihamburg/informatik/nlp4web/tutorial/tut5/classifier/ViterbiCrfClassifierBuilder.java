@@ -0,0 +1,52 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.classifier;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+
+import org.cleartk.ml.crfsuite.CrfSuiteStringOutcomeClassifierBuilder;
+import org.cleartk.ml.encoder.features.NameNumber;
+import org.cleartk.ml.jar.JarStreams;
+import org.cleartk.ml.jar.SequenceClassifierBuilder_ImplBase;
+
+/**
+ * Builds {@link ViterbiCrfClassifier}s from the model jars of the {@link CrfSuiteStringOutcomeClassifierBuilder}
+ * (same training data, same jar layout). Training is delegated to the CRFsuite builder.
+ */
+public class ViterbiCrfClassifierBuilder
+        extends SequenceClassifierBuilder_ImplBase<ViterbiCrfClassifier, List<NameNumber>, String, String> {
+
+    private final CrfSuiteStringOutcomeClassifierBuilder crfSuiteBuilder = new CrfSuiteStringOutcomeClassifierBuilder();
+    private CrfSuiteModel model = null;
+
+    @Override
+    public File getTrainingDataFile(File dir) {
+        return this.crfSuiteBuilder.getTrainingDataFile(dir);
+    }
+
+    @Override
+    public void trainClassifier(File dir, String... args) throws Exception {
+        this.crfSuiteBuilder.trainClassifier(dir, args);
+    }
+
+    @Override
+    protected void packageClassifier(File dir, JarOutputStream modelStream) throws IOException {
+        super.packageClassifier(dir, modelStream);
+        JarStreams.putNextJarEntry(modelStream, CrfSuiteBatchClassifierBuilder.MODEL_NAME,
+                new File(dir, CrfSuiteBatchClassifierBuilder.MODEL_NAME));
+    }
+
+    @Override
+    protected void unpackageClassifier(JarInputStream modelStream) throws IOException {
+        super.unpackageClassifier(modelStream);
+        JarStreams.getNextJarEntry(modelStream, CrfSuiteBatchClassifierBuilder.MODEL_NAME);
+        this.model = CrfSuiteModel.read(modelStream);
+    }
+
+    @Override
+    protected ViterbiCrfClassifier newClassifier() {
+        return new ViterbiCrfClassifier(this.featuresEncoder, this.outcomeEncoder, this.model);
+    }
+}
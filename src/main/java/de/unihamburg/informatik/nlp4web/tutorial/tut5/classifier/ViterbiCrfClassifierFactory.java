@@ -0,0 +1,131 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.classifier;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.cleartk.ml.SequenceClassifier;
+import org.cleartk.ml.jar.JarClassifierBuilder;
+
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.resource.Resources;
+
+/**
+ * Classifier factory loading CRFsuite model jars as in-process {@link ViterbiCrfClassifier}.
+ * <p>
+ * The classifiers only read their model, so the classifier of a CRFsuite model jar in the file system, the resource
+ * bundle or on the classpath (see {@link Resources}) is loaded once and shared by the annotators using it at the same
+ * time (e.g. the replicated annotators of a parallel pipeline). The annotators {@link #release(SequenceClassifier)
+ * release} it when they are destroyed, the last one drops it, so runs one after the other (e.g. of the feature
+ * ablation test) don't keep their models. It is loaded again if the jar in the file system changes. The classifiers
+ * of other jars are not shared.
+ */
+public class ViterbiCrfClassifierFactory extends CrfSuiteJarClassifierFactory {
+
+    /**
+     * the shared classifiers by the canonical path of their jar (or the resource name of a jar in the resource bundle
+     * or on the classpath), guarded by itself. The lock only guards the bookkeeping, the classifiers are loaded outside.
+     */
+    private static final Map<String, SharedClassifier> CLASSIFIERS = new HashMap<>();
+
+    /**
+     * A classifier, loaded by the first annotator using it, the version of its jar and the number of its annotators
+     */
+    private static final class SharedClassifier {
+        private final long lastModified;
+        private final long length;
+        /**
+         * the number of annotators using the classifier, guarded by CLASSIFIERS
+         */
+        private int references = 0;
+        /**
+         * the classifier, null until loaded, written while holding the lock of this
+         */
+        private volatile SequenceClassifier<String> classifier;
+
+        /**
+         * @param jar the jar in the file system, null for a jar in the resource bundle or on the classpath
+         */
+        private SharedClassifier(File jar) {
+            this.lastModified = jar == null ? 0L : jar.lastModified();
+            this.length = jar == null ? 0L : jar.length();
+        }
+
+        private boolean isCurrent(File jar) {
+            return jar == null || jar.lastModified() == lastModified && jar.length() == length;
+        }
+
+        /**
+         * Loads the classifier once, the other annotators of the jar wait for it
+         */
+        private synchronized SequenceClassifier<String> get(ViterbiCrfClassifierFactory factory) throws IOException {
+            if (classifier == null)
+                classifier = factory.loadClassifier();
+            return classifier;
+        }
+    }
+
+    @Override
+    protected JarClassifierBuilder<? extends SequenceClassifier<String>> newCrfSuiteBuilder() {
+        return new ViterbiCrfClassifierBuilder();
+    }
+
+    @Override
+    public SequenceClassifier<String> createClassifier() throws IOException {
+        File jar = Resources.getFile(getClassifierJarPath());
+        if (jar == null && !Resources.exists(getClassifierJarPath()))
+            return super.createClassifier();
+        // the classifiers of other jars aren't known to be thread safe, they aren't shared
+        if (!isCrfSuiteJar())
+            return super.createClassifier();
+        // a jar in the resource bundle or on the classpath doesn't change
+        String key = jar != null ? jar.getCanonicalPath() : Resources.getName(getClassifierJarPath());
+        SharedClassifier shared;
+        synchronized (CLASSIFIERS) {
+            shared = CLASSIFIERS.get(key);
+            if (shared == null || !shared.isCurrent(jar)) {
+                // the annotators of a former version of the jar keep their classifier until they are destroyed
+                shared = new SharedClassifier(jar);
+                CLASSIFIERS.put(key, shared);
+            }
+            shared.references++;
+        }
+        try {
+            return shared.get(this);
+        } catch (IOException | RuntimeException e) {
+            release(key, shared);
+            throw e;
+        }
+    }
+
+    private SequenceClassifier<String> loadClassifier() throws IOException {
+        return super.createClassifier();
+    }
+
+    /**
+     * Releases a classifier of this factory when its annotator is destroyed. The shared classifier is dropped when the
+     * last annotator using it releases it, the next annotator loads it again.
+     *
+     * @param classifier the classifier of the annotator, ignored if it isn't shared
+     */
+    public static void release(SequenceClassifier<?> classifier) {
+        synchronized (CLASSIFIERS) {
+            for (Iterator<SharedClassifier> shared = CLASSIFIERS.values().iterator(); shared.hasNext(); ) {
+                SharedClassifier next = shared.next();
+                if (next.classifier == classifier) {
+                    if (--next.references == 0)
+                        shared.remove();
+                    return;
+                }
+            }
+        }
+    }
+
+    private static void release(String key, SharedClassifier shared) {
+        synchronized (CLASSIFIERS) {
+            if (--shared.references == 0 && CLASSIFIERS.get(key) == shared)
+                CLASSIFIERS.remove(key);
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.feature;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.resource.Resources;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.xml.XStreamFactory;
+import org.apache.commons.io.FileUtils;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.resource.metadata.NameValuePair;
+import org.cleartk.ml.CleartkProcessingException;
+import org.cleartk.ml.Feature;
+import org.cleartk.ml.Instance;
+import org.cleartk.ml.SequenceDataWriter;
+import org.cleartk.ml.feature.extractor.FeatureExtractor1;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.CodeSource;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Persistent cache of the training instances extracted from a corpus, addressed by the content of everything the
+ * instances depend on (see {@link #getKey(File, AnalysisEngineDescription, String, int)}). Every entry is a {@link FeatureStore}
+ * with a single column, so a hit writes the same training data as the extraction without reading the corpus.
+ * <p>
+ * Entries are written into a temporary directory and renamed when complete, so concurrent runs never see partial
+ * entries.
+ */
+public final class FeatureCache {
+
+    /**
+     * version of the key and the entries, to be increased if the extraction changes without a change of the inputs
+     */
+    private static final int VERSION = 2;
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    /**
+     * the list paths of the XStream configuration, of NEListExtractor (neListName) and of the extractors of several
+     * lists (neListNames, an array of strings)
+     */
+    private static final Pattern LIST_NAMES = Pattern.compile("<(neListNames?)>(.*?)</\\1>", Pattern.DOTALL);
+    private static final Pattern STRING = Pattern.compile("<string>(.*?)</string>", Pattern.DOTALL);
+
+    private final File directory;
+
+    /**
+     * @param directory the directory of the cache, created when the first entry is written
+     */
+    public FeatureCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Computes the key of the training instances of a corpus: a SHA-256 hash of the corpus, the stemmer (its class,
+     * version and parameters, e.g. the language), the feature extractor configuration (the XStream file written by the
+     * XStreamFactory), the content of the gazetteer lists named in the configuration and the feature hashing.
+     *
+     * @param corpus                the training file
+     * @param stemmer               the description of the stemmer
+     * @param featureExtractionFile the XStream file of the feature extractors, null for all feature extractors
+     * @param featureHashBits       the number of bits of the hashed features, 0 if not hashed
+     * @return the key, as hex string
+     * @throws IOException if error while reading the files
+     */
+    public static String getKey(File corpus, AnalysisEngineDescription stemmer, String featureExtractionFile,
+                                int featureHashBits) throws IOException {
+        if (featureExtractionFile == null)
+            return getKey(corpus, stemmer, FeatureExtractorFactory.createAllFeatureExtractors(), featureHashBits);
+        return getConfigurationKey(corpus, stemmer,
+                new String(Resources.read(featureExtractionFile), StandardCharsets.UTF_8), featureHashBits);
+    }
+
+    /**
+     * Computes the key of the training instances of a corpus like {@link #getKey(File, AnalysisEngineDescription,
+     * String, int)}, for feature extractors not written to a file (e.g. those of a {@link FeatureStore})
+     *
+     * @param corpus            the training file
+     * @param stemmer           the description of the stemmer
+     * @param featureExtractors the feature extractors
+     * @param featureHashBits   the number of bits of the hashed features, 0 if not hashed
+     * @return the key, as hex string
+     * @throws IOException if error while reading the files
+     */
+    public static String getKey(File corpus, AnalysisEngineDescription stemmer,
+                                List<FeatureExtractor1<Token>> featureExtractors, int featureHashBits)
+            throws IOException {
+        return getConfigurationKey(corpus, stemmer, XStreamFactory.createXStream().toXML(featureExtractors),
+                featureHashBits);
+    }
+
+    /**
+     * @param configuration the XStream configuration of the feature extractors
+     */
+    private static String getConfigurationKey(File corpus, AnalysisEngineDescription stemmer, String configuration,
+                                              int featureHashBits) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        update(digest, "version " + VERSION);
+        update(digest, corpus);
+        String stemmerClass = stemmer.getAnnotatorImplementationName();
+        update(digest, stemmerClass);
+        try {
+            update(digest, getVersion(Class.forName(stemmerClass, false, FeatureCache.class.getClassLoader())));
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Unknown stemmer " + stemmerClass, e);
+        }
+        NameValuePair[] parameters = stemmer.getMetaData().getConfigurationParameterSettings().getParameterSettings()
+                .clone();
+        Arrays.sort(parameters, (a, b) -> a.getName().compareTo(b.getName()));
+        for (NameValuePair parameter : parameters)
+            update(digest, parameter.getName() + "=" + Arrays.deepToString(new Object[]{parameter.getValue()}));
+        update(digest, configuration);
+        update(digest, "hash bits " + featureHashBits);
+        // the lists are read like the extractors read them, from the file system, the bundle or the classpath
+        for (String list : getListNames(configuration)) {
+            update(digest, list);
+            update(digest, Resources.open(list));
+        }
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest())
+            key.append(String.format("%02x", b));
+        return key.toString();
+    }
+
+    /**
+     * @param configuration the XStream configuration of the feature extractors
+     * @return the paths of the gazetteer lists named in the configuration, sorted and without duplicates
+     */
+    static SortedSet<String> getListNames(String configuration) {
+        SortedSet<String> lists = new TreeSet<>();
+        Matcher listNames = LIST_NAMES.matcher(configuration);
+        while (listNames.find()) {
+            if (listNames.group(1).equals("neListName")) {
+                lists.add(unescape(listNames.group(2).trim()));
+            } else {
+                Matcher listName = STRING.matcher(listNames.group(2));
+                while (listName.find())
+                    lists.add(unescape(listName.group(1).trim()));
+            }
+        }
+        return lists;
+    }
+
+    private static String unescape(String text) {
+        return text.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"").replace("&apos;", "'")
+                .replace("&amp;", "&");
+    }
+
+    /**
+     * @param type a class
+     * @return the implementation version of its package, or else the name of the jar or directory it is loaded from
+     */
+    static String getVersion(Class<?> type) {
+        Package typePackage = type.getPackage();
+        if (typePackage != null && typePackage.getImplementationVersion() != null)
+            return typePackage.getImplementationVersion();
+        CodeSource codeSource = type.getProtectionDomain().getCodeSource();
+        URL location = codeSource == null ? null : codeSource.getLocation();
+        if (location == null)
+            return "unknown";
+        try {
+            return new File(location.toURI()).getName();
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return location.toString();
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static void update(MessageDigest digest, File file) throws IOException {
+        update(digest, new FileInputStream(file));
+    }
+
+    private static void update(MessageDigest digest, InputStream content) throws IOException {
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream stream = content) {
+            int read;
+            while ((read = stream.read(buffer)) > 0)
+                digest.update(buffer, 0, read);
+        }
+        digest.update((byte) 0);
+    }
+
+    /**
+     * @param key the key of the training instances
+     * @return true if the cache contains the instances
+     */
+    public boolean contains(String key) {
+        return new File(getEntry(key), FeatureStore.OUTCOMES_FILE).isFile();
+    }
+
+    /**
+     * Writes the cached training instances to the data writer.
+     *
+     * @param key        the key of the training instances
+     * @param dataWriter the data writer (not finished by this method)
+     * @throws IOException                if the cache doesn't contain the key or error while reading
+     * @throws CleartkProcessingException if error while writing the instances
+     */
+    public void replay(String key, SequenceDataWriter<String> dataWriter) throws IOException, CleartkProcessingException {
+        FeatureStore.open(getEntry(key)).replay(new int[]{0}, dataWriter);
+    }
+
+    /**
+     * @param key the key of the training instances
+     * @return the writer of a new entry, which is only added to the cache by {@link Writer#commit()}
+     * @throws IOException if the entry can't be created
+     */
+    public Writer create(String key) throws IOException {
+        return new Writer(key);
+    }
+
+    private File getEntry(String key) {
+        return new File(directory, key);
+    }
+
+    @Override
+    public String toString() {
+        return "FeatureCache(" + directory + ")";
+    }
+
+    /**
+     * Writes the sequences of instances of a new entry
+     */
+    public final class Writer implements Closeable {
+
+        private final String key;
+        private final File temporary;
+        private final FeatureStore.Writer store;
+        private boolean committed = false;
+
+        private Writer(String key) throws IOException {
+            this.key = key;
+            directory.mkdirs();
+            this.temporary = Files.createTempDirectory(directory.toPath(), key + TEMPORARY_SUFFIX).toFile();
+            this.store = FeatureStore.create(temporary, 1);
+        }
+
+        /**
+         * @param sequence the instances of a sequence, with their outcomes
+         * @throws IOException if error while writing
+         */
+        public void write(List<Instance<String>> sequence) throws IOException {
+            for (Instance<String> instance : sequence) {
+                List<List<Feature>> features = Collections.singletonList(instance.getFeatures());
+                store.write(instance.getOutcome(), features);
+            }
+            store.endSequence();
+        }
+
+        /**
+         * Adds the entry to the cache. If another writer added the key in the meantime, its entry is kept.
+         *
+         * @throws IOException if error while writing
+         */
+        public void commit() throws IOException {
+            store.close();
+            try {
+                Files.move(temporary.toPath(), getEntry(key).toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                // an existing entry of the key is not replaced
+                if (!contains(key))
+                    throw e;
+                FileUtils.deleteDirectory(temporary);
+            }
+            committed = true;
+        }
+
+        /**
+         * Discards the entry if it wasn't committed.
+         */
+        @Override
+        public void close() throws IOException {
+            if (committed)
+                return;
+            store.close();
+            FileUtils.deleteDirectory(temporary);
+        }
+    }
+}
@@ -28,7 +28,7 @@ public class FeatureExtractorFactory {
         List<FeatureExtractor1<Token>> allFeatureExtractors = new ArrayList<>();
         TypePathExtractor<Token> stemExtractor = FeatureExtractorFactory.createTokenTypePathExtractors();
         FeatureExtractor1<Token> tokenFeatureExtractor = FeatureExtractorFactory.createTokenFeatureExtractors();
-        CleartkExtractor<Token, Token> contextFeatureExtractor = FeatureExtractorFactory.createTokenContextExtractors();
+        SentenceWindowExtractor contextFeatureExtractor = FeatureExtractorFactory.createTokenContextExtractors();
         FeatureFunctionExtractor nameListExtractors = FeatureExtractorFactory.createNameListExtractors();
         FeatureFunctionExtractor cityListExtractors = FeatureExtractorFactory.createCityListExtractors();
         FeatureFunctionExtractor countryListExtractors = FeatureExtractorFactory.createCountryListExtractors();
@@ -48,6 +48,19 @@ public class FeatureExtractorFactory {
         return allFeatureExtractors;
     }
 
+    /**
+     * Creates the feature extractors of the feature ablation test and the feature selection: all feature extractors
+     * (see {@link #createAllFeatureExtractors()}) followed by the extractors not used by default, so the indices of
+     * the default extractors stay the same
+     *
+     * @return the list of feature extractors
+     */
+    public static List<FeatureExtractor1<Token>> createAblationFeatureExtractors() throws IOException {
+        List<FeatureExtractor1<Token>> ablationFeatureExtractors = createAllFeatureExtractors();
+        ablationFeatureExtractors.add(createGazetteerSpanExtractors());
+        return ablationFeatureExtractors;
+    }
+
     public static FeatureFunctionExtractor createLocListExtractors() throws IOException {
         return new FeatureFunctionExtractor<>(
                         new CoveredTextExtractor<Token>(),
@@ -96,39 +109,112 @@ public class FeatureExtractorFactory {
                         new NEListExtractor("src/main/resources/ner/lastNames.txt", "lastName_PER"));
     }
 
-    public static CleartkExtractor<Token, Token> createTokenContextExtractors() {
-        // create a feature extractor that extracts the surrounding token texts (within the same sentence)
-        return new CleartkExtractor<>(Token.class,
+    /**
+     * Creates one extractor that finds the entries of all NE lists in a single pass over the sentence. Only the lists
+     * with a type prefix (fullNames, foreNames, surNames, the city, country and organization names) hold entries of
+     * several words. The lists eng_*, deu_*, firstNames, lastNames and englishCityNames hold one word per line, so they
+     * cannot produce multi-token matches, only B- features of single tokens like the per-token list extractors.
+     *
+     * @return the span extractor over all NE lists
+     */
+    public static GazetteerSpanExtractor createGazetteerSpanExtractors() {
+        return new GazetteerSpanExtractor(
+                new String[]{
+                        "src/main/resources/ner/firstNames.txt",
+                        "src/main/resources/ner/lastNames.txt",
+                        "src/main/resources/ner/foreNames.txt",
+                        "src/main/resources/ner/surNames.txt",
+                        "src/main/resources/ner/fullNames.txt",
+                        "src/main/resources/ner/germanCityNames.txt",
+                        "src/main/resources/ner/englishCityNames.txt",
+                        "src/main/resources/ner/germanCountryNames.txt",
+                        "src/main/resources/ner/englishCountryNames.txt",
+                        "src/main/resources/ner/germanOrganizationNames.txt",
+                        "src/main/resources/ner/eng_LOC.txt",
+                        "src/main/resources/ner/deu_LOC.txt",
+                        "src/main/resources/ner/eng_ORG.txt",
+                        "src/main/resources/ner/deu_ORG.txt",
+                        "src/main/resources/ner/eng_MISC.txt",
+                        "src/main/resources/ner/deu_MISC.txt"},
+                new String[]{
+                        "firstName_PER",
+                        "lastName_PER",
+                        "foreName_PER",
+                        "surName_PER",
+                        "fullName_PER",
+                        "gerCity_LOC",
+                        "engCity_LOC",
+                        "gerCountry_LOC",
+                        "engCountry_LOC",
+                        "gerOrganization_ORG",
+                        "eng_LOC",
+                        "deu_LOC",
+                        "eng_ORG",
+                        "deu_ORG",
+                        "eng_MISC",
+                        "deu_MISC"});
+    }
+
+    public static SentenceWindowExtractor createTokenContextExtractors() {
+        // create a feature extractor that extracts the surrounding token texts (within the same sentence), the same
+        // features as a CleartkExtractor with the contexts Preceding(2) and Following(2), but the texts of the tokens
+        // of a sentence are extracted once instead of once per token of the window
+        return new SentenceWindowExtractor(
                 // the FeatureExtractor that takes the token annotation from the JCas and produces the covered text
                 new CoveredTextExtractor<>(),
                 // also include the two preceding words
-                new CleartkExtractor.Preceding(2),
+                2,
                 // and the two following words
-                new CleartkExtractor.Following(2));
+                2);
     }
 
     public static FeatureExtractor1<Token> createTokenFeatureExtractors() {
-        // create a function feature extractor that creates features corresponding to the token
-        // Note the difference between feature extractors and feature functions here. Feature extractors take an Annotation
-        // from the JCas and extract features from it. Feature functions take the features produced by the feature extractor
-        // and generate new features from the old ones. Since feature functions don’t need to look up information in the JCas,
-        // they may be more efficient than feature extractors. So, the e.g. the CharacterNgramFeatureFunction simply extract
-        // suffixes from the text returned by the CoveredTextExtractor.
-        return new FeatureFunctionExtractor<>(
-                // the FeatureExtractor that takes the token annotation from the JCas and produces the covered text
-                new CoveredTextExtractor<Token>(),
-                // feature function that produces the lower cased word (based on the output of the CoveredTextExtractor)
-                new LowerCaseFeatureFunction(),
-                // feature function that produces the capitalization type of the word (e.g. all uppercase, all lowercase...)
-                new CapitalTypeFeatureFunction(),
-                // feature function that produces the numeric type of the word (numeric, alphanumeric...)
-                new NumericTypeFeatureFunction(),
-                // feature function that produces the suffix of the word as character bigram (last two chars of the word)
-                new CharacterNgramFeatureFunction(CharacterNgramFeatureFunction.Orientation.RIGHT_TO_LEFT, 0, 2),
-                // feature function that produces the suffix of the word as character trigram (last three chars of the word)
-                new CharacterNgramFeatureFunction(CharacterNgramFeatureFunction.Orientation.RIGHT_TO_LEFT, 0, 3),
-                // feature function that produces the Character Category Pattern (based on the Unicode Categories) for the Token
-                new CharacterCategoryPatternFunction());
+        // create a feature extractor that creates features corresponding to the token: the covered text, the lower
+        // cased word, the capitalization type (e.g. all uppercase, all lowercase...), the numeric type (numeric,
+        // alphanumeric...), the suffixes of the word as character bigram and trigram and the Character Category
+        // Pattern (based on the Unicode Categories). These are the features of the ClearTK feature functions
+        // LowerCaseFeatureFunction, CapitalTypeFeatureFunction, NumericTypeFeatureFunction,
+        // CharacterNgramFeatureFunction and CharacterCategoryPatternFunction on the CoveredTextExtractor, computed in
+        // one pass over the characters of the token instead of one pass per function.
+        return new TokenSurfaceExtractor();
+    }
+
+    /**
+     * Creates one extractor of the token features and the features of all NE lists of the per-token list extractors
+     * above (name, city, country, misc, org and loc lists). It produces the same features per token as
+     * {@link #createTokenFeatureExtractors()} and the six list extractors together, but reads the covered text once
+     * and looks it up once in all lists.
+     *
+     * @return the fused token and NE list extractor
+     */
+    public static TokenSurfaceExtractor createTokenSurfaceExtractors() {
+        return new TokenSurfaceExtractor(
+                new String[]{
+                        "src/main/resources/ner/firstNames.txt",
+                        "src/main/resources/ner/lastNames.txt",
+                        "src/main/resources/ner/germanCityNames.txt",
+                        "src/main/resources/ner/englishCityNames.txt",
+                        "src/main/resources/ner/germanCountryNames.txt",
+                        "src/main/resources/ner/englishCountryNames.txt",
+                        "src/main/resources/ner/eng_MISC.txt",
+                        "src/main/resources/ner/deu_MISC.txt",
+                        "src/main/resources/ner/eng_ORG.txt",
+                        "src/main/resources/ner/deu_ORG.txt",
+                        "src/main/resources/ner/eng_LOC.txt",
+                        "src/main/resources/ner/deu_LOC.txt"},
+                new String[]{
+                        "firstName_PER",
+                        "lastName_PER",
+                        "gerCity_LOC",
+                        "engCity_LOC",
+                        "gerCountry_LOC",
+                        "engCountry_LOC",
+                        "eng_MISC",
+                        "deu_MISC",
+                        "eng_ORG",
+                        "deu_ORG",
+                        "eng_LOC",
+                        "deu_LOC"});
     }
 
     public static TypePathExtractor<Token> createTokenTypePathExtractors() {
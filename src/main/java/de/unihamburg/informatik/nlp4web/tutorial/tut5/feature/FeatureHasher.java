@@ -0,0 +1,116 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.feature;
+
+import org.cleartk.ml.Feature;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maps features to one of 2^bits indices (the hashing trick), so the number of distinct features seen by the
+ * classifier is bounded no matter how many names and values the extractors produce.
+ * <p>
+ * A feature is hashed by the string the ClearTK encoders would make of it (name_value, or only the name for
+ * numeric and boolean features) and replaced by a feature named by its index, written as hexadecimal number of
+ * fixed width. Features colliding in one index share its weight.
+ */
+public final class FeatureHasher {
+
+    public static final int MAX_BITS = 30;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final int SEED = 0x4e455248;
+
+    private final int bits;
+    private final int mask;
+    private final int width;
+
+    /**
+     * @param bits the number of bits of the feature indices (1 to {@value #MAX_BITS})
+     */
+    public FeatureHasher(int bits) {
+        if (bits < 1 || bits > MAX_BITS)
+            throw new IllegalArgumentException("The number of feature hash bits must be between 1 and " + MAX_BITS);
+        this.bits = bits;
+        this.mask = (1 << bits) - 1;
+        this.width = (bits + 3) / 4;
+    }
+
+    /**
+     * @return the number of bits of the feature indices
+     */
+    public int getBits() {
+        return bits;
+    }
+
+    /**
+     * @return the number of distinct feature indices
+     */
+    public int getDimension() {
+        return mask + 1;
+    }
+
+    /**
+     * @param features the features extracted for one instance
+     * @return the hashed features, in the same order
+     */
+    public List<Feature> hash(List<Feature> features) {
+        List<Feature> hashed = new ArrayList<>(features.size());
+        for (Feature feature : features)
+            hashed.add(new Feature(getName(getIndex(feature)), null));
+        return hashed;
+    }
+
+    /**
+     * @param feature the feature
+     * @return the index of the feature
+     */
+    public int getIndex(Feature feature) {
+        String name = feature.getName();
+        Object value = feature.getValue();
+        int h = SEED;
+        int length = 0;
+        if (name != null) {
+            for (int i = 0; i < name.length(); ++i)
+                h = mix(h, name.charAt(i));
+            length += name.length();
+        }
+        if (value != null && !(value instanceof Number) && !(value instanceof Boolean)) {
+            if (name != null) {
+                h = mix(h, '_');
+                ++length;
+            }
+            String string = value.toString();
+            for (int i = 0; i < string.length(); ++i)
+                h = mix(h, string.charAt(i));
+            length += string.length();
+        }
+        // murmur3 finalization
+        h ^= length;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h & mask;
+    }
+
+    /**
+     * @param index the feature index
+     * @return the name of the hashed feature with the index
+     */
+    public String getName(int index) {
+        char[] name = new char[width];
+        for (int i = width - 1; i >= 0; --i) {
+            name[i] = HEX_DIGITS[index & 0xf];
+            index >>>= 4;
+        }
+        return new String(name);
+    }
+
+    private static int mix(int h, char c) {
+        int k = c * 0xcc9e2d51;
+        k = Integer.rotateLeft(k, 15) * 0x1b873593;
+        h ^= k;
+        return Integer.rotateLeft(h, 13) * 5 + 0xe6546b64;
+    }
+}
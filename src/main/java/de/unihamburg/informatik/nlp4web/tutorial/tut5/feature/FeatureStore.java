@@ -0,0 +1,234 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.feature;
+
+import org.cleartk.ml.CleartkProcessingException;
+import org.cleartk.ml.Feature;
+import org.cleartk.ml.Instance;
+import org.cleartk.ml.SequenceDataWriter;
+import org.cleartk.ml.encoder.FeatureEncoderUtil;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Columnar store of the features extracted from a corpus, one column per feature extractor. The training data of
+ * any combination of the extractors can be replayed from the store without reading the corpus or extracting the
+ * features again.
+ * <p>
+ * The store is a directory with one text file of outcomes and one text file per extractor. Every file has one line
+ * per instance (the outcome or the tab separated features of the extractor) and an empty line after every sequence.
+ * Features are stored as the strings the ClearTK encoders make of them (name_value), escaped by
+ * {@link FeatureEncoderUtil#escape(String)}.
+ */
+public final class FeatureStore {
+
+    public static final String OUTCOMES_FILE = "outcomes.txt";
+    private static final String COLUMN_PREFIX = "features-";
+    private static final String COLUMN_SUFFIX = ".txt";
+
+    private final File directory;
+    private final int extractorCount;
+
+    private FeatureStore(File directory, int extractorCount) {
+        this.directory = directory;
+        this.extractorCount = extractorCount;
+    }
+
+    /**
+     * @param directory the directory of the store
+     * @return the store
+     * @throws IOException if the directory contains no feature store
+     */
+    public static FeatureStore open(File directory) throws IOException {
+        if (!new File(directory, OUTCOMES_FILE).isFile())
+            throw new IOException("No feature store in " + directory);
+        int extractorCount = 0;
+        while (getColumnFile(directory, extractorCount).isFile())
+            ++extractorCount;
+        return new FeatureStore(directory, extractorCount);
+    }
+
+    /**
+     * @param directory      the directory of the store, created if necessary
+     * @param extractorCount the number of feature extractors
+     * @return the writer of a new store
+     * @throws IOException if the files of the store can't be created
+     */
+    public static Writer create(File directory, int extractorCount) throws IOException {
+        return new Writer(directory, extractorCount);
+    }
+
+    /**
+     * @return the number of feature extractors (columns) in the store
+     */
+    public int getExtractorCount() {
+        return extractorCount;
+    }
+
+    /**
+     * Writes the sequences of the store to the data writer, with the features of the given extractors only. The
+     * features are in the order of the extractors, as if only these extractors had been applied.
+     *
+     * @param extractors the indices of the extractors, ascending
+     * @param dataWriter the data writer (not finished by this method)
+     * @throws IOException                if error while reading the store
+     * @throws CleartkProcessingException if error while writing the instances
+     */
+    public void replay(int[] extractors, SequenceDataWriter<String> dataWriter)
+            throws IOException, CleartkProcessingException {
+        BufferedReader outcomes = openReader(new File(directory, OUTCOMES_FILE));
+        BufferedReader[] columns = new BufferedReader[extractors.length];
+        try {
+            for (int i = 0; i < extractors.length; ++i) {
+                if (extractors[i] < 0 || extractors[i] >= extractorCount)
+                    throw new IllegalArgumentException("No feature extractor " + extractors[i] + " in the store");
+                columns[i] = openReader(getColumnFile(directory, extractors[i]));
+            }
+            List<Instance<String>> sequence = new ArrayList<>();
+            String outcome;
+            while ((outcome = outcomes.readLine()) != null) {
+                if (outcome.isEmpty()) {
+                    for (BufferedReader column : columns)
+                        column.readLine();
+                    dataWriter.write(sequence);
+                    sequence = new ArrayList<>();
+                    continue;
+                }
+                Instance<String> instance = new Instance<>(outcome);
+                for (BufferedReader column : columns) {
+                    String line = column.readLine();
+                    if (line == null)
+                        throw new IOException("Column of the feature store in " + directory + " is too short");
+                    for (int begin = 0, end; begin < line.length(); begin = end + 1) {
+                        end = line.indexOf('\t', begin);
+                        if (end < 0)
+                            end = line.length();
+                        instance.add(new Feature(unescape(line, begin, end), null));
+                    }
+                }
+                sequence.add(instance);
+            }
+        } finally {
+            outcomes.close();
+            for (BufferedReader column : columns)
+                if (column != null)
+                    column.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FeatureStore(" + directory + ", " + extractorCount + " extractors)";
+    }
+
+    /**
+     * Appends the extracted instances to a new store
+     */
+    public static final class Writer implements Closeable {
+
+        private final BufferedWriter outcomes;
+        private final BufferedWriter[] columns;
+
+        private Writer(File directory, int extractorCount) throws IOException {
+            directory.mkdirs();
+            this.outcomes = create(new File(directory, OUTCOMES_FILE));
+            this.columns = new BufferedWriter[extractorCount];
+            for (int e = 0; e < extractorCount; ++e)
+                this.columns[e] = create(getColumnFile(directory, e));
+        }
+
+        /**
+         * @param outcome  the outcome of the instance
+         * @param features the features of the instance, one list per extractor
+         * @throws IOException if error while writing
+         */
+        public void write(String outcome, List<List<Feature>> features) throws IOException {
+            if (features.size() != columns.length)
+                throw new IllegalArgumentException("Expected the features of " + columns.length + " extractors");
+            outcomes.write(outcome);
+            outcomes.write('\n');
+            for (int e = 0; e < columns.length; ++e) {
+                BufferedWriter column = columns[e];
+                boolean first = true;
+                for (Feature feature : features.get(e)) {
+                    if (!first)
+                        column.write('\t');
+                    column.write(FeatureEncoderUtil.escape(getKey(feature)));
+                    first = false;
+                }
+                column.write('\n');
+            }
+        }
+
+        /**
+         * Ends the current sequence
+         *
+         * @throws IOException if error while writing
+         */
+        public void endSequence() throws IOException {
+            outcomes.write('\n');
+            for (BufferedWriter column : columns)
+                column.write('\n');
+        }
+
+        @Override
+        public void close() throws IOException {
+            outcomes.close();
+            for (BufferedWriter column : columns)
+                column.close();
+        }
+
+        private static BufferedWriter create(File file) throws IOException {
+            return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16);
+        }
+    }
+
+    /**
+     * @return the string the ClearTK encoders make of the feature: name_value, the name of numeric and boolean
+     * features
+     */
+    private static String getKey(Feature feature) {
+        String name = feature.getName();
+        Object value = feature.getValue();
+        if (value == null || value instanceof Number || value instanceof Boolean)
+            return name == null ? "" : name;
+        return name == null ? value.toString() : name + "_" + value;
+    }
+
+    /**
+     * Reverts {@link FeatureEncoderUtil#escape(String)}, which writes the escaped characters as %Uxxxx
+     */
+    private static String unescape(String line, int begin, int end) {
+        int escape = line.indexOf('%', begin);
+        if (escape < 0 || escape >= end)
+            return line.substring(begin, end);
+        StringBuilder unescaped = new StringBuilder(end - begin);
+        for (int i = begin; i < end; ++i) {
+            char c = line.charAt(i);
+            if (c == '%' && i + 6 <= end && line.charAt(i + 1) == 'U') {
+                unescaped.append((char) Integer.parseInt(line.substring(i + 2, i + 6), 16));
+                i += 5;
+            } else {
+                unescaped.append(c);
+            }
+        }
+        return unescaped.toString();
+    }
+
+    private static File getColumnFile(File directory, int extractor) {
+        return new File(directory, COLUMN_PREFIX + extractor + COLUMN_SUFFIX);
+    }
+
+    private static BufferedReader openReader(File file) throws IOException {
+        return new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), 1 << 16);
+    }
+}
@@ -0,0 +1,131 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.feature;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.gazetteer.GazetteerAutomaton;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.gazetteer.GazetteerRegistry;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.resource.Resources;
+import org.apache.uima.jcas.JCas;
+import org.cleartk.ml.Feature;
+import org.cleartk.ml.feature.extractor.CleartkExtractorException;
+import org.cleartk.ml.feature.extractor.FeatureExtractor1;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.apache.uima.fit.util.JCasUtil.selectCovered;
+import static org.apache.uima.fit.util.JCasUtil.selectCovering;
+
+/**
+ * Feature extractor that finds (multi-token) entries of several NE lists in a sentence with a single Aho-Corasick
+ * scan. Every token covered by an entry gets a B-&lt;list&gt; (first token of the entry) or I-&lt;list&gt; (following
+ * tokens) feature.
+ * <p>
+ * An entry only spans several tokens if its line holds several words. Lists with one word per line (e.g. the lists
+ * eng_* and deu_*) cannot produce multi-token matches.
+ */
+public class GazetteerSpanExtractor implements FeatureExtractor1<Token>, SentenceFeatureExtractor {
+
+    public static final String FEATURE_NAME = "GazetteerSpan";
+
+    private final String[] neListNames;
+    private final String[] featureNames;
+    private transient volatile GazetteerRegistry.Handle<GazetteerAutomaton> automaton;
+    private transient Feature[] beginFeatures;
+    private transient Feature[] insideFeatures;
+
+    /**
+     * @param neListNames  the paths to the lists of NE features
+     * @param featureNames the names of the NE features (one per list)
+     */
+    public GazetteerSpanExtractor(String[] neListNames, String[] featureNames) {
+        if (neListNames == null || neListNames.length == 0)
+            throw new IllegalArgumentException("Provide at least one list of NE features");
+        for (String neListName : neListNames)
+            if (neListName == null || neListName.isEmpty() || !Resources.exists(neListName))
+                throw new IllegalArgumentException("Provide a valid, non-empty path to the list of NE features");
+        this.neListNames = neListNames.clone();
+
+        if (featureNames == null || featureNames.length != neListNames.length)
+            throw new IllegalArgumentException("Please provide a valid name for every NE feature!");
+        for (String featureName : featureNames)
+            if (featureName == null || featureName.isEmpty())
+                throw new IllegalArgumentException("Please provide a valid name for the NE feature!");
+        this.featureNames = featureNames.clone();
+    }
+
+    /**
+     * Looks up the shared automaton of the lists and prepares the (immutable) features
+     *
+     * @throws IOException if file not found or error while readings
+     */
+    private void generateAutomaton() throws IOException {
+        Feature[] begin = new Feature[this.featureNames.length];
+        Feature[] inside = new Feature[this.featureNames.length];
+        for (int i = 0; i < this.featureNames.length; ++i) {
+            begin[i] = new Feature(FEATURE_NAME, "B-" + this.featureNames[i]);
+            inside[i] = new Feature(FEATURE_NAME, "I-" + this.featureNames[i]);
+        }
+        this.beginFeatures = begin;
+        this.insideFeatures = inside;
+        this.automaton = GazetteerRegistry.getAutomatonHandle(this.neListNames);
+    }
+
+    @Override
+    public List<List<Feature>> extractSentence(JCas jCas, Sentence sentence, List<Token> tokens)
+            throws CleartkExtractorException {
+        if (this.automaton == null) {
+            try {
+                this.generateAutomaton();
+            } catch (IOException e) {
+                throw new CleartkExtractorException(e);
+            }
+        }
+        int count = tokens.size();
+        int[] begins = new int[count];
+        int[] ends = new int[count];
+        for (int i = 0; i < count; ++i) {
+            begins[i] = tokens.get(i).getBegin();
+            ends[i] = tokens.get(i).getEnd();
+        }
+        // the lists of every token, split by the position of the token in the entry
+        long[] beginLists = new long[count];
+        long[] insideLists = new long[count];
+        // one automaton for the whole sentence, even if the lists are reloaded meanwhile
+        this.automaton.get().scan(jCas.getDocumentText(), begins, ends, count, (begin, end, lists) -> {
+            beginLists[begin] |= lists;
+            for (int i = begin + 1; i < end; ++i)
+                insideLists[i] |= lists;
+        });
+
+        List<List<Feature>> features = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            if (beginLists[i] == 0 && insideLists[i] == 0) {
+                features.add(Collections.emptyList());
+                continue;
+            }
+            List<Feature> tokenFeatures = new ArrayList<>(2);
+            for (long lists = beginLists[i]; lists != 0; lists &= lists - 1)
+                tokenFeatures.add(this.beginFeatures[Long.numberOfTrailingZeros(lists)]);
+            for (long lists = insideLists[i]; lists != 0; lists &= lists - 1)
+                tokenFeatures.add(this.insideFeatures[Long.numberOfTrailingZeros(lists)]);
+            features.add(tokenFeatures);
+        }
+        return features;
+    }
+
+    /**
+     * Extracts the features of a single token. This scans the whole covering sentence, so prefer
+     * {@link #extractSentence(JCas, Sentence, List)} when all tokens of the sentence are needed.
+     */
+    @Override
+    public List<Feature> extract(JCas jCas, Token token) throws CleartkExtractorException {
+        List<Sentence> sentences = selectCovering(jCas, Sentence.class, token);
+        if (sentences.isEmpty())
+            return Collections.emptyList();
+        List<Token> tokens = selectCovered(jCas, Token.class, sentences.get(0));
+        return this.extractSentence(jCas, sentences.get(0), tokens).get(tokens.indexOf(token));
+    }
+}
@@ -1,11 +1,12 @@
 package de.unihamburg.informatik.nlp4web.tutorial.tut5.feature;
 
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.gazetteer.Gazetteer;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.gazetteer.GazetteerRegistry;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.metrics.PipelineMetrics;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.resource.Resources;
 import org.cleartk.ml.Feature;
 import org.cleartk.ml.feature.function.FeatureFunction;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.*;
 
@@ -16,10 +17,19 @@ public class NEListExtractor implements FeatureFunction {
 
     private final String neListName;
     private final String featureName;
-    private Set<String> namedEntitiesDict;
+    /**
+     * the handle of the shared dictionary of the list, resolved lazily from the {@link GazetteerRegistry} (also after
+     * XStream deserialization, therefore transient), follows the reloads of the list
+     */
+    private transient volatile GazetteerRegistry.Handle<Gazetteer> namedEntitiesDict;
+    private transient String listFeatureName;
+    /**
+     * the process wide lookup counter of the feature (see {@link PipelineMetrics#getGazetteerCounter})
+     */
+    private transient PipelineMetrics.HitCounter hitCounter;
 
     public NEListExtractor(String neListName, String featureName) throws IOException {
-        if (neListName == null || neListName.isEmpty() || !new File(neListName).exists())
+        if (neListName == null || neListName.isEmpty() || !Resources.exists(neListName))
             throw new IllegalArgumentException("Provide a valid, non-empty path to the list of NE features");
         this.neListName = neListName;
 
@@ -31,16 +41,15 @@ public class NEListExtractor implements FeatureFunction {
     }
 
     /**
-     * Generates the dictionary of Named Entities
+     * Looks up the shared dictionary of Named Entities
      *
      * @throws IOException if file not found or error while readings
      */
     private void generateDictionary() throws IOException {
-        try (BufferedReader reader = new BufferedReader(new FileReader(this.neListName))) {
-            this.namedEntitiesDict = new HashSet<>();
-            String neToken = null;
-            while ((neToken = reader.readLine()) != null)
-                this.namedEntitiesDict.add(neToken.toLowerCase());
+        try {
+            this.listFeatureName = "NamedEntityList<" + this.neListName + ">";
+            this.hitCounter = PipelineMetrics.getGazetteerCounter(this.featureName);
+            this.namedEntitiesDict = GazetteerRegistry.getCombinedHandle(this.neListName);
         } catch (IOException e) {
             e.printStackTrace();
             throw e;
@@ -54,8 +63,12 @@ public class NEListExtractor implements FeatureFunction {
         try {
             if (this.namedEntitiesDict == null)
                 this.generateDictionary();
-            String featureValue = feature.getValue().toString().toLowerCase();
-            return namedEntitiesDict.contains(featureValue) ? Collections.singletonList(new Feature("NamedEntityList<" + neListName + ">", this.featureName)) : Collections.emptyList();
+            Object featureValue = feature.getValue();
+            // the gazetteer compares case insensitive, so the covered text is looked up as it is (no copy)
+            CharSequence token = featureValue instanceof CharSequence ? (CharSequence) featureValue : featureValue.toString();
+            boolean hit = namedEntitiesDict.get().contains(token);
+            hitCounter.record(hit);
+            return hit ? Collections.singletonList(new Feature(this.listFeatureName, this.featureName)) : Collections.emptyList();
         } catch (IOException e) {
             e.printStackTrace();
         }
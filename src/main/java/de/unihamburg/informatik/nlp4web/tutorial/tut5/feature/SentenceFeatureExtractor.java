@@ -0,0 +1,25 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.feature;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import org.apache.uima.jcas.JCas;
+import org.cleartk.ml.Feature;
+import org.cleartk.ml.feature.extractor.CleartkExtractorException;
+
+import java.util.List;
+
+/**
+ * Feature extractor that handles all tokens of a sentence at once (e.g. to find entities spanning several tokens).
+ * The NERAnnotator calls it once per sentence instead of once per token.
+ */
+public interface SentenceFeatureExtractor {
+
+    /**
+     * @param jCas     the JCas containing the sentence
+     * @param sentence the sentence
+     * @param tokens   the tokens of the sentence (in document order)
+     * @return the features of every token (same order and size as the tokens)
+     * @throws CleartkExtractorException if the extraction fails
+     */
+    List<List<Feature>> extractSentence(JCas jCas, Sentence sentence, List<Token> tokens) throws CleartkExtractorException;
+}
@@ -0,0 +1,174 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.feature;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import org.apache.uima.jcas.JCas;
+import org.cleartk.ml.Feature;
+import org.cleartk.ml.feature.extractor.CleartkExtractorException;
+import org.cleartk.ml.feature.extractor.FeatureExtractor1;
+import org.cleartk.ml.feature.extractor.NamedFeatureExtractor1;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import static org.apache.uima.fit.util.JCasUtil.selectCovered;
+import static org.apache.uima.fit.util.JCasUtil.selectCovering;
+import static org.apache.uima.fit.util.JCasUtil.selectFollowing;
+import static org.apache.uima.fit.util.JCasUtil.selectPreceding;
+
+/**
+ * Feature extractor of the features of the preceding and following tokens within the sentence. The features of every
+ * token of the sentence are extracted once and the context features of a token are taken from the slots of its
+ * neighbours, instead of looking up the neighbours in the CAS indexes and extracting their features again for every
+ * token. So any token extractor can be used and the window can be widened without extracting more often.
+ * <p>
+ * The features are the same (names, values and order) as the ones of a
+ * {@link org.cleartk.ml.feature.extractor.CleartkExtractor} with the contexts
+ * {@link org.cleartk.ml.feature.extractor.CleartkExtractor.Preceding} and
+ * {@link org.cleartk.ml.feature.extractor.CleartkExtractor.Following} extracted within the sentence, e.g.
+ * Preceding_0_2_1 = OOB2 for the second preceding token of the first token of a sentence.
+ */
+public class SentenceWindowExtractor implements FeatureExtractor1<Token>, SentenceFeatureExtractor {
+
+    private final FeatureExtractor1<Token> extractor;
+    private final int precedingBegin;
+    private final int precedingEnd;
+    private final int followingBegin;
+    private final int followingEnd;
+    /**
+     * the names of the positions of the preceding and following tokens, e.g. Preceding_0_2_1 (transient, so they are
+     * created again after XStream deserialization)
+     */
+    private transient volatile String[] precedingNames;
+    private transient String[] followingNames;
+    private transient String extractorName;
+
+    /**
+     * @param extractor the extractor of the features of a single token
+     * @param preceding the number of preceding tokens, like CleartkExtractor.Preceding(preceding)
+     * @param following the number of following tokens, like CleartkExtractor.Following(following)
+     */
+    public SentenceWindowExtractor(FeatureExtractor1<Token> extractor, int preceding, int following) {
+        this(extractor, 0, preceding, 0, following);
+    }
+
+    /**
+     * @param extractor      the extractor of the features of a single token
+     * @param precedingBegin the first preceding token (0 is the token right before), like
+     *                       CleartkExtractor.Preceding(precedingBegin, precedingEnd)
+     * @param precedingEnd   the end (exclusive) of the preceding tokens
+     * @param followingBegin the first following token (0 is the token right after), like
+     *                       CleartkExtractor.Following(followingBegin, followingEnd)
+     * @param followingEnd   the end (exclusive) of the following tokens
+     */
+    public SentenceWindowExtractor(FeatureExtractor1<Token> extractor, int precedingBegin, int precedingEnd,
+                                   int followingBegin, int followingEnd) {
+        if (extractor == null)
+            throw new IllegalArgumentException("Provide the extractor of the token features");
+        if (precedingBegin < 0 || precedingBegin > precedingEnd || followingBegin < 0 || followingBegin > followingEnd)
+            throw new IllegalArgumentException(String.format("expected 0 <= begin <= end, found preceding %d to %d "
+                    + "and following %d to %d", precedingBegin, precedingEnd, followingBegin, followingEnd));
+        this.extractor = extractor;
+        this.precedingBegin = precedingBegin;
+        this.precedingEnd = precedingEnd;
+        this.followingBegin = followingBegin;
+        this.followingEnd = followingEnd;
+    }
+
+    /**
+     * Creates the names of the positions like the contexts of the CleartkExtractor
+     */
+    private void generateNames() {
+        String[] following = new String[this.followingEnd];
+        for (int position = this.followingBegin; position < this.followingEnd; ++position)
+            following[position] = Feature.createName("Following", String.valueOf(this.followingBegin),
+                    String.valueOf(this.followingEnd), String.valueOf(position));
+        String[] preceding = new String[this.precedingEnd];
+        for (int position = this.precedingBegin; position < this.precedingEnd; ++position)
+            preceding[position] = Feature.createName("Preceding", String.valueOf(this.precedingBegin),
+                    String.valueOf(this.precedingEnd), String.valueOf(position));
+        this.extractorName = this.extractor instanceof NamedFeatureExtractor1
+                ? ((NamedFeatureExtractor1<Token>) this.extractor).getFeatureName() : null;
+        this.followingNames = following;
+        this.precedingNames = preceding;
+    }
+
+    @Override
+    public List<List<Feature>> extractSentence(JCas jCas, Sentence sentence, List<Token> tokens)
+            throws CleartkExtractorException {
+        if (this.precedingNames == null)
+            this.generateNames();
+        int count = tokens.size();
+
+        // the features of every token, extracted once
+        List<List<Feature>> tokenFeatures;
+        if (this.extractor instanceof SentenceFeatureExtractor) {
+            tokenFeatures = ((SentenceFeatureExtractor) this.extractor).extractSentence(jCas, sentence, tokens);
+        } else {
+            tokenFeatures = new ArrayList<>(count);
+            for (Token token : tokens)
+                tokenFeatures.add(this.extractor.extract(jCas, token));
+        }
+
+        // the CleartkExtractor numbers the positions out of bounds from the begin of the window (instead of the
+        // sentence) if there are fewer tokens than the begin of the window in the document, so those are counted
+        int tokensBefore = this.precedingBegin;
+        int tokensAfter = this.followingBegin;
+        if (count > 0 && this.precedingBegin > 0)
+            tokensBefore = selectPreceding(jCas, Token.class, tokens.get(0), this.precedingBegin).size();
+        if (count > 0 && this.followingBegin > 0)
+            tokensAfter = selectFollowing(jCas, Token.class, tokens.get(count - 1), this.followingBegin).size();
+
+        List<List<Feature>> features = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            List<Feature> windowFeatures = new ArrayList<>();
+            // the preceding tokens from the farthest to the nearest, the positions of the window before the sentence
+            // are numbered from the begin of the sentence (OOB1 is the nearest one)
+            for (int position = this.precedingEnd - 1; position >= this.precedingBegin; --position) {
+                int neighbour = i - 1 - position;
+                if (neighbour >= 0)
+                    addFeatures(this.precedingNames[position], tokenFeatures.get(neighbour), windowFeatures);
+                else
+                    windowFeatures.add(outOfBounds(this.precedingNames[position],
+                            position - Math.min(Math.max(this.precedingBegin, i), tokensBefore + i) + 1));
+            }
+            // the following tokens from the nearest to the farthest, likewise numbered from the end of the sentence
+            for (int position = this.followingBegin; position < this.followingEnd; ++position) {
+                int neighbour = i + 1 + position;
+                if (neighbour < count)
+                    addFeatures(this.followingNames[position], tokenFeatures.get(neighbour), windowFeatures);
+                else
+                    windowFeatures.add(outOfBounds(this.followingNames[position],
+                            position - Math.min(Math.max(this.followingBegin, count - 1 - i),
+                                    tokensAfter + count - 1 - i) + 1));
+            }
+            features.add(windowFeatures);
+        }
+        return features;
+    }
+
+    private static void addFeatures(String positionName, List<Feature> tokenFeatures, List<Feature> windowFeatures) {
+        for (Feature feature : tokenFeatures)
+            windowFeatures.add(new Feature(Feature.createName(positionName, feature.getName()), feature.getValue()));
+    }
+
+    private Feature outOfBounds(String positionName, int distance) {
+        return new Feature(Feature.createName(positionName, this.extractorName),
+                String.format(Locale.ROOT, "OOB%d", distance));
+    }
+
+    /**
+     * Extracts the features of a single token. This extracts the features of all tokens of the covering sentence, so
+     * prefer {@link #extractSentence(JCas, Sentence, List)} when all tokens of the sentence are needed.
+     */
+    @Override
+    public List<Feature> extract(JCas jCas, Token token) throws CleartkExtractorException {
+        List<Sentence> sentences = selectCovering(jCas, Sentence.class, token);
+        if (sentences.isEmpty())
+            return Collections.emptyList();
+        List<Token> tokens = selectCovered(jCas, Token.class, sentences.get(0));
+        return this.extractSentence(jCas, sentences.get(0), tokens).get(tokens.indexOf(token));
+    }
+}
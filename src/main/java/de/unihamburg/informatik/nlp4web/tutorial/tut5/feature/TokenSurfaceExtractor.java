@@ -0,0 +1,291 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.feature;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.gazetteer.Gazetteer;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.gazetteer.GazetteerRegistry;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.metrics.PipelineMetrics;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.resource.Resources;
+import org.apache.uima.jcas.JCas;
+import org.cleartk.ml.Feature;
+import org.cleartk.ml.feature.extractor.CleartkExtractorException;
+import org.cleartk.ml.feature.extractor.FeatureExtractor1;
+import org.cleartk.ml.feature.function.CapitalTypeFeatureFunction.CapitalType;
+import org.cleartk.ml.feature.function.NumericTypeFeatureFunction.NumericType;
+import org.cleartk.ml.feature.util.CaseUtil;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Feature extractor that computes all surface features of a token in one pass over its characters: the covered text,
+ * the lower cased text, the capital type, the numeric type, the suffixes of two and three characters and the
+ * character category pattern. Optionally the token is looked up once in all NE lists and gets the features of the
+ * lists containing it.
+ * <p>
+ * The features are the same (names, values and order) as the ones of the ClearTK feature functions in
+ * {@link FeatureExtractorFactory#createTokenFeatureExtractors()} before, followed by the ones of the
+ * {@link NEListExtractor}s of the lists, so existing models stay valid. Tokens with non-ASCII characters (or a
+ * Turkish or Azeri default locale, which lower cases the ASCII 'I' differently) are lower and upper cased by the
+ * String methods like the feature functions do.
+ */
+public class TokenSurfaceExtractor implements FeatureExtractor1<Token> {
+
+    public static final String LOWER_CASE_FEATURE = "LowerCase";
+    public static final String CAPITAL_TYPE_FEATURE = "CapitalType";
+    public static final String NUMERIC_TYPE_FEATURE = "NumericType";
+    public static final String SUFFIX2_FEATURE = Feature.createName("NGram", "Right", "0", "2", "2");
+    public static final String SUFFIX3_FEATURE = Feature.createName("NGram", "Right", "0", "3", "3");
+    public static final String CHAR_PATTERN_FEATURE = "CharPattern";
+
+    private static final Pattern ROMAN_NUMERAL_PATTERN = Pattern.compile(
+            "^M?M?M?(CM|CD|D?C?C?C?)(XC|XL|L?X?X?X?)(IX|IV|V?I?I?I?)$");
+
+    /**
+     * the abbreviations of the Unicode categories (see {@link Character#getType(char)}) in the character pattern
+     */
+    private static final String[] CATEGORIES = new String[Character.FINAL_QUOTE_PUNCTUATION + 1];
+
+    static {
+        CATEGORIES[Character.CONTROL] = "CC";
+        CATEGORIES[Character.FORMAT] = "Cf";
+        CATEGORIES[Character.UNASSIGNED] = "Cn";
+        CATEGORIES[Character.PRIVATE_USE] = "Co";
+        CATEGORIES[Character.SURROGATE] = "Cs";
+        CATEGORIES[Character.LOWERCASE_LETTER] = "Ll";
+        CATEGORIES[Character.MODIFIER_LETTER] = "Lm";
+        CATEGORIES[Character.OTHER_LETTER] = "Lo";
+        CATEGORIES[Character.TITLECASE_LETTER] = "Lt";
+        CATEGORIES[Character.UPPERCASE_LETTER] = "Lu";
+        CATEGORIES[Character.COMBINING_SPACING_MARK] = "Mc";
+        CATEGORIES[Character.ENCLOSING_MARK] = "Me";
+        CATEGORIES[Character.NON_SPACING_MARK] = "Mn";
+        CATEGORIES[Character.DECIMAL_DIGIT_NUMBER] = "Nd";
+        CATEGORIES[Character.LETTER_NUMBER] = "Nl";
+        CATEGORIES[Character.OTHER_NUMBER] = "No";
+        CATEGORIES[Character.CONNECTOR_PUNCTUATION] = "Pc";
+        CATEGORIES[Character.DASH_PUNCTUATION] = "Pd";
+        CATEGORIES[Character.END_PUNCTUATION] = "Pe";
+        CATEGORIES[Character.FINAL_QUOTE_PUNCTUATION] = "Pf";
+        CATEGORIES[Character.INITIAL_QUOTE_PUNCTUATION] = "Pi";
+        CATEGORIES[Character.OTHER_PUNCTUATION] = "Po";
+        CATEGORIES[Character.START_PUNCTUATION] = "Ps";
+        CATEGORIES[Character.CURRENCY_SYMBOL] = "Sc";
+        CATEGORIES[Character.MODIFIER_SYMBOL] = "Sk";
+        CATEGORIES[Character.MATH_SYMBOL] = "Sm";
+        CATEGORIES[Character.OTHER_SYMBOL] = "So";
+        CATEGORIES[Character.LINE_SEPARATOR] = "Zl";
+        CATEGORIES[Character.PARAGRAPH_SEPARATOR] = "Zp";
+        CATEGORIES[Character.SPACE_SEPARATOR] = "Zs";
+    }
+
+    private final String[] neListNames;
+    private final String[] featureNames;
+    /**
+     * the shared gazetteer of all lists (list i is bit i of the masks), resolved lazily from the
+     * {@link GazetteerRegistry} (also after XStream deserialization, therefore transient), follows the reloads of the
+     * lists
+     */
+    private transient volatile GazetteerRegistry.Handle<Gazetteer> gazetteer;
+    private transient Feature[] listFeatures;
+    private transient PipelineMetrics.HitCounter[] hitCounters;
+
+    /**
+     * Creates an extractor of the surface features only
+     */
+    public TokenSurfaceExtractor() {
+        this(new String[0], new String[0]);
+    }
+
+    /**
+     * @param neListNames  the paths to the lists of NE features, may be empty
+     * @param featureNames the names of the NE features (one per list)
+     */
+    public TokenSurfaceExtractor(String[] neListNames, String[] featureNames) {
+        if (neListNames == null || neListNames.length > Gazetteer.MAX_LISTS)
+            throw new IllegalArgumentException("Provide at most " + Gazetteer.MAX_LISTS + " lists of NE features");
+        for (String neListName : neListNames)
+            if (neListName == null || neListName.isEmpty() || !Resources.exists(neListName))
+                throw new IllegalArgumentException("Provide a valid, non-empty path to the list of NE features");
+        this.neListNames = neListNames.clone();
+
+        if (featureNames == null || featureNames.length != neListNames.length)
+            throw new IllegalArgumentException("Please provide a valid name for every NE feature!");
+        for (String featureName : featureNames)
+            if (featureName == null || featureName.isEmpty())
+                throw new IllegalArgumentException("Please provide a valid name for the NE feature!");
+        this.featureNames = featureNames.clone();
+    }
+
+    /**
+     * Looks up the shared gazetteer of the lists and prepares the (immutable) features
+     *
+     * @throws IOException if file not found or error while readings
+     */
+    private void generateGazetteer() throws IOException {
+        Feature[] features = new Feature[this.featureNames.length];
+        PipelineMetrics.HitCounter[] counters = new PipelineMetrics.HitCounter[this.featureNames.length];
+        for (int i = 0; i < this.featureNames.length; ++i) {
+            // the same features as the NEListExtractor of the list
+            features[i] = new Feature("NamedEntityList<" + this.neListNames[i] + ">", this.featureNames[i]);
+            counters[i] = PipelineMetrics.getGazetteerCounter(this.featureNames[i]);
+        }
+        this.listFeatures = features;
+        this.hitCounters = counters;
+        this.gazetteer = GazetteerRegistry.getCombinedHandle(this.neListNames);
+    }
+
+    @Override
+    public List<Feature> extract(JCas jCas, Token token) throws CleartkExtractorException {
+        String documentText = jCas.getDocumentText();
+        String text = documentText == null ? null : documentText.substring(token.getBegin(), token.getEnd());
+        List<Feature> features = new ArrayList<>(7 + this.neListNames.length);
+        // the covered text itself, like the CoveredTextExtractor
+        features.add(new Feature(text));
+        if (text == null)
+            return features;
+        this.addSurfaceFeatures(text, features);
+        if (this.neListNames.length > 0)
+            this.addListFeatures(text, features);
+        return features;
+    }
+
+    private void addSurfaceFeatures(String text, List<Feature> features) {
+        int length = text.length();
+        StringBuilder pattern = new StringBuilder(2 * length);
+        char[] lowered = null;
+        boolean ascii = true;
+        boolean upper = false;
+        boolean lower = false;
+        boolean upperAfterFirst = false;
+        boolean lowerAfterFirst = false;
+        boolean digits = false;
+        boolean onlyDigits = true;
+        boolean onlyAlphanumeric = true;
+        boolean onlyRomanDigits = true;
+        for (int i = 0; i < length; ++i) {
+            char c = text.charAt(i);
+            int type = Character.getType(c);
+            if (type >= CATEGORIES.length || CATEGORIES[type] == null)
+                throw new IllegalArgumentException("Unknown character type: " + type);
+            pattern.append(CATEGORIES[type]);
+
+            if (c >= 0x80) {
+                ascii = false;
+                onlyDigits = false;
+                onlyAlphanumeric = false;
+                onlyRomanDigits = false;
+            } else if (c >= 'A' && c <= 'Z') {
+                if (lowered == null)
+                    lowered = text.toCharArray();
+                lowered[i] = (char) (c + ('a' - 'A'));
+                upper = true;
+                upperAfterFirst |= i > 0;
+                onlyDigits = false;
+                onlyRomanDigits &= "MDCLXVI".indexOf(c) >= 0;
+            } else if (c >= 'a' && c <= 'z') {
+                lower = true;
+                lowerAfterFirst |= i > 0;
+                onlyDigits = false;
+                onlyRomanDigits = false;
+            } else if (c >= '0' && c <= '9') {
+                digits = true;
+                onlyRomanDigits = false;
+            } else {
+                onlyDigits = false;
+                onlyAlphanumeric &= c == '-';
+                onlyRomanDigits = false;
+            }
+        }
+
+        String language = Locale.getDefault().getLanguage();
+        boolean simpleCase = ascii && !"tr".equals(language) && !"az".equals(language);
+        String lowerCase = simpleCase ? (lowered == null ? text : new String(lowered)) : text.toLowerCase();
+        features.add(new Feature(LOWER_CASE_FEATURE, lowerCase));
+
+        CapitalType capitalType;
+        if (simpleCase)
+            capitalType = getCapitalType(text, upper, lower, upperAfterFirst, lowerAfterFirst);
+        else
+            capitalType = getCapitalType(text, lowerCase, text.toUpperCase());
+        if (capitalType != null)
+            features.add(new Feature(CAPITAL_TYPE_FEATURE, capitalType.toString()));
+
+        NumericType numericType = null;
+        if (length > 0 && onlyDigits)
+            numericType = isYear(text) ? NumericType.YEAR_DIGITS : NumericType.DIGITS;
+        else if (digits)
+            numericType = onlyAlphanumeric && (upper || lower) ? NumericType.ALPHANUMERIC : NumericType.SOME_DIGITS;
+        else if (length > 0 && onlyRomanDigits && ROMAN_NUMERAL_PATTERN.matcher(text).matches())
+            numericType = NumericType.ROMAN_NUMERAL;
+        if (numericType != null)
+            features.add(new Feature(NUMERIC_TYPE_FEATURE, numericType.toString()));
+
+        if (length >= 2)
+            features.add(new Feature(SUFFIX2_FEATURE, text.substring(length - 2)));
+        if (length >= 3)
+            features.add(new Feature(SUFFIX3_FEATURE, text.substring(length - 3)));
+        features.add(new Feature(CHAR_PATTERN_FEATURE, pattern.toString()));
+    }
+
+    /**
+     * @param text a token of ASCII digits
+     * @return true for the years 1000 to 2199, like the NumericTypeFeatureFunction
+     */
+    private static boolean isYear(String text) {
+        return text.length() == 4
+                && (text.charAt(0) == '1' || text.charAt(0) == '2' && (text.charAt(1) == '0' || text.charAt(1) == '1'));
+    }
+
+    /**
+     * The capital type of an ASCII token from the letters found in the pass over the characters
+     */
+    private static CapitalType getCapitalType(String text, boolean upper, boolean lower, boolean upperAfterFirst,
+                                              boolean lowerAfterFirst) {
+        if (!upper && !lower)
+            return null;
+        if (!upper)
+            return CapitalType.ALL_LOWERCASE;
+        if (!lower)
+            return CapitalType.ALL_UPPERCASE;
+        char first = text.charAt(0);
+        if (first >= 'A' && first <= 'Z' && !upperAfterFirst && lowerAfterFirst)
+            return CapitalType.INITIAL_UPPERCASE;
+        return CapitalType.MIXED_CASE;
+    }
+
+    /**
+     * The capital type of any token, computed like the CapitalTypeFeatureFunction
+     */
+    private static CapitalType getCapitalType(String text, String lowerCase, String upperCase) {
+        if (text.isEmpty() || lowerCase.equals(upperCase))
+            return null;
+        if (text.equals(lowerCase))
+            return CapitalType.ALL_LOWERCASE;
+        if (text.equals(upperCase))
+            return CapitalType.ALL_UPPERCASE;
+        if (CaseUtil.isInitialUppercase(text))
+            return CapitalType.INITIAL_UPPERCASE;
+        return CapitalType.MIXED_CASE;
+    }
+
+    private void addListFeatures(String text, List<Feature> features) throws CleartkExtractorException {
+        if (this.gazetteer == null) {
+            try {
+                this.generateGazetteer();
+            } catch (IOException e) {
+                throw new CleartkExtractorException(e);
+            }
+        }
+        // one lookup answers the membership for all lists
+        long lists = this.gazetteer.get().lookup(text);
+        for (int i = 0; i < this.listFeatures.length; ++i) {
+            boolean hit = (lists & (1L << i)) != 0;
+            this.hitCounters[i].record(hit);
+            if (hit)
+                features.add(this.listFeatures[i]);
+        }
+    }
+}
@@ -0,0 +1,486 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.gazetteer;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.resource.Resources;
+
+/**
+ * Immutable, case insensitive lookup structure for one or more lists of named entities (one entry per line of a list
+ * file). Instances are shared between all extractors and threads, so they must never be modified after building.
+ * <p>
+ * All entries are lower cased char by char and packed into a single char buffer. An open addressing table of entry
+ * ids (with the full hash of every entry as fingerprint) answers lookups straight from a {@link CharSequence} without
+ * allocating anything. For every entry a bitmask of the lists containing it is kept, so a single lookup answers the
+ * membership for all lists at once.
+ * <p>
+ * The buffers either wrap heap arrays (when built from the list files) or are views of a memory mapped, precompiled
+ * gazetteer image (see {@link #writeTo(Path)} and {@link #map(Path)}). Only absolute gets are used, so both are safe
+ * to share between threads.
+ */
+public final class Gazetteer {
+
+    /**
+     * maximum number of lists in one gazetteer (one bit per list in the mask)
+     */
+    public static final int MAX_LISTS = Long.SIZE;
+
+    private static final int IMAGE_MAGIC = 0x4e455247; // "NERG"
+    private static final int IMAGE_VERSION = 2;
+
+    private final String[] sources;
+    /**
+     * the checksums of the contents of the lists (see {@link #checksum(byte[])}), 0 if unknown
+     */
+    private final long[] checksums;
+    private final CharBuffer chars;
+    private final IntBuffer offsets;
+    private final IntBuffer hashes;
+    private final LongBuffer masks;
+    private final IntBuffer table;
+    /**
+     * the bits (of the underlying masks) of the lists of this gazetteer, null if all lists are used in order
+     */
+    private final int[] listBits;
+    private final long selection;
+    private volatile int size = -1;
+
+    private Gazetteer(String[] sources, long[] checksums, CharBuffer chars, IntBuffer offsets, IntBuffer hashes,
+                      LongBuffer masks, IntBuffer table, int[] listBits) {
+        this.sources = sources;
+        this.checksums = checksums;
+        this.chars = chars;
+        this.offsets = offsets;
+        this.hashes = hashes;
+        this.masks = masks;
+        this.table = table;
+        this.listBits = listBits;
+        long selection = 0L;
+        if (listBits == null)
+            selection = sources.length == MAX_LISTS ? -1L : (1L << sources.length) - 1;
+        else
+            for (int bit : listBits)
+                selection |= 1L << bit;
+        this.selection = selection;
+    }
+
+    /**
+     * Reads a gazetteer from one or more textual list files. The i-th file is represented by bit i of the masks.
+     *
+     * @param paths the paths to the list files (see {@link Resources})
+     * @return the loaded gazetteer
+     * @throws IOException if file not found or error while reading
+     */
+    static Gazetteer load(String... paths) throws IOException {
+        Builder builder = new Builder();
+        for (String path : paths)
+            builder.addList(path, Resources.read(path));
+        return builder.build();
+    }
+
+    /**
+     * Maps a precompiled gazetteer image into memory. Nothing is parsed or copied onto the heap, the lookups read
+     * the mapped pages directly (which are shared with all other processes mapping the same image).
+     *
+     * @param image the path to the image written by {@link #writeTo(Path)}
+     * @return the mapped gazetteer
+     * @throws IOException if file not found, error while reading or the file is no gazetteer image
+     */
+    public static Gazetteer map(Path image) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(image, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return read(buffer, image.toString());
+    }
+
+    /**
+     * Reads a gazetteer image from a buffer (the views share the content of the buffer)
+     */
+    static Gazetteer read(ByteBuffer buffer, String name) throws IOException {
+        try {
+            if (buffer.getInt() != IMAGE_MAGIC || buffer.getInt() != IMAGE_VERSION)
+                throw new IOException(name + " is no gazetteer image of version " + IMAGE_VERSION);
+            String[] sources = new String[buffer.getInt()];
+            long[] checksums = new long[sources.length];
+            for (int i = 0; i < sources.length; ++i) {
+                byte[] source = new byte[buffer.getShort() & 0xffff];
+                buffer.get(source);
+                sources[i] = new String(source, StandardCharsets.UTF_8);
+                checksums[i] = buffer.getLong();
+            }
+            int size = buffer.getInt();
+            int charCount = buffer.getInt();
+            int tableLength = buffer.getInt();
+            buffer.position(align(buffer.position()));
+            LongBuffer masks = slice(buffer, size * 8L).asLongBuffer();
+            IntBuffer offsets = slice(buffer, (size + 1) * 4L).asIntBuffer();
+            IntBuffer hashes = slice(buffer, size * 4L).asIntBuffer();
+            IntBuffer table = slice(buffer, tableLength * 4L).asIntBuffer();
+            CharBuffer chars = slice(buffer, charCount * 2L).asCharBuffer();
+            return new Gazetteer(sources, checksums, chars, offsets, hashes, masks, table, null);
+        } catch (RuntimeException e) {
+            throw new IOException(name + " is a corrupt gazetteer image", e);
+        }
+    }
+
+    /**
+     * Writes the gazetteer as binary image that can be mapped by {@link #map(Path)}.
+     *
+     * @param image the path of the image
+     * @throws IOException if error while writing
+     */
+    public void writeTo(Path image) throws IOException {
+        try (OutputStream stream = Files.newOutputStream(image)) {
+            writeTo(stream);
+        }
+    }
+
+    /**
+     * Writes the gazetteer as binary image (big endian, the sections aligned to 8 bytes)
+     *
+     * @param stream the stream to write the image to
+     * @throws IOException if error while writing
+     */
+    public void writeTo(OutputStream stream) throws IOException {
+        if (this.listBits != null)
+            throw new IllegalStateException("Only complete gazetteers can be written as image");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        out.writeInt(IMAGE_MAGIC);
+        out.writeInt(IMAGE_VERSION);
+        out.writeInt(this.sources.length);
+        for (int i = 0; i < this.sources.length; ++i) {
+            byte[] bytes = this.sources[i].getBytes(StandardCharsets.UTF_8);
+            out.writeShort(bytes.length);
+            out.write(bytes);
+            out.writeLong(this.checksums[i]);
+        }
+        int size = this.hashes.limit();
+        out.writeInt(size);
+        out.writeInt(this.chars.limit());
+        out.writeInt(this.table.limit());
+        pad(out);
+        for (int i = 0; i < size; ++i)
+            out.writeLong(this.masks.get(i));
+        pad(out);
+        for (int i = 0; i <= size; ++i)
+            out.writeInt(this.offsets.get(i));
+        pad(out);
+        for (int i = 0; i < size; ++i)
+            out.writeInt(this.hashes.get(i));
+        pad(out);
+        for (int i = 0; i < this.table.limit(); ++i)
+            out.writeInt(this.table.get(i));
+        pad(out);
+        for (int i = 0; i < this.chars.limit(); ++i)
+            out.writeChar(this.chars.get(i));
+        pad(out);
+        out.flush();
+    }
+
+    /**
+     * Creates a view of some of the lists of this gazetteer. The view shares all buffers with this gazetteer, the
+     * i-th selected list is represented by bit i of the masks returned by the view.
+     *
+     * @param lists the indices of the lists (their bits in the masks)
+     * @return the view
+     */
+    public Gazetteer select(int... lists) {
+        int[] bits = new int[lists.length];
+        String[] selectedSources = new String[lists.length];
+        long[] selectedChecksums = new long[lists.length];
+        for (int i = 0; i < lists.length; ++i) {
+            bits[i] = this.listBits == null ? lists[i] : this.listBits[lists[i]];
+            selectedSources[i] = this.sources[lists[i]];
+            selectedChecksums[i] = this.checksums[lists[i]];
+        }
+        return new Gazetteer(selectedSources, selectedChecksums, this.chars, this.offsets, this.hashes, this.masks,
+                this.table, bits);
+    }
+
+    /**
+     * @param source the name of a list
+     * @return the index of the list (its bit in the masks) or -1 if the list is not in this gazetteer
+     */
+    public int indexOfSource(String source) {
+        return Arrays.asList(this.sources).indexOf(source);
+    }
+
+    /**
+     * @param token the (not necessarily lower cased) token
+     * @return true if the token is in any of the lists
+     */
+    public boolean contains(CharSequence token) {
+        return indexOf(token) >= 0;
+    }
+
+    /**
+     * @param token the (not necessarily lower cased) token
+     * @return the bitmask of all lists containing the token, 0 if it's in none of them
+     */
+    public long lookup(CharSequence token) {
+        int id = indexOf(token);
+        return id < 0 ? 0L : getMask(id);
+    }
+
+    /**
+     * @param token the (not necessarily lower cased) token
+     * @return the id of the entry or -1 if the token is in none of the lists
+     */
+    public int indexOf(CharSequence token) {
+        return indexOf(token, 0, token.length());
+    }
+
+    /**
+     * @param text  the text containing the (not necessarily lower cased) token
+     * @param begin the begin of the token in the text
+     * @param end   the end of the token in the text
+     * @return the id of the entry or -1 if the token is in none of the lists
+     */
+    public int indexOf(CharSequence text, int begin, int end) {
+        int hash = hash(text, begin, end);
+        int mask = this.table.limit() - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = this.table.get(slot) - 1;
+            if (id < 0)
+                return -1;
+            if (this.hashes.get(id) == hash && equalsEntry(id, text, begin, end))
+                return (this.masks.get(id) & this.selection) != 0 ? id : -1;
+        }
+    }
+
+    /**
+     * @param id the id of the entry
+     * @return the bitmask of all lists containing the entry
+     */
+    public long getMask(int id) {
+        long mask = this.masks.get(id);
+        if (this.listBits == null)
+            return mask;
+        long selected = 0L;
+        for (int i = 0; i < this.listBits.length; ++i)
+            selected |= ((mask >>> this.listBits[i]) & 1L) << i;
+        return selected;
+    }
+
+    /**
+     * @param id the id of the entry
+     * @return the lower cased entry (allocates a new String)
+     */
+    public String getEntry(int id) {
+        int offset = this.offsets.get(id);
+        char[] entry = new char[this.offsets.get(id + 1) - offset];
+        for (int i = 0; i < entry.length; ++i)
+            entry[i] = this.chars.get(offset + i);
+        return new String(entry);
+    }
+
+    /**
+     * @return the number of distinct entries over all lists
+     */
+    public int size() {
+        int size = this.size;
+        if (size < 0) {
+            size = 0;
+            for (int id = 0; id < this.hashes.limit(); ++id)
+                if ((this.masks.get(id) & this.selection) != 0)
+                    ++size;
+            this.size = size;
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of lists in this gazetteer
+     */
+    public int getListCount() {
+        return this.sources.length;
+    }
+
+    /**
+     * @param list the index of the list (its bit in the masks)
+     * @return the name of the list
+     */
+    public String getSource(int list) {
+        return this.sources[list];
+    }
+
+    /**
+     * @param list the index of the list (its bit in the masks)
+     * @return the checksum of the content of the list (see {@link #checksum(byte[])}), 0 if unknown
+     */
+    public long getChecksum(int list) {
+        return this.checksums[list];
+    }
+
+    /**
+     * @param content the content of a list file
+     * @return the length (upper 32 bits) and the CRC-32 (lower 32 bits) of the content
+     */
+    public static long checksum(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length);
+        return (long) content.length << 32 | crc.getValue();
+    }
+
+    @Override
+    public String toString() {
+        return "Gazetteer" + Arrays.toString(this.sources) + "(" + size() + " entries)";
+    }
+
+    private boolean equalsEntry(int id, CharSequence text, int begin, int end) {
+        int offset = this.offsets.get(id);
+        if (this.offsets.get(id + 1) - offset != end - begin)
+            return false;
+        for (int i = begin; i < end; ++i)
+            if (this.chars.get(offset++) != Character.toLowerCase(text.charAt(i)))
+                return false;
+        return true;
+    }
+
+    private static int hash(CharSequence text, int begin, int end) {
+        int h = 0;
+        for (int i = begin; i < end; ++i)
+            h = 31 * h + Character.toLowerCase(text.charAt(i));
+        // spread the bits (murmur3 finalizer) since the table size is a power of two
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int align(int position) {
+        return (position + 7) & ~7;
+    }
+
+    private static void pad(DataOutputStream out) throws IOException {
+        while (out.size() != align(out.size()))
+            out.writeByte(0);
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, long length) {
+        ByteBuffer slice = buffer.slice();
+        slice.limit((int) length);
+        buffer.position(align(buffer.position() + (int) length));
+        return slice;
+    }
+
+    /**
+     * Collects the entries of the lists before they are packed into the immutable lookup structure.
+     */
+    static final class Builder {
+
+        private final List<String> sources = new ArrayList<>();
+        private final List<Long> checksums = new ArrayList<>();
+        private final Map<String, Long> entries = new LinkedHashMap<>();
+
+        /**
+         * @param source  the name of the list
+         * @param content the content of the list file (UTF-8, one entry per line)
+         * @throws IOException if error while reading
+         */
+        void addList(String source, byte[] content) throws IOException {
+            long bit = addList(source, checksum(content));
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8))) {
+                String neToken;
+                while ((neToken = reader.readLine()) != null)
+                    add(neToken, bit);
+            }
+        }
+
+        /**
+         * @param source the name of the list
+         * @return the bit of the new list in the masks
+         */
+        long addList(String source) {
+            return addList(source, 0L);
+        }
+
+        private long addList(String source, long checksum) {
+            if (this.sources.size() == MAX_LISTS)
+                throw new IllegalArgumentException("A gazetteer can hold at most " + MAX_LISTS + " lists!");
+            this.sources.add(source);
+            this.checksums.add(checksum);
+            return 1L << (this.sources.size() - 1);
+        }
+
+        /**
+         * @param entry the (not necessarily lower cased) entry
+         * @param bits  the bits of the lists containing the entry
+         */
+        void add(String entry, long bits) {
+            this.entries.merge(lowerCase(entry), bits, (a, b) -> a | b);
+        }
+
+        Gazetteer build() {
+            int size = this.entries.size();
+            int charCount = 0;
+            for (String entry : this.entries.keySet())
+                charCount += entry.length();
+
+            char[] chars = new char[charCount];
+            int[] offsets = new int[size + 1];
+            int[] hashes = new int[size];
+            long[] masks = new long[size];
+            // load factor <= 0.5 keeps the probe sequences short
+            int[] table = new int[Math.max(2, Integer.highestOneBit(Math.max(1, size)) << 2)];
+            int tableMask = table.length - 1;
+
+            int id = 0;
+            int offset = 0;
+            for (Map.Entry<String, Long> entry : this.entries.entrySet()) {
+                String key = entry.getKey();
+                key.getChars(0, key.length(), chars, offset);
+                offsets[id] = offset;
+                offset += key.length();
+                hashes[id] = hash(key, 0, key.length());
+                masks[id] = entry.getValue();
+                int slot = hashes[id] & tableMask;
+                while (table[slot] != 0)
+                    slot = (slot + 1) & tableMask;
+                table[slot] = id + 1;
+                ++id;
+            }
+            offsets[size] = offset;
+            long[] listChecksums = new long[this.checksums.size()];
+            for (int i = 0; i < listChecksums.length; ++i)
+                listChecksums[i] = this.checksums.get(i);
+            return new Gazetteer(this.sources.toArray(new String[0]), listChecksums, CharBuffer.wrap(chars),
+                    IntBuffer.wrap(offsets), IntBuffer.wrap(hashes), LongBuffer.wrap(masks), IntBuffer.wrap(table),
+                    null);
+        }
+
+        /**
+         * Lower cases char by char, exactly as the lookup does (and independent of the default locale)
+         */
+        private static String lowerCase(String entry) {
+            char[] lowerCased = entry.toCharArray();
+            for (int i = 0; i < lowerCased.length; ++i)
+                lowerCased[i] = Character.toLowerCase(lowerCased[i]);
+            return new String(lowerCased);
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.gazetteer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.resource.Resources;
+
+/**
+ * Aho-Corasick automaton over token sequences. Every line of a list file is one (possibly multi-token) entry, so
+ * a single left to right pass over the tokens of a sentence finds all entries of all lists, including overlapping
+ * ones. The symbols of the automaton are the ids of a {@link Gazetteer} over all words of all entries, therefore
+ * tokens are mapped to symbols case insensitive and without allocation.
+ * <p>
+ * Some list files prefix every entry with its entity type (e.g. "LOC Bad Homburg"). This prefix is not part of the
+ * entry and is dropped.
+ */
+public final class GazetteerAutomaton {
+
+    private static final Set<String> TYPE_PREFIXES = new HashSet<>(Arrays.asList("PER", "LOC", "ORG", "MISC"));
+
+    /**
+     * Receives the matches of a scan.
+     */
+    public interface MatchHandler {
+        /**
+         * @param begin the index of the first token of the match
+         * @param end   the index after the last token of the match
+         * @param lists the bitmask of all lists containing the matched entry
+         */
+        void match(int begin, int end, long lists);
+    }
+
+    private final String[] sources;
+    private final Gazetteer vocabulary;
+    // goto function: open addressing table from (state, symbol) to the next state
+    private final long[] transitionKeys;
+    private final int[] transitionTargets;
+    private final int[] failure;
+    // the next state on the failure chain which has an output (or -1)
+    private final int[] outputLink;
+    private final long[] outputs;
+    private final int[] depths;
+
+    private GazetteerAutomaton(String[] sources, Gazetteer vocabulary, long[] transitionKeys, int[] transitionTargets,
+                               int[] failure, int[] outputLink, long[] outputs, int[] depths) {
+        this.sources = sources;
+        this.vocabulary = vocabulary;
+        this.transitionKeys = transitionKeys;
+        this.transitionTargets = transitionTargets;
+        this.failure = failure;
+        this.outputLink = outputLink;
+        this.outputs = outputs;
+        this.depths = depths;
+    }
+
+    /**
+     * Reads the automaton from one or more textual list files. The i-th file is represented by bit i of the masks
+     * passed to the {@link MatchHandler}.
+     *
+     * @param paths the paths to the list files
+     * @return the built automaton
+     * @throws IOException if file not found or error while reading
+     */
+    static GazetteerAutomaton load(String... paths) throws IOException {
+        if (paths.length > Gazetteer.MAX_LISTS)
+            throw new IllegalArgumentException("An automaton can hold at most " + Gazetteer.MAX_LISTS + " lists!");
+        List<String[]> entries = new ArrayList<>();
+        List<Long> entryLists = new ArrayList<>();
+        Gazetteer.Builder vocabularyBuilder = new Gazetteer.Builder();
+        long vocabularyBit = vocabularyBuilder.addList("vocabulary");
+        for (int list = 0; list < paths.length; ++list) {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(Resources.open(paths[list]), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] words = tokenize(line);
+                    if (words.length == 0)
+                        continue;
+                    for (String word : words)
+                        vocabularyBuilder.add(word, vocabularyBit);
+                    entries.add(words);
+                    entryLists.add(1L << list);
+                }
+            }
+        }
+        Gazetteer vocabulary = vocabularyBuilder.build();
+
+        // build the trie (the goto function)
+        int transitionCount = 0;
+        for (String[] entry : entries)
+            transitionCount += entry.length;
+        int capacity = Integer.highestOneBit(Math.max(1, transitionCount)) << 2;
+        long[] transitionKeys = new long[capacity];
+        Arrays.fill(transitionKeys, -1L);
+        int[] transitionTargets = new int[capacity];
+        int[] depthsOfStates = new int[transitionCount + 1];
+        long[] outputs = new long[transitionCount + 1];
+        int stateCount = 1;
+        for (int e = 0; e < entries.size(); ++e) {
+            int state = 0;
+            for (String word : entries.get(e)) {
+                int symbol = vocabulary.indexOf(word);
+                int next = lookup(transitionKeys, transitionTargets, state, symbol);
+                if (next < 0) {
+                    next = stateCount++;
+                    depthsOfStates[next] = depthsOfStates[state] + 1;
+                    insert(transitionKeys, transitionTargets, state, symbol, next);
+                }
+                state = next;
+            }
+            outputs[state] |= entryLists.get(e);
+        }
+
+        // children of every state (needed for the breadth first computation of the failure function)
+        int[] childCount = new int[stateCount + 1];
+        for (int slot = 0; slot < capacity; ++slot)
+            if (transitionKeys[slot] >= 0)
+                ++childCount[(int) (transitionKeys[slot] >>> 32) + 1];
+        for (int state = 0; state < stateCount; ++state)
+            childCount[state + 1] += childCount[state];
+        int[] childSymbols = new int[transitionCount];
+        int[] childStates = new int[transitionCount];
+        int[] fill = Arrays.copyOf(childCount, stateCount);
+        for (int slot = 0; slot < capacity; ++slot) {
+            if (transitionKeys[slot] >= 0) {
+                int parent = (int) (transitionKeys[slot] >>> 32);
+                childSymbols[fill[parent]] = (int) transitionKeys[slot];
+                childStates[fill[parent]++] = transitionTargets[slot];
+            }
+        }
+
+        int[] failure = new int[stateCount];
+        int[] outputLink = new int[stateCount];
+        Arrays.fill(outputLink, -1);
+        int[] queue = new int[stateCount];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = 0;
+        while (head < tail) {
+            int state = queue[head++];
+            for (int c = childCount[state]; c < childCount[state + 1]; ++c) {
+                int symbol = childSymbols[c];
+                int child = childStates[c];
+                int fallback = 0;
+                if (state != 0) {
+                    int f = failure[state];
+                    while (true) {
+                        int next = lookup(transitionKeys, transitionTargets, f, symbol);
+                        if (next >= 0) {
+                            fallback = next;
+                            break;
+                        }
+                        if (f == 0)
+                            break;
+                        f = failure[f];
+                    }
+                }
+                failure[child] = fallback;
+                outputLink[child] = outputs[fallback] != 0 ? fallback : outputLink[fallback];
+                queue[tail++] = child;
+            }
+        }
+
+        return new GazetteerAutomaton(paths.clone(), vocabulary, transitionKeys, transitionTargets, failure,
+                outputLink, Arrays.copyOf(outputs, stateCount), Arrays.copyOf(depthsOfStates, stateCount));
+    }
+
+    /**
+     * Scans the tokens in one pass and reports every occurrence of an entry of any list.
+     *
+     * @param text    the text containing the tokens
+     * @param begins  the begins of the tokens in the text
+     * @param ends    the ends of the tokens in the text
+     * @param count   the number of tokens
+     * @param handler receives the matches (ordered by their end)
+     */
+    public void scan(CharSequence text, int[] begins, int[] ends, int count, MatchHandler handler) {
+        int state = 0;
+        for (int i = 0; i < count; ++i) {
+            int symbol = this.vocabulary.indexOf(text, begins[i], ends[i]);
+            if (symbol < 0) {
+                // the word isn't part of any entry
+                state = 0;
+                continue;
+            }
+            int next;
+            while ((next = lookup(this.transitionKeys, this.transitionTargets, state, symbol)) < 0 && state != 0)
+                state = this.failure[state];
+            state = Math.max(next, 0);
+            for (int s = this.outputs[state] != 0 ? state : this.outputLink[state]; s >= 0; s = this.outputLink[s])
+                handler.match(i + 1 - this.depths[s], i + 1, this.outputs[s]);
+        }
+    }
+
+    /**
+     * @return the number of lists in this automaton
+     */
+    public int getListCount() {
+        return this.sources.length;
+    }
+
+    /**
+     * @param list the index of the list (its bit in the masks)
+     * @return the path of the list file
+     */
+    public String getSource(int list) {
+        return this.sources[list];
+    }
+
+    /**
+     * @return the number of states of the automaton
+     */
+    public int size() {
+        return this.failure.length;
+    }
+
+    @Override
+    public String toString() {
+        return "GazetteerAutomaton" + Arrays.toString(this.sources) + "(" + size() + " states)";
+    }
+
+    private static String[] tokenize(String line) {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty())
+            return new String[0];
+        String[] words = trimmed.split("\\s+");
+        if (words.length > 1 && TYPE_PREFIXES.contains(words[0]))
+            return Arrays.copyOfRange(words, 1, words.length);
+        return words;
+    }
+
+    private static int lookup(long[] keys, int[] targets, int state, int symbol) {
+        long key = ((long) state << 32) | symbol;
+        int mask = keys.length - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            if (keys[slot] == key)
+                return targets[slot];
+            if (keys[slot] == -1L)
+                return -1;
+        }
+    }
+
+    private static void insert(long[] keys, int[] targets, int state, int symbol, int target) {
+        long key = ((long) state << 32) | symbol;
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != -1L)
+            slot = (slot + 1) & mask;
+        keys[slot] = key;
+        targets[slot] = target;
+    }
+
+    private static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
@@ -0,0 +1,59 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.gazetteer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.util.Level;
+
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.resource.Resources;
+
+/**
+ * Offline step compiling all list files of a directory into one binary gazetteer image. The lists are stored under
+ * their resource names (see {@link Resources#getName(String)}) with the checksums of their contents, the
+ * {@link GazetteerRegistry} maps the image instead of parsing the list files at startup.
+ * <p>
+ * Usage: GazetteerCompiler [list directory] [image file]
+ */
+public class GazetteerCompiler {
+
+    public static final String DEFAULT_LIST_DIRECTORY = "src/main/resources/ner/";
+    public static final String DEFAULT_IMAGE = DEFAULT_LIST_DIRECTORY + "gazetteers.bin";
+
+    /**
+     * the files in the list directory which are no lists of named entities
+     */
+    private static final String DATA_SOURCES_FILE = "dataSources.txt";
+
+    /**
+     * Compiles all list files (*.txt) of the directory into one image.
+     *
+     * @param listDirectory the directory containing the list files
+     * @param image         the image file to write
+     * @return the compiled gazetteer
+     * @throws IOException if error while reading the lists or writing the image
+     */
+    public static Gazetteer compile(File listDirectory, File image) throws IOException {
+        File[] lists = listDirectory.listFiles((dir, name) -> name.endsWith(".txt") && !name.equals(DATA_SOURCES_FILE));
+        if (lists == null)
+            throw new IOException(listDirectory + " is no directory");
+        Arrays.sort(lists);
+
+        Gazetteer.Builder builder = new Gazetteer.Builder();
+        for (File list : lists)
+            builder.addList(Resources.getName(list.getCanonicalPath()), Files.readAllBytes(list.toPath()));
+        Gazetteer gazetteer = builder.build();
+        gazetteer.writeTo(image.toPath());
+        return gazetteer;
+    }
+
+    public static void main(String[] args) throws IOException {
+        File listDirectory = new File(args.length > 0 ? args[0] : DEFAULT_LIST_DIRECTORY);
+        File image = new File(args.length > 1 ? args[1] : DEFAULT_IMAGE);
+        Gazetteer gazetteer = compile(listDirectory, image);
+        UIMAFramework.getLogger().log(Level.INFO, "Compiled " + gazetteer + " into " + image + " (" + image.length()
+                + " bytes)");
+    }
+}
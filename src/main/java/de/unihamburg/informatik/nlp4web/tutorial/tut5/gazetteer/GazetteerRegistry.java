@@ -0,0 +1,351 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.gazetteer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.resource.Resources;
+
+/**
+ * Process wide registry of gazetteers. Every list file is loaded exactly once (keyed by its canonical path, or by its
+ * resource name if it is read from the bundle or the classpath, see {@link Resources}) and the
+ * resulting read-only {@link Gazetteer} is shared by all extractors, pipelines and threads of the JVM.
+ * <p>
+ * If a precompiled image (see {@link GazetteerCompiler}) exists, it is memory mapped once and lists contained in it
+ * are served as views of the image instead of being parsed. The image is located by the system property
+ * {@value #IMAGE_PROPERTY} and defaults to {@link GazetteerCompiler#DEFAULT_IMAGE}. A list is served from the image
+ * only if the image holds a list of the same resource name and content (see {@link Gazetteer#checksum(byte[])}),
+ * other lists are read from their files.
+ * <p>
+ * The structures are versioned: {@link #reload(Collection)} (e.g. called by the {@link GazetteerWatcher} when a list
+ * file changed) builds the structures of the changed lists anew and publishes all of them at once as a new
+ * generation. The extractors keep a {@link Handle} instead of the structure and resolve it on every lookup, which
+ * never blocks. A thread can {@link #pin()} the current generation, e.g. while it extracts the features of a
+ * sentence, so all of its lookups see the same lists even if a reload is published meanwhile.
+ */
+public final class GazetteerRegistry {
+
+    private static final ConcurrentMap<String, Handle<Gazetteer>> GAZETTEERS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Handle<GazetteerAutomaton>> AUTOMATONS = new ConcurrentHashMap<>();
+
+    /**
+     * the structures of all handles (by the index of the handle), replaced as a whole when structures are added or
+     * reloaded
+     */
+    private static volatile Generation generation = new Generation(0L, new Object[0]);
+    private static final Object PUBLISH_LOCK = new Object();
+    private static int handleCount = 0;
+
+    /**
+     * the generation pinned by the current thread, null if none is pinned
+     */
+    private static final ThreadLocal<Generation> PINNED = new ThreadLocal<>();
+    private static final Snapshot PINNING_SNAPSHOT = new Snapshot(true);
+    private static final Snapshot NESTED_SNAPSHOT = new Snapshot(false);
+
+    /**
+     * the system property holding the path of the precompiled gazetteer image
+     */
+    public static final String IMAGE_PROPERTY = "ner.gazetteer.image";
+
+    private static volatile Image image;
+
+    /**
+     * The mapped gazetteer image (or none, if there is no image)
+     */
+    private static final class Image {
+        private final Gazetteer gazetteer;
+
+        private Image(Gazetteer gazetteer) {
+            this.gazetteer = gazetteer;
+        }
+    }
+
+    /**
+     * The structures of all handles at one point in time
+     */
+    private static final class Generation {
+        private final long number;
+        private final Object[] structures;
+
+        private Generation(long number, Object[] structures) {
+            this.number = number;
+            this.structures = structures;
+        }
+    }
+
+    /**
+     * The shared structure of one or more list files, always the one of the current (or pinned) generation
+     */
+    public static final class Handle<T> {
+        private final int index;
+        private final String[] canonicalPaths;
+        private final Loader<T> loader;
+
+        private Handle(int index, String[] canonicalPaths, Loader<T> loader) {
+            this.index = index;
+            this.canonicalPaths = canonicalPaths;
+            this.loader = loader;
+        }
+
+        /**
+         * @return the structure of the generation pinned by the current thread or else of the current generation
+         */
+        @SuppressWarnings("unchecked")
+        public T get() {
+            Generation pinned = PINNED.get();
+            if (pinned != null && this.index < pinned.structures.length)
+                return (T) pinned.structures[this.index];
+            return (T) generation.structures[this.index];
+        }
+    }
+
+    /**
+     * The generation pinned by {@link #pin()}, unpinned on close
+     */
+    public static final class Snapshot implements AutoCloseable {
+        private final boolean pinning;
+
+        private Snapshot(boolean pinning) {
+            this.pinning = pinning;
+        }
+
+        @Override
+        public void close() {
+            if (this.pinning)
+                PINNED.remove();
+        }
+    }
+
+    private GazetteerRegistry() {
+    }
+
+    /**
+     * Loads the shared structure of one or more list files
+     */
+    private interface Loader<T> {
+        T load(String[] canonicalPaths) throws IOException;
+    }
+
+    /**
+     * Returns the shared gazetteer of the list file. The first caller loads the file, concurrent callers wait for
+     * this single load instead of reading the file again.
+     *
+     * @param path the path to the list file
+     * @return the shared gazetteer
+     * @throws IOException if file not found or error while reading
+     */
+    public static Gazetteer get(String path) throws IOException {
+        return getCombinedHandle(path).get();
+    }
+
+    /**
+     * Returns the shared gazetteer of several list files. The i-th list is represented by bit i of the masks returned
+     * by {@link Gazetteer#lookup(CharSequence)}, so one lookup answers the membership for all of the lists.
+     *
+     * @param paths the paths to the list files
+     * @return the shared gazetteer
+     * @throws IOException if file not found or error while reading
+     */
+    public static Gazetteer getCombined(String... paths) throws IOException {
+        return getCombinedHandle(paths).get();
+    }
+
+    /**
+     * Like {@link #getCombined(String...)}, but returns the handle, which follows the reloads of the lists
+     *
+     * @param paths the paths to the list files
+     * @return the handle of the shared gazetteer
+     * @throws IOException if file not found or error while reading
+     */
+    public static Handle<Gazetteer> getCombinedHandle(String... paths) throws IOException {
+        return getOrLoad(GAZETTEERS, paths, GazetteerRegistry::loadGazetteer);
+    }
+
+    /**
+     * Returns the shared multi-token automaton of several list files. The i-th list is represented by bit i of the
+     * masks passed to the {@link GazetteerAutomaton.MatchHandler}.
+     *
+     * @param paths the paths to the list files
+     * @return the shared automaton
+     * @throws IOException if file not found or error while reading
+     */
+    public static GazetteerAutomaton getAutomaton(String... paths) throws IOException {
+        return getAutomatonHandle(paths).get();
+    }
+
+    /**
+     * Like {@link #getAutomaton(String...)}, but returns the handle, which follows the reloads of the lists
+     *
+     * @param paths the paths to the list files
+     * @return the handle of the shared automaton
+     * @throws IOException if file not found or error while reading
+     */
+    public static Handle<GazetteerAutomaton> getAutomatonHandle(String... paths) throws IOException {
+        return getOrLoad(AUTOMATONS, paths, GazetteerAutomaton::load);
+    }
+
+    /**
+     * @return the number of currently loaded gazetteers
+     */
+    public static int size() {
+        return GAZETTEERS.size() + AUTOMATONS.size();
+    }
+
+    /**
+     * @return the number of the current generation, increased whenever structures are loaded or reloaded
+     */
+    public static long getGeneration() {
+        return generation.number;
+    }
+
+    /**
+     * Pins the current generation for the current thread until the snapshot is closed. If the thread has pinned a
+     * generation already, that one stays pinned (and closing the returned snapshot does nothing).
+     *
+     * @return the snapshot to close
+     */
+    public static Snapshot pin() {
+        if (PINNED.get() != null)
+            return NESTED_SNAPSHOT;
+        PINNED.set(generation);
+        return PINNING_SNAPSHOT;
+    }
+
+    /**
+     * @return the canonical paths of the list files of all loaded structures (only the lists read from the file system)
+     */
+    static Set<String> getListFiles() {
+        Set<String> files = new HashSet<>();
+        for (Handle<?> handle : getHandles())
+            for (String path : handle.canonicalPaths)
+                if (new File(path).isAbsolute())
+                    files.add(path);
+        return files;
+    }
+
+    /**
+     * Builds the structures containing one of the changed list files anew and publishes them at once as a new
+     * generation. Lookups never wait for this: until the new generation is published they use the old structures.
+     * If a structure fails to load (e.g. a list file is missing), nothing is published.
+     *
+     * @param changedFiles the paths of the changed list files
+     * @return the number of structures reloaded
+     * @throws IOException if a list file is not found or error while reading
+     */
+    public static int reload(Collection<String> changedFiles) throws IOException {
+        Set<String> changed = new HashSet<>();
+        for (String file : changedFiles)
+            changed.add(new File(file).getCanonicalPath());
+        List<Handle<?>> handles = new ArrayList<>();
+        List<Object> structures = new ArrayList<>();
+        for (Handle<?> handle : getHandles()) {
+            for (String path : handle.canonicalPaths) {
+                if (changed.contains(path)) {
+                    handles.add(handle);
+                    structures.add(handle.loader.load(handle.canonicalPaths));
+                    break;
+                }
+            }
+        }
+        if (!handles.isEmpty()) {
+            synchronized (PUBLISH_LOCK) {
+                Object[] published = generation.structures.clone();
+                for (int i = 0; i < handles.size(); ++i)
+                    published[handles.get(i).index] = structures.get(i);
+                generation = new Generation(generation.number + 1, published);
+            }
+        }
+        return handles.size();
+    }
+
+    private static List<Handle<?>> getHandles() {
+        List<Handle<?>> handles = new ArrayList<>(GAZETTEERS.values());
+        handles.addAll(AUTOMATONS.values());
+        return handles;
+    }
+
+    private static Gazetteer loadGazetteer(String[] canonicalPaths) throws IOException {
+        Image image = getImage();
+        if (image.gazetteer != null) {
+            int[] lists = new int[canonicalPaths.length];
+            for (int i = 0; i < canonicalPaths.length && lists != null; ++i) {
+                lists[i] = image.gazetteer.indexOfSource(Resources.getName(canonicalPaths[i]));
+                if (lists[i] < 0 || image.gazetteer.getChecksum(lists[i])
+                        != Gazetteer.checksum(Resources.read(canonicalPaths[i])))
+                    lists = null;
+            }
+            if (lists != null)
+                return image.gazetteer.select(lists);
+        }
+        return Gazetteer.load(canonicalPaths);
+    }
+
+    private static Image getImage() throws IOException {
+        Image loaded = image;
+        if (loaded == null) {
+            synchronized (GazetteerRegistry.class) {
+                loaded = image;
+                if (loaded == null) {
+                    String path = System.getProperty(IMAGE_PROPERTY, GazetteerCompiler.DEFAULT_IMAGE);
+                    File file = Resources.getFile(path);
+                    if (file != null)
+                        loaded = new Image(Gazetteer.map(file.toPath()));
+                    else if (Resources.exists(path))
+                        // a packed image can't be mapped, it is read once
+                        loaded = new Image(Gazetteer.read(ByteBuffer.wrap(Resources.read(path)), path));
+                    else
+                        loaded = new Image(null);
+                    image = loaded;
+                }
+            }
+        }
+        return loaded;
+    }
+
+    private static <T> Handle<T> getOrLoad(ConcurrentMap<String, Handle<T>> cache, String[] paths,
+                                           Loader<T> loader) throws IOException {
+        String[] canonicalPaths = new String[paths.length];
+        for (int i = 0; i < paths.length; ++i) {
+            File file = Resources.getFile(paths[i]);
+            canonicalPaths[i] = file != null ? file.getCanonicalPath() : Resources.getName(paths[i]);
+        }
+        String key = String.join(File.pathSeparator, canonicalPaths);
+        Handle<T> loaded = cache.get(key);
+        if (loaded != null)
+            return loaded;
+        try {
+            return cache.computeIfAbsent(key, k -> {
+                try {
+                    return publish(canonicalPaths, loader, loader.load(canonicalPaths));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Creates the handle of a newly loaded structure and publishes the structure in a new generation
+     */
+    private static <T> Handle<T> publish(String[] canonicalPaths, Loader<T> loader, T structure) {
+        synchronized (PUBLISH_LOCK) {
+            Handle<T> handle = new Handle<>(handleCount++, canonicalPaths, loader);
+            Object[] published = Arrays.copyOf(generation.structures, handleCount);
+            published[handle.index] = structure;
+            generation = new Generation(generation.number + 1, published);
+            return handle;
+        }
+    }
+}
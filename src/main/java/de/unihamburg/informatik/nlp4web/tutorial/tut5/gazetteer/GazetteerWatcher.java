@@ -0,0 +1,135 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.gazetteer;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.util.Level;
+
+/**
+ * Watches the list files of the {@link GazetteerRegistry} and reloads the structures of the changed lists in the
+ * background (see {@link GazetteerRegistry#reload(java.util.Collection)}). The changes are collected until the files
+ * are quiet for {@value #QUIET_MILLIS}ms, so a list being written is reloaded once it is complete. If a reload fails,
+ * the previous lists stay in use.
+ * <p>
+ * The directories of the lists loaded later on are watched as well.
+ */
+public class GazetteerWatcher implements Closeable {
+
+    /**
+     * the time without changes before the changed lists are reloaded
+     */
+    public static final long QUIET_MILLIS = 200;
+    private static final long POLL_MILLIS = 1000;
+
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private final Thread thread;
+    private volatile boolean closed;
+
+    public GazetteerWatcher() throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.registerDirectories();
+        this.thread = new Thread(this::watch, "GazetteerWatcher");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Starts watching on a background thread
+     */
+    public GazetteerWatcher start() {
+        this.thread.start();
+        return this;
+    }
+
+    /**
+     * Registers the directories of the list files not watched yet
+     */
+    private void registerDirectories() throws IOException {
+        Set<Path> watched = new HashSet<>(this.directories.values());
+        for (String file : GazetteerRegistry.getListFiles()) {
+            Path directory = Paths.get(file).getParent();
+            if (directory != null && watched.add(directory))
+                this.directories.put(directory.register(this.watchService, ENTRY_CREATE, ENTRY_MODIFY), directory);
+        }
+    }
+
+    private void watch() {
+        Set<String> changed = new HashSet<>();
+        try {
+            while (!this.closed) {
+                WatchKey key = this.watchService.poll(changed.isEmpty() ? POLL_MILLIS : QUIET_MILLIS,
+                        TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    this.collectChanges(key, changed);
+                } else if (!changed.isEmpty()) {
+                    this.reload(changed);
+                    changed.clear();
+                }
+                this.registerDirectories();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        } catch (IOException e) {
+            UIMAFramework.getLogger().log(Level.WARNING, "Stopped watching the gazetteer lists", e);
+        }
+    }
+
+    private void collectChanges(WatchKey key, Set<String> changed) {
+        Path directory = this.directories.get(key);
+        Set<String> listFiles = GazetteerRegistry.getListFiles();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                // events lost: all lists of the directory may have changed
+                for (String file : listFiles)
+                    if (directory != null && directory.equals(Paths.get(file).getParent()))
+                        changed.add(file);
+            } else if (directory != null) {
+                String file = directory.resolve((Path) event.context()).toString();
+                if (listFiles.contains(file))
+                    changed.add(file);
+            }
+        }
+        if (!key.reset())
+            this.directories.remove(key);
+    }
+
+    private void reload(Set<String> changed) {
+        try {
+            long start = System.currentTimeMillis();
+            int reloaded = GazetteerRegistry.reload(changed);
+            UIMAFramework.getLogger().log(Level.INFO, "Reloaded " + reloaded + " gazetteers of " + changed
+                    + " in " + (System.currentTimeMillis() - start) + "ms, generation "
+                    + GazetteerRegistry.getGeneration());
+        } catch (IOException | RuntimeException e) {
+            UIMAFramework.getLogger().log(Level.WARNING, "Reloading " + changed + " failed, keeping the previous lists",
+                    e);
+        }
+    }
+
+    /**
+     * Stops watching, the loaded lists stay in use
+     */
+    @Override
+    public void close() throws IOException {
+        this.closed = true;
+        this.thread.interrupt();
+        this.watchService.close();
+    }
+}
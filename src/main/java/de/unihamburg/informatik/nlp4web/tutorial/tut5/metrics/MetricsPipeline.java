@@ -0,0 +1,91 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.metrics;
+
+import static org.apache.uima.fit.util.LifeCycleUtil.close;
+import static org.apache.uima.fit.util.LifeCycleUtil.collectionProcessComplete;
+import static org.apache.uima.fit.util.LifeCycleUtil.destroy;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.metadata.ResourceMetaData;
+import org.apache.uima.util.CasCreationUtils;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+
+/**
+ * Runs a pipeline like {@link org.apache.uima.fit.pipeline.SimplePipeline#runPipeline(CollectionReader,
+ * AnalysisEngine...)} and records every component as stage of the metrics (named by the simple class name of the
+ * component), all components of a CAS together as {@link PipelineMetrics#PIPELINE_STAGE} and the number of
+ * documents, sentences and tokens. The allocated bytes are the ones of the calling thread.
+ */
+public final class MetricsPipeline {
+
+    private MetricsPipeline() {
+    }
+
+    public static void runPipeline(PipelineMetrics metrics, CollectionReader reader, AnalysisEngine... engines)
+            throws UIMAException, IOException {
+        List<ResourceMetaData> metaData = new ArrayList<>();
+        metaData.add(reader.getMetaData());
+        PipelineMetrics.Stage readerStage = metrics.getStage(getStageName(reader.getMetaData(), reader));
+        PipelineMetrics.Stage[] engineStages = new PipelineMetrics.Stage[engines.length];
+        for (int i = 0; i < engines.length; ++i) {
+            metaData.add(engines[i].getMetaData());
+            engineStages[i] = metrics.getStage(getStageName(engines[i].getMetaData(), engines[i]));
+        }
+        PipelineMetrics.Stage pipelineStage = metrics.getStage(PipelineMetrics.PIPELINE_STAGE);
+
+        try {
+            CAS cas = CasCreationUtils.createCas(metaData);
+            reader.typeSystemInit(cas.getTypeSystem());
+            while (reader.hasNext()) {
+                long documentStart = System.nanoTime();
+                long documentAllocated = PipelineMetrics.getAllocatedBytes();
+
+                reader.getNext(cas);
+                long start = System.nanoTime();
+                long allocated = PipelineMetrics.getAllocatedBytes();
+                readerStage.record(start - documentStart, allocated - documentAllocated);
+
+                for (int i = 0; i < engines.length; ++i) {
+                    engines[i].process(cas);
+                    long end = System.nanoTime();
+                    long endAllocated = PipelineMetrics.getAllocatedBytes();
+                    engineStages[i].record(end - start, endAllocated - allocated);
+                    start = end;
+                    allocated = endAllocated;
+                }
+                pipelineStage.record(start - documentStart, allocated - documentAllocated);
+
+                // the annotations of the default view, the readers of the pipeline add them there
+                JCas jCas = cas.getJCas();
+                metrics.count(PipelineMetrics.DOCUMENTS, 1);
+                metrics.count(PipelineMetrics.SENTENCES, jCas.getAnnotationIndex(Sentence.type).size());
+                metrics.count(PipelineMetrics.TOKENS, jCas.getAnnotationIndex(Token.type).size());
+                cas.reset();
+            }
+            collectionProcessComplete(engines);
+        } finally {
+            close(reader);
+            destroy(reader);
+            destroy(engines);
+        }
+    }
+
+    /**
+     * @return the simple class name of the component, from its meta data or (for readers without a name) the class
+     */
+    private static String getStageName(ResourceMetaData metaData, Object component) {
+        String name = metaData.getName();
+        if (name == null)
+            return component.getClass().getSimpleName();
+        return name.substring(name.lastIndexOf('.') + 1);
+    }
+}
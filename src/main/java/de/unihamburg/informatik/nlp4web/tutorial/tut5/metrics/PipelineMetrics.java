@@ -0,0 +1,310 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of one pipeline run: a latency histogram and the allocated bytes per stage (a component of the pipeline or
+ * a step inside of one, see {@link MetricsPipeline} and the NERAnnotator) and counters like the number of tokens and
+ * sentences. The metrics are registered by name, so the components of a pipeline find them by a configuration
+ * parameter, and dumped as JSON when the pipeline is complete.
+ * <p>
+ * The gazetteer lookups are counted process wide per list (see {@link #getGazetteerCounter}), the metrics report the
+ * lookups since they were created.
+ */
+public final class PipelineMetrics {
+
+    /**
+     * counter of the tokens of the processed CASes
+     */
+    public static final String TOKENS = "tokens";
+
+    /**
+     * counter of the sentences of the processed CASes
+     */
+    public static final String SENTENCES = "sentences";
+
+    /**
+     * counter of the processed CASes
+     */
+    public static final String DOCUMENTS = "documents";
+
+    /**
+     * the stage of all components of the pipeline together, the rates are computed from its time
+     */
+    public static final String PIPELINE_STAGE = "pipeline";
+
+    private static final ConcurrentMap<String, PipelineMetrics> METRICS = new ConcurrentHashMap<>();
+
+    private static final ConcurrentMap<String, HitCounter> GAZETTEERS = new ConcurrentHashMap<>();
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private static final boolean ALLOCATION_SUPPORTED = isAllocationSupported();
+
+    private final String name;
+    private final Map<String, Stage> stages = new LinkedHashMap<>();
+    private final Map<String, LongAdder> counters = new LinkedHashMap<>();
+    /**
+     * the lookups and hits of the gazetteers when the metrics were created
+     */
+    private final Map<String, long[]> gazetteerBaseline = new LinkedHashMap<>();
+
+    private PipelineMetrics(String name) {
+        this.name = name;
+        for (Map.Entry<String, HitCounter> gazetteer : GAZETTEERS.entrySet())
+            gazetteerBaseline.put(gazetteer.getKey(),
+                    new long[]{gazetteer.getValue().getLookups(), gazetteer.getValue().getHits()});
+    }
+
+    /**
+     * @return the metrics of the name, created if there are none yet
+     */
+    public static PipelineMetrics get(String name) {
+        return METRICS.computeIfAbsent(name, PipelineMetrics::new);
+    }
+
+    /**
+     * Unregisters the metrics of the name, e.g. after the pipeline is complete
+     *
+     * @return the metrics, null if there are none
+     */
+    public static PipelineMetrics remove(String name) {
+        return METRICS.remove(name);
+    }
+
+    /**
+     * @return the process wide lookup counter of the gazetteer feature
+     */
+    public static HitCounter getGazetteerCounter(String featureName) {
+        return GAZETTEERS.computeIfAbsent(featureName, key -> new HitCounter());
+    }
+
+    /**
+     * @return the bytes allocated by the current thread so far, 0 if the JVM doesn't count them
+     */
+    @SuppressWarnings("restriction")
+    public static long getAllocatedBytes() {
+        if (!ALLOCATION_SUPPORTED)
+            return 0;
+        return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @SuppressWarnings("restriction")
+    private static boolean isAllocationSupported() {
+        try {
+            if (THREADS instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+                if (threads.isThreadAllocatedMemorySupported()) {
+                    threads.setThreadAllocatedMemoryEnabled(true);
+                    return true;
+                }
+            }
+        } catch (LinkageError | UnsupportedOperationException e) {
+            // not a HotSpot JVM
+        }
+        return false;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the stage of the name, created if there is none yet
+     */
+    public synchronized Stage getStage(String stage) {
+        return stages.computeIfAbsent(stage, key -> new Stage());
+    }
+
+    /**
+     * @return the names of the stages, in the order they were created
+     */
+    public synchronized List<String> getStages() {
+        return new ArrayList<>(stages.keySet());
+    }
+
+    /**
+     * Adds to the counter of the name, e.g. {@link #TOKENS}
+     */
+    public void count(String counter, long value) {
+        LongAdder adder;
+        synchronized (this) {
+            adder = counters.computeIfAbsent(counter, key -> new LongAdder());
+        }
+        adder.add(value);
+    }
+
+    public synchronized long getCount(String counter) {
+        LongAdder adder = counters.get(counter);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    /**
+     * @return the counter per second of the time of the stage, e.g. the tokens per second of the pipeline
+     */
+    public double getRate(String counter, String stage) {
+        long nanos = getStage(stage).getLatency().getTotalNanos();
+        return nanos == 0 ? 0 : getCount(counter) * 1e9 / nanos;
+    }
+
+    /**
+     * @return the lookups and hits of the gazetteer features since the metrics were created, per feature name (sorted)
+     */
+    public Map<String, long[]> getGazetteerLookups() {
+        Map<String, long[]> lookups = new TreeMap<>();
+        for (Map.Entry<String, HitCounter> gazetteer : GAZETTEERS.entrySet()) {
+            long[] baseline = gazetteerBaseline.getOrDefault(gazetteer.getKey(), new long[2]);
+            long[] current = {gazetteer.getValue().getLookups() - baseline[0],
+                    gazetteer.getValue().getHits() - baseline[1]};
+            if (current[0] > 0)
+                lookups.put(gazetteer.getKey(), current);
+        }
+        return lookups;
+    }
+
+    /**
+     * @return the metrics as JSON object, times in milliseconds
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"name\": ").append(quote(name)).append(",\n");
+        json.append("  \"allocationCounted\": ").append(ALLOCATION_SUPPORTED).append(",\n");
+
+        json.append("  \"counters\": {");
+        List<String> names;
+        synchronized (this) {
+            names = new ArrayList<>(counters.keySet());
+        }
+        for (int i = 0; i < names.size(); ++i)
+            json.append(i == 0 ? "\n" : ",\n").append("    ").append(quote(names.get(i))).append(": ")
+                    .append(getCount(names.get(i)));
+        json.append(names.isEmpty() ? "},\n" : "\n  },\n");
+
+        json.append("  \"tokensPerSecond\": ").append(number(getRate(TOKENS, PIPELINE_STAGE))).append(",\n");
+        json.append("  \"sentencesPerSecond\": ").append(number(getRate(SENTENCES, PIPELINE_STAGE))).append(",\n");
+
+        json.append("  \"stages\": {");
+        List<String> stageNames = getStages();
+        for (int i = 0; i < stageNames.size(); ++i) {
+            Stage stage = getStage(stageNames.get(i));
+            LatencyHistogram latency = stage.getLatency();
+            json.append(i == 0 ? "\n" : ",\n").append("    ").append(quote(stageNames.get(i))).append(": {")
+                    .append("\"calls\": ").append(latency.getCount())
+                    .append(", \"totalMs\": ").append(number(latency.getTotalNanos() / 1e6))
+                    .append(", \"meanMs\": ").append(number(latency.getMeanNanos() / 1e6))
+                    .append(", \"p50Ms\": ").append(number(latency.getPercentileNanos(0.5) / 1e6))
+                    .append(", \"p90Ms\": ").append(number(latency.getPercentileNanos(0.9) / 1e6))
+                    .append(", \"p99Ms\": ").append(number(latency.getPercentileNanos(0.99) / 1e6))
+                    .append(", \"maxMs\": ").append(number(latency.getMaxNanos() / 1e6))
+                    .append(", \"tokensPerSecond\": ").append(number(getRate(TOKENS, stageNames.get(i))))
+                    .append(", \"allocatedBytes\": ").append(stage.getAllocatedBytes())
+                    .append('}');
+        }
+        json.append(stageNames.isEmpty() ? "},\n" : "\n  },\n");
+
+        json.append("  \"gazetteers\": {");
+        Map<String, long[]> gazetteers = getGazetteerLookups();
+        int i = 0;
+        for (Map.Entry<String, long[]> gazetteer : gazetteers.entrySet()) {
+            long[] lookups = gazetteer.getValue();
+            json.append(i++ == 0 ? "\n" : ",\n").append("    ").append(quote(gazetteer.getKey())).append(": {")
+                    .append("\"lookups\": ").append(lookups[0])
+                    .append(", \"hits\": ").append(lookups[1])
+                    .append(", \"hitRate\": ").append(number((double) lookups[1] / lookups[0]))
+                    .append('}');
+        }
+        json.append(gazetteers.isEmpty() ? "}\n" : "\n  }\n");
+        return json.append("}\n").toString();
+    }
+
+    /**
+     * Writes the metrics as JSON to the file
+     */
+    public void writeJson(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null)
+            parent.mkdirs();
+        Files.write(file.toPath(), toJson().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String number(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); ++i) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\')
+                quoted.append('\\').append(c);
+            else if (c < 0x20)
+                quoted.append(String.format("\\u%04x", (int) c));
+            else
+                quoted.append(c);
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * The latencies and allocated bytes of a stage, thread safe
+     */
+    public static final class Stage {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder allocatedBytes = new LongAdder();
+
+        /**
+         * Records one call of the stage
+         *
+         * @param nanos          the duration of the call
+         * @param allocatedBytes the bytes allocated by the call (see {@link PipelineMetrics#getAllocatedBytes})
+         */
+        public void record(long nanos, long allocatedBytes) {
+            latency.record(nanos);
+            this.allocatedBytes.add(allocatedBytes);
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes.sum();
+        }
+    }
+
+    /**
+     * The lookups and hits of a gazetteer, thread safe
+     */
+    public static final class HitCounter {
+        private final LongAdder lookups = new LongAdder();
+        private final LongAdder hits = new LongAdder();
+
+        public void record(boolean hit) {
+            lookups.increment();
+            if (hit)
+                hits.increment();
+        }
+
+        public long getLookups() {
+            return lookups.sum();
+        }
+
+        public long getHits() {
+            return hits.sum();
+        }
+    }
+}
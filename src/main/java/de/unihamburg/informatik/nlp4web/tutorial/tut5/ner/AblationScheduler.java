@@ -0,0 +1,383 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.ner;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.util.Level;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the jobs of an experiment (e.g. the configurations of the feature ablation test) concurrently and collects
+ * their results.
+ * <p>
+ * Every finished job is appended to a manifest file together with the hash of its inputs, its wall time and metrics.
+ * When the experiment is started again (e.g. after a crash), the jobs found in the manifest with the same hash are not
+ * run again, their results are read from the manifest. Jobs whose inputs changed (e.g. the configuration, the corpora
+ * or the code) and failed jobs are run again.
+ */
+public class AblationScheduler {
+
+    /**
+     * heap assumed to be needed by one job when sizing the concurrency
+     */
+    public static final long DEFAULT_HEAP_PER_JOB = 512L << 20;
+
+    /**
+     * A job of the experiment
+     */
+    public interface Job {
+
+        /**
+         * @return the name of the job, unique in the experiment (the key in the manifest)
+         */
+        String getName();
+
+        /**
+         * @return the hash of everything the result of the job depends on (e.g. its configuration, the corpora and the
+         * {@link AblationScheduler#getCodeVersion() code version}), the job is run again if it differs from the hash in the manifest
+         * @throws IOException if error while reading the inputs
+         */
+        String getHash() throws IOException;
+
+        /**
+         * @return the metrics of the job (e.g. the F1 score of the model), may be empty
+         * @throws Exception if the job fails
+         */
+        Map<String, Double> run() throws Exception;
+    }
+
+    /**
+     * The result of a job
+     */
+    public static final class Result {
+
+        private final String name;
+        private final String hash;
+        private final long wallTimeMillis;
+        private final Map<String, Double> metrics;
+        private final Throwable error;
+        private final boolean resumed;
+
+        Result(String name, String hash, long wallTimeMillis, Map<String, Double> metrics, Throwable error,
+               boolean resumed) {
+            this.name = name;
+            this.hash = hash;
+            this.wallTimeMillis = wallTimeMillis;
+            this.metrics = Collections.unmodifiableMap(new LinkedHashMap<>(metrics));
+            this.error = error;
+            this.resumed = resumed;
+        }
+
+        /**
+         * @return the name of the job
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the hash of the inputs of the job
+         */
+        public String getHash() {
+            return hash;
+        }
+
+        /**
+         * @return true if the job finished without error
+         */
+        public boolean isSucceeded() {
+            return error == null;
+        }
+
+        /**
+         * @return the wall time of the job in milliseconds
+         */
+        public long getWallTimeMillis() {
+            return wallTimeMillis;
+        }
+
+        /**
+         * @return the metrics returned by the job (empty if it failed)
+         */
+        public Map<String, Double> getMetrics() {
+            return metrics;
+        }
+
+        /**
+         * @return the error of the failed job, null if it succeeded
+         */
+        public Throwable getError() {
+            return error;
+        }
+
+        /**
+         * @return true if the job wasn't run, but its result was read from the manifest
+         */
+        public boolean isResumed() {
+            return resumed;
+        }
+
+        @Override
+        public String toString() {
+            return name + (error == null ? "" : " FAILED: " + error) + " (" + wallTimeMillis + "ms" +
+                    (resumed ? ", resumed" : "") + ") " + metrics;
+        }
+    }
+
+    /**
+     * the hash of the classes of the pipeline, computed once
+     */
+    private static volatile String codeVersion;
+
+    private final File manifest;
+    private final int concurrency;
+
+    /**
+     * @param manifest    the manifest file of the finished jobs, created if it doesn't exist
+     * @param concurrency the maximum number of jobs run at once
+     */
+    public AblationScheduler(File manifest, int concurrency) {
+        this.manifest = manifest;
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    /**
+     * @param manifest the manifest file of the finished jobs, created if it doesn't exist
+     * @return a scheduler running as many jobs at once as there are cores and heap for
+     */
+    public static AblationScheduler create(File manifest) {
+        return new AblationScheduler(manifest, getDefaultConcurrency(DEFAULT_HEAP_PER_JOB));
+    }
+
+    /**
+     * @param heapPerJob the heap needed by one job in bytes
+     * @return the number of available cores, limited by the number of jobs fitting into the maximum heap
+     */
+    public static int getDefaultConcurrency(long heapPerJob) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        long heapJobs = Runtime.getRuntime().maxMemory() / Math.max(1, heapPerJob);
+        return (int) Math.max(1, Math.min(cores, heapJobs));
+    }
+
+    /**
+     * @return the maximum number of jobs run at once
+     */
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * @return the SHA-256 hash of the jar or the class files the pipeline is loaded from, as hex string
+     * @throws IOException if error while reading the classes
+     */
+    public static String getCodeVersion() throws IOException {
+        String version = codeVersion;
+        if (version == null) {
+            CodeSource codeSource = AblationScheduler.class.getProtectionDomain().getCodeSource();
+            if (codeSource == null || codeSource.getLocation() == null)
+                throw new IOException("Unknown location of the classes");
+            Path location;
+            try {
+                location = Paths.get(codeSource.getLocation().toURI());
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                throw new IOException("Unknown location of the classes " + codeSource.getLocation(), e);
+            }
+            List<Path> files;
+            try (Stream<Path> walk = Files.walk(location)) {
+                // the jar, or else the class files of the directory (without the resources copied next to them)
+                files = walk.filter(file -> Files.isRegularFile(file)
+                        && (file.equals(location) || file.toString().endsWith(".class")))
+                        .sorted().collect(Collectors.toList());
+            }
+            MessageDigest digest = getDigest();
+            for (Path file : files) {
+                digest.update(location.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(Files.readAllBytes(file));
+                digest.update((byte) 0);
+            }
+            version = toHex(digest.digest());
+            codeVersion = version;
+        }
+        return version;
+    }
+
+    /**
+     * @param values the values to hash, e.g. the keys of the inputs of a job
+     * @return the SHA-256 hash of the values, as hex string
+     */
+    public static String hash(String... values) {
+        MessageDigest digest = getDigest();
+        for (String value : values) {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest getDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes)
+            hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+
+    /**
+     * Runs all jobs not found in the manifest with the same hash and waits for them.
+     *
+     * @param jobs the jobs of the experiment
+     * @return the results of all jobs, in the order of the jobs
+     * @throws IOException          if the manifest can't be read or written
+     * @throws InterruptedException if interrupted while waiting for the jobs (the running jobs are interrupted too)
+     */
+    public List<Result> run(List<? extends Job> jobs) throws IOException, InterruptedException {
+        Map<String, Result> finished = readManifest();
+        Map<String, Result> results = new LinkedHashMap<>();
+        Map<Job, String> pending = new LinkedHashMap<>();
+        for (Job job : jobs) {
+            String hash = job.getHash();
+            Result result = finished.get(job.getName());
+            if (result != null && result.getHash().equals(hash)) {
+                results.put(job.getName(), result);
+            } else {
+                if (result != null)
+                    UIMAFramework.getLogger().log(Level.INFO, "Running " + job.getName() + " again, its inputs changed");
+                pending.put(job, hash);
+            }
+        }
+        UIMAFramework.getLogger().log(Level.INFO, "Running " + pending.size() + " of " + jobs.size() + " jobs ("
+                + results.size() + " finished before) with " + concurrency + " threads");
+
+        long start = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, Math.max(1, pending.size())),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "AblationScheduler-job");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        CompletionService<Result> completion = new ExecutorCompletionService<>(executor);
+        try (Writer manifestWriter = new OutputStreamWriter(new FileOutputStream(manifest, true),
+                StandardCharsets.UTF_8)) {
+            for (Map.Entry<Job, String> job : pending.entrySet())
+                completion.submit(() -> runJob(job.getKey(), job.getValue()));
+            for (int done = 1; done <= pending.size(); ++done) {
+                Result result = getResult(completion.take());
+                results.put(result.getName(), result);
+                if (result.isSucceeded()) {
+                    writeManifest(manifestWriter, result);
+                    UIMAFramework.getLogger().log(Level.INFO, "Finished job " + done + "/" + pending.size() + " "
+                            + result + ", elapsed " + (System.currentTimeMillis() - start) + "ms");
+                } else {
+                    UIMAFramework.getLogger().log(Level.SEVERE, "Failed job " + done + "/" + pending.size() + " "
+                            + result.getName(), result.getError());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        List<Result> ordered = new ArrayList<>(jobs.size());
+        for (Job job : jobs)
+            ordered.add(results.get(job.getName()));
+        return ordered;
+    }
+
+    private static Result runJob(Job job, String hash) {
+        long start = System.currentTimeMillis();
+        try {
+            Map<String, Double> metrics = job.run();
+            return new Result(job.getName(), hash, System.currentTimeMillis() - start,
+                    metrics == null ? Collections.<String, Double>emptyMap() : metrics, null, false);
+        } catch (Exception | Error e) {
+            return new Result(job.getName(), hash, System.currentTimeMillis() - start,
+                    Collections.<String, Double>emptyMap(), e, false);
+        }
+    }
+
+    private static Result getResult(Future<Result> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            // runJob catches the errors of the jobs
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Manifest line: name, hash, wall time and the metrics (name=value), separated by tabs
+     */
+    private static void writeManifest(Writer writer, Result result) throws IOException {
+        StringBuilder line = new StringBuilder(result.getName()).append('\t').append(result.getHash()).append('\t')
+                .append(result.getWallTimeMillis());
+        for (Map.Entry<String, Double> metric : result.getMetrics().entrySet())
+            line.append('\t').append(metric.getKey()).append('=').append(metric.getValue());
+        writer.write(line.append('\n').toString());
+        writer.flush();
+    }
+
+    private Map<String, Result> readManifest() throws IOException {
+        Map<String, Result> finished = new LinkedHashMap<>();
+        if (!manifest.isFile())
+            return finished;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(manifest),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length < 3)
+                    continue; // incomplete line of a crashed run
+                try {
+                    Map<String, Double> metrics = new LinkedHashMap<>();
+                    for (int i = 3; i < fields.length; ++i) {
+                        int separator = fields[i].lastIndexOf('=');
+                        metrics.put(fields[i].substring(0, separator),
+                                Double.valueOf(fields[i].substring(separator + 1)));
+                    }
+                    // a job run again after its inputs changed replaces the earlier line
+                    finished.put(fields[0], new Result(fields[0], fields[1], Long.parseLong(fields[2]), metrics, null,
+                            true));
+                } catch (RuntimeException e) {
+                    UIMAFramework.getLogger().log(Level.WARNING, "Ignoring invalid manifest line: " + line);
+                }
+            }
+        }
+        return finished;
+    }
+}
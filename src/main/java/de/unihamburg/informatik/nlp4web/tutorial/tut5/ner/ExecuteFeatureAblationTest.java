@@ -1,15 +1,28 @@
 package de.unihamburg.informatik.nlp4web.tutorial.tut5.ner;
 
 import de.tudarmstadt.ukp.dkpro.core.snowball.SnowballStemmer;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.annotator.FeatureStoreAnnotator;
 import de.unihamburg.informatik.nlp4web.tutorial.tut5.annotator.NERAnnotator;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.classifier.ViterbiCrfClassifierFactory;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.feature.FeatureCache;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.feature.FeatureExtractorFactory;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.feature.FeatureStore;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.metrics.MetricsPipeline;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.metrics.PipelineMetrics;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.reader.ConllCollectionReader;
 import de.unihamburg.informatik.nlp4web.tutorial.tut5.reader.NERReader;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.writer.ConllEvaluation;
 import de.unihamburg.informatik.nlp4web.tutorial.tut5.writer.NERWriter;
 import de.unihamburg.informatik.nlp4web.tutorial.tut5.xml.Features2Xml;
 import org.apache.uima.UIMAException;
 import org.apache.uima.UIMAFramework;
 import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
 import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.util.Level;
+import org.cleartk.ml.CleartkProcessingException;
+import org.cleartk.ml.CleartkSequenceAnnotator;
 import org.cleartk.ml.crfsuite.CrfSuiteStringOutcomeDataWriter;
 import org.cleartk.ml.jar.DefaultDataWriterFactory;
 import org.cleartk.ml.jar.DirectoryDataWriterFactory;
@@ -17,29 +30,46 @@ import org.cleartk.ml.jar.GenericJarClassifierFactory;
 import org.cleartk.util.cr.FilesCollectionReader;
 
 import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngine;
+import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngineDescription;
 import static org.apache.uima.fit.pipeline.SimplePipeline.runPipeline;
 
 public class ExecuteFeatureAblationTest {
 
-    private static final String EVALUATION_OUTPUT_DIRECTORY = "src/test/resources/evaluation/";
-    private static final String FEATURE_EXTRACTOR_CONFIG_DIRECTORY = "src/main/resources/feature/";
+    static final String EVALUATION_OUTPUT_DIRECTORY = "src/test/resources/evaluation/";
+    static final String FEATURE_EXTRACTOR_CONFIG_DIRECTORY = "src/main/resources/feature/";
     private static final String MODEL_DIRECTORY = "src/test/resources/model";
-    private static final Integer MAX_THREADS = 4;
+    private static final String FEATURE_STORE_DIRECTORY = "src/test/resources/featureStore";
+    private static final String NULL_TYPE = "O";
+
+    /**
+     * the metric the configurations are ranked by: CoNLL F1 score of the named entity chunks of the test file
+     */
+    public static final String SCORE_METRIC = "f1";
+    private static final String MANIFEST_FILE = "ablationManifest.txt";
+    private static final String RESULTS_FILE = "ablationResults.txt";
     private static final Integer MIN_NUMBER_OF_EXTRACTORS = 7;
 
 
-    public static class AblationTestRunner implements Runnable {
+    public static class AblationTestRunner implements AblationScheduler.Job {
 
         private String language;
         private File configFile;
         private File nerTrain;
         private File nerTest;
         private Integer id;
+        private FeatureStore featureStore;
 
         /**
          * @param language the language of the document that'll be analysed and trained with
@@ -49,11 +79,22 @@ public class ExecuteFeatureAblationTest {
          * @param id the id of the runner. this is used to store the generated models separate directories.
          */
         AblationTestRunner(String language, File configFile, File nerTrain, File nerTest, Integer id) {
+            this(language, configFile, nerTrain, nerTest, id, null);
+        }
+
+        /**
+         * @param featureStore the features of the training file extracted by all feature extractors. The training
+         *                     data of feature ablation configurations is replayed from it instead of being extracted
+         *                     again.
+         */
+        AblationTestRunner(String language, File configFile, File nerTrain, File nerTest, Integer id,
+                           FeatureStore featureStore) {
             this.language = language;
             this.configFile = configFile;
             this.nerTrain = nerTrain;
             this.nerTest = nerTest;
             this.id = id;
+            this.featureStore = featureStore;
         }
 
 
@@ -63,6 +104,18 @@ public class ExecuteFeatureAblationTest {
         private String getModelDir() {
             return MODEL_DIRECTORY + this.id.toString() + "/";
         }
+
+        /**
+         * @param pipeline the pipeline of the runner, "training" or "classification"
+         * @return the name of the {@link PipelineMetrics} of the pipeline
+         */
+        private String getMetricsName(String pipeline) {
+            return getName() + "#" + id + "." + pipeline;
+        }
+
+        private File getMetricsFile(String pipeline) {
+            return new File(ExecuteNER.METRICS_DIRECTORY + getName() + "." + pipeline + ".json");
+        }
         /**
          * @param posTagFile
          * @param configFileName
@@ -74,30 +127,65 @@ public class ExecuteFeatureAblationTest {
 
             new File(getModelDir()).mkdirs();
 
-            CollectionReader posTagFileReader = FilesCollectionReader.getCollectionReaderWithSuffixes(
-                    posTagFile.getAbsolutePath(), NERReader.CONLL_VIEW, posTagFile.getName());
-
-            AnalysisEngine snowballStemmer = createEngine(SnowballStemmer.class, SnowballStemmer.PARAM_LANGUAGE, language);
+            String featureExtractionFile = FEATURE_EXTRACTOR_CONFIG_DIRECTORY + configFileName;
+            AnalysisEngineDescription stemmer = createEngineDescription(SnowballStemmer.class,
+                    SnowballStemmer.PARAM_LANGUAGE, language);
+            String featureCacheKey = FeatureCache.getKey(posTagFile, stemmer, featureExtractionFile, 0);
+            boolean cached = new FeatureCache(new File(ExecuteNER.FEATURE_CACHE_DIRECTORY)).contains(featureCacheKey);
 
             AnalysisEngine nerAnnotator = createEngine(NERAnnotator.class,
-                    NERAnnotator.PARAM_FEATURE_EXTRACTION_FILE, FEATURE_EXTRACTOR_CONFIG_DIRECTORY + configFileName,
+                    NERAnnotator.PARAM_FEATURE_EXTRACTION_FILE, featureExtractionFile,
                     NERAnnotator.PARAM_IS_TRAINING, true,
+                    NERAnnotator.PARAM_FEATURE_CACHE_DIRECTORY, ExecuteNER.FEATURE_CACHE_DIRECTORY,
+                    NERAnnotator.PARAM_FEATURE_CACHE_KEY, featureCacheKey,
+                    NERAnnotator.PARAM_METRICS_NAME, getMetricsName("training"),
                     DirectoryDataWriterFactory.PARAM_OUTPUT_DIRECTORY, getModelDir(),
                     DefaultDataWriterFactory.PARAM_DATA_WRITER_CLASS_NAME, CrfSuiteStringOutcomeDataWriter.class);
 
-            runPipeline(
+            if (cached) {
+                // the annotator writes the cached training instances, the training file isn't read
+                nerAnnotator.collectionProcessComplete();
+                nerAnnotator.destroy();
+                PipelineMetrics.remove(getMetricsName("training"));
+                return;
+            }
+
+            // stream the training file, one CAS per document
+            CollectionReader posTagFileReader = ConllCollectionReader.getCollectionReader(posTagFile, 0);
+
+            AnalysisEngine snowballStemmer = createEngine(stemmer);
+
+            MetricsPipeline.runPipeline(
+                    PipelineMetrics.get(getMetricsName("training")),
                     posTagFileReader,
-                    createEngine(NERReader.class),
                     snowballStemmer,
                     nerAnnotator
             );
+            ExecuteNER.writeMetrics(getMetricsName("training"), getMetricsFile("training"));
+        }
+
+        /**
+         * Writes the training data of the feature extractors from the feature store
+         *
+         * @param extractors the indices of the feature extractors
+         */
+        private void writeModel(int[] extractors) throws IOException, CleartkProcessingException {
+
+            new File(getModelDir()).mkdirs();
+
+            CrfSuiteStringOutcomeDataWriter dataWriter = new CrfSuiteStringOutcomeDataWriter(new File(getModelDir()));
+            featureStore.replay(extractors, dataWriter);
+            dataWriter.finish();
         }
 
         private void trainModel() throws Exception {
             org.cleartk.ml.jar.Train.main(getModelDir());
         }
 
-        private void classifyTestFile(File testPosFile, String language, String evaluationOutputFile, String featureExtractorConfigFile)
+        /**
+         * @return the chunk metrics of the predictions on the test file (see {@link #SCORE_METRIC})
+         */
+        private Map<String, Double> classifyTestFile(File testPosFile, String language, String featureExtractorConfigFile)
                 throws UIMAException, IOException {
 
             CollectionReader testPosFileReader = FilesCollectionReader.getCollectionReaderWithSuffixes(testPosFile.getAbsolutePath(),
@@ -109,38 +197,89 @@ public class ExecuteFeatureAblationTest {
 
             AnalysisEngine nerAnnotator = createEngine(NERAnnotator.class,
                     NERAnnotator.PARAM_FEATURE_EXTRACTION_FILE, FEATURE_EXTRACTOR_CONFIG_DIRECTORY + featureExtractorConfigFile,
-                    GenericJarClassifierFactory.PARAM_CLASSIFIER_JAR_PATH, getModelDir() + "model.jar");
+                    GenericJarClassifierFactory.PARAM_CLASSIFIER_JAR_PATH, getModelDir() + "model.jar",
+                    // tag all sentences of the document inside the JVM, without running crfsuite
+                    CleartkSequenceAnnotator.PARAM_CLASSIFIER_FACTORY_CLASS_NAME, ViterbiCrfClassifierFactory.class.getName(),
+                    NERAnnotator.PARAM_CLASSIFICATION_BATCH_SIZE, 0,
+                    NERAnnotator.PARAM_METRICS_NAME, getMetricsName("classification"));
 
+            // evaluate the chunks while the pipeline runs, without writing an evaluation file
+            String evaluationName = getName() + "#" + id;
             AnalysisEngine nerWriter = createEngine(NERWriter.class,
-                    NERWriter.PARAM_NULL_TYPE, "O",
+                    NERWriter.PARAM_NULL_TYPE, NULL_TYPE,
                     NERWriter.PARAM_EXPECTED_ENTITY_TYPE_NUM, 9,
-                    NERWriter.PARAM_FILENAME, EVALUATION_OUTPUT_DIRECTORY + evaluationOutputFile,
+                    NERWriter.PARAM_EVALUATION_NAME, evaluationName,
                     NERWriter.PARAM_VERBOSE, false);
 
-            runPipeline(
-                    testPosFileReader,
-                    nerReader,
-                    snowballStemmer,
-                    nerAnnotator,
+            PipelineMetrics pipelineMetrics = PipelineMetrics.get(getMetricsName("classification"));
+            MetricsPipeline.runPipeline(pipelineMetrics, testPosFileReader, nerReader, snowballStemmer, nerAnnotator,
                     nerWriter);
+            ExecuteNER.writeMetrics(getMetricsName("classification"), getMetricsFile("classification"));
+
+            ConllEvaluation evaluation = NERWriter.removeEvaluation(evaluationName);
+            Map<String, Double> metrics = new LinkedHashMap<>();
+            metrics.put("accuracy", evaluation.getAccuracy());
+            metrics.put("precision", evaluation.getPrecision());
+            metrics.put("recall", evaluation.getRecall());
+            metrics.put(SCORE_METRIC, evaluation.getF1());
+            metrics.put("tokensPerSecond", pipelineMetrics.getRate(PipelineMetrics.TOKENS, PipelineMetrics.PIPELINE_STAGE));
+            return metrics;
+        }
+
+        @Override
+        public String getName() {
+            return configFile.getName();
         }
 
         /**
-         * This just runs the basic algorithm using the methods defined above
+         * @return the hash of the feature cache keys of the training and the test file (the corpus, the stemmer, the
+         * configuration and its gazetteer lists), of the extractors of the feature store if the training data is
+         * replayed from it and of the code version
          */
         @Override
-        public void run() {
-            if (configFile.isFile()) {
-                try {
-                    writeModel(nerTrain, language, configFile.getName());
-                    trainModel();
-                    classifyTestFile(nerTest, language, configFile.getName() + "_evalOutput.txt", configFile.getName());
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
+        public String getHash() throws IOException {
+            AnalysisEngineDescription stemmer;
+            try {
+                stemmer = createEngineDescription(SnowballStemmer.class, SnowballStemmer.PARAM_LANGUAGE, language);
+            } catch (ResourceInitializationException e) {
+                throw new IOException(e);
             }
-            System.gc();
+            String configuration = configFile.getPath();
+            String storeKey = featureStore != null && Features2Xml.getFeatureAblationExtractors(getName()) != null
+                    ? FeatureCache.getKey(nerTrain, stemmer, FeatureExtractorFactory.createAblationFeatureExtractors(), 0)
+                    : "no feature store";
+            return AblationScheduler.hash(FeatureCache.getKey(nerTrain, stemmer, configuration, 0),
+                    FeatureCache.getKey(nerTest, stemmer, configuration, 0), storeKey,
+                    AblationScheduler.getCodeVersion());
         }
+
+        /**
+         * This just runs the basic algorithm using the methods defined above
+         */
+        @Override
+        public Map<String, Double> run() throws Exception {
+            int[] extractors = Features2Xml.getFeatureAblationExtractors(configFile.getName());
+            if (featureStore != null && extractors != null)
+                writeModel(extractors);
+            else
+                writeModel(nerTrain, language, configFile.getName());
+            trainModel();
+            return classifyTestFile(nerTest, language, configFile.getName());
+        }
+    }
+
+    /**
+     * Extracts the features of all feature extractors of the feature ablation (see
+     * {@link FeatureExtractorFactory#createAblationFeatureExtractors()}, in the order of the configurations) from the
+     * training file into a feature store
+     */
+    static FeatureStore writeFeatureStore(File nerTrain, String language) throws UIMAException, IOException {
+        runPipeline(
+                ConllCollectionReader.getCollectionReader(nerTrain, 0),
+                createEngine(SnowballStemmer.class, SnowballStemmer.PARAM_LANGUAGE, language),
+                createEngine(FeatureStoreAnnotator.class,
+                        FeatureStoreAnnotator.PARAM_STORE_DIRECTORY, FEATURE_STORE_DIRECTORY));
+        return FeatureStore.open(new File(FEATURE_STORE_DIRECTORY));
     }
 
     public static void main(String[] args) {
@@ -156,18 +295,54 @@ public class ExecuteFeatureAblationTest {
             e.printStackTrace();
         }
 
-        // read all XML config files from disk
+        // read all XML config files from disk, sorted so every configuration keeps its model directory on resume
         File configDir = new File(FEATURE_EXTRACTOR_CONFIG_DIRECTORY);
-        File[] configFiles = configDir.listFiles();
+        File[] configFiles = configDir.listFiles(File::isFile);
+        Arrays.sort(configFiles);
         UIMAFramework.getLogger().log(Level.WARNING, "Running Feature Ablation Test for " + configFiles.length + " different Extractor Configurations!");
 
-        // create a fixed sized thread pool. the number of maximum threads should be adjusted to the machines cores
-        ExecutorService threadPool = Executors.newFixedThreadPool(MAX_THREADS);
+        // extract the features of the training file once, the runners filter them by their extractors
+        FeatureStore featureStore = null;
+        try {
+            featureStore = writeFeatureStore(nerTrain, language);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        List<AblationTestRunner> runners = new ArrayList<>();
         int i = 0;
-        // for each config file instantiate a test runner that is managed by the thread pool
         for (File configFile : configFiles)
-            threadPool.submit(new AblationTestRunner(language, configFile, nerTrain, nerTest, i++));
+            runners.add(new AblationTestRunner(language, configFile, nerTrain, nerTest, i++, featureStore));
 
-        threadPool.shutdown();
+        // run as many configurations at once as there are cores and heap for, skip the ones finished before
+        new File(EVALUATION_OUTPUT_DIRECTORY).mkdirs();
+        AblationScheduler scheduler = AblationScheduler.create(new File(EVALUATION_OUTPUT_DIRECTORY + MANIFEST_FILE));
+        List<AblationScheduler.Result> results;
+        try {
+            results = scheduler.run(runners);
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        // rank the configurations by their chunk F1 score
+        List<AblationScheduler.Result> ranking = new ArrayList<>();
+        for (AblationScheduler.Result result : results)
+            if (result.isSucceeded() && result.getMetrics().containsKey(SCORE_METRIC))
+                ranking.add(result);
+        ranking.sort(Comparator.comparingDouble((AblationScheduler.Result result) -> result.getMetrics().get(SCORE_METRIC)).reversed());
+        try (PrintWriter writer = new PrintWriter(new FileWriter(EVALUATION_OUTPUT_DIRECTORY + RESULTS_FILE))) {
+            writer.println("f1;precision;recall;accuracy;configuration");
+            for (AblationScheduler.Result result : ranking) {
+                Map<String, Double> metrics = result.getMetrics();
+                String line = String.format(Locale.ROOT, "%.2f;%.2f;%.2f;%.2f;%s", 100 * metrics.get(SCORE_METRIC),
+                        100 * metrics.get("precision"), 100 * metrics.get("recall"), 100 * metrics.get("accuracy"),
+                        result.getName());
+                writer.println(line);
+                UIMAFramework.getLogger().log(Level.INFO, line);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
-}
\ No newline at end of file
+}
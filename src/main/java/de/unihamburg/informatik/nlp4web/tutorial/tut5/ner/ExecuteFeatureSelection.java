@@ -0,0 +1,60 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.ner;
+
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.feature.FeatureStore;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.xml.Features2Xml;
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.util.Level;
+
+import java.io.File;
+
+/**
+ * Greedy feature selection as alternative to the exhaustive feature ablation test: trains and scores the candidate
+ * combinations of a round in parallel, using the models and the features of the {@link ExecuteFeatureAblationTest}.
+ * <p>
+ * Usage: ExecuteFeatureSelection [forward|backward] [patience]
+ */
+public class ExecuteFeatureSelection {
+
+    private static final String MANIFEST_FILE = "featureSelectionManifest.txt";
+
+    /**
+     * offset of the model directory ids, to not share the directories of the feature ablation test
+     */
+    private static final int MODEL_ID_OFFSET = 10000;
+
+    public static void main(String[] args) throws Exception {
+
+        String language = "en";
+        File nerTrain = new File("src/main/resources/ner/ner_eng.train");
+        File nerTest = new File("src/main/resources/ner/ner_eng.dev");
+        FeatureSelection.Direction direction = args.length > 0
+                ? FeatureSelection.Direction.valueOf(args[0].toUpperCase()) : FeatureSelection.Direction.FORWARD;
+        int patience = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+
+        // extract the features of the training file once, every candidate filters them by its extractors
+        FeatureStore featureStore = ExecuteFeatureAblationTest.writeFeatureStore(nerTrain, language);
+
+        FeatureSelection.CandidateFactory candidates = extractors -> {
+            File configFile = Features2Xml.writeFeatureAblationTestFile(extractors,
+                    ExecuteFeatureAblationTest.FEATURE_EXTRACTOR_CONFIG_DIRECTORY);
+            // every combination gets its own model directory, also when resumed
+            int id = MODEL_ID_OFFSET;
+            for (int e : extractors)
+                id += 1 << e;
+            return new ExecuteFeatureAblationTest.AblationTestRunner(language, configFile, nerTrain, nerTest, id,
+                    featureStore);
+        };
+
+        new File(ExecuteFeatureAblationTest.EVALUATION_OUTPUT_DIRECTORY).mkdirs();
+        AblationScheduler scheduler = AblationScheduler.create(
+                new File(ExecuteFeatureAblationTest.EVALUATION_OUTPUT_DIRECTORY + MANIFEST_FILE));
+        FeatureSelection selection = new FeatureSelection(Features2Xml.EXTRACTOR_NAMES.size(), scheduler, candidates,
+                ExecuteFeatureAblationTest.SCORE_METRIC, patience, 0.0);
+        FeatureSelection.Result result = selection.select(direction);
+
+        StringBuilder names = new StringBuilder();
+        for (int e : result.getExtractors())
+            names.append(Features2Xml.EXTRACTOR_NAMES.get(e)).append(' ');
+        UIMAFramework.getLogger().log(Level.INFO, "Selected extractors: " + names + result);
+    }
+}
@@ -38,6 +38,10 @@ public class ExecuteFinalTest {
 
         //let it run with final config and concatenated training
         File configFile = new File(FEATURE_EXTRACTOR_CONFIG_FILENAME);
-        new Thread(new ExecuteFeatureAblationTest.AblationTestRunner(language, configFile, concatTrain, nerFinalTest, 1337)).start();
+        try {
+            new ExecuteFeatureAblationTest.AblationTestRunner(language, configFile, concatTrain, nerFinalTest, 1337).run();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
     }
 }
@@ -1,17 +1,21 @@
 package de.unihamburg.informatik.nlp4web.tutorial.tut5.ner;
 
 import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngine;
-import static org.apache.uima.fit.pipeline.SimplePipeline.runPipeline;
+import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngineDescription;
+import static de.unihamburg.informatik.nlp4web.tutorial.tut5.metrics.MetricsPipeline.runPipeline;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Locale;
 
 import org.apache.uima.UIMAException;
 import org.apache.uima.UIMAFramework;
 import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
 import org.apache.uima.collection.CollectionReader;
 import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.util.Level;
+import org.cleartk.ml.CleartkSequenceAnnotator;
 import org.cleartk.ml.crfsuite.CrfSuiteStringOutcomeDataWriter;
 import org.cleartk.ml.jar.DefaultDataWriterFactory;
 import org.cleartk.ml.jar.DirectoryDataWriterFactory;
@@ -20,11 +24,42 @@ import org.cleartk.util.cr.FilesCollectionReader;
 
 import de.tudarmstadt.ukp.dkpro.core.snowball.SnowballStemmer;
 import de.unihamburg.informatik.nlp4web.tutorial.tut5.annotator.NERAnnotator;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.classifier.ViterbiCrfClassifierFactory;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.feature.FeatureCache;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.metrics.PipelineMetrics;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.reader.ConllCollectionReader;
 import de.unihamburg.informatik.nlp4web.tutorial.tut5.reader.NERReader;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.service.ParallelPipeline;
 import de.unihamburg.informatik.nlp4web.tutorial.tut5.writer.NERWriter;
 
 public class ExecuteNER {
 
+    /**
+     * number of bits of the hashed features (see {@link NERAnnotator#PARAM_FEATURE_HASH_BITS}), 0 keeps the feature
+     * names
+     */
+    public static final int FEATURE_HASH_BITS = 0;
+
+    /**
+     * directory of the cached training instances (see {@link FeatureCache})
+     */
+    public static final String FEATURE_CACHE_DIRECTORY = "src/test/resources/featureCache/";
+
+    private static final String FEATURE_EXTRACTION_FILE = "src/main/resources/feature/features.xml";
+
+    /**
+     * directory of the JSON dumps of the {@link PipelineMetrics} of the pipelines
+     */
+    public static final String METRICS_DIRECTORY = "src/test/resources/evaluation/metrics/";
+
+    /**
+     * number of sentences per CAS when tagging on several threads
+     */
+    private static final int PARALLEL_SENTENCES_PER_CAS = 100;
+
+    private static final String TRAINING_METRICS = "ExecuteNER.training";
+    private static final String CLASSIFICATION_METRICS = "ExecuteNER.classification";
+
     /**
      * @param posTagFile
      * @param modelDirectory
@@ -34,23 +69,60 @@ public class ExecuteNER {
      */
     public static void writeModel(File posTagFile, String modelDirectory, String language) throws UIMAException, IOException {
 
-        CollectionReader posTagFileReader = FilesCollectionReader.getCollectionReaderWithSuffixes(
-                posTagFile.getAbsolutePath(), NERReader.CONLL_VIEW, posTagFile.getName());
-
-        AnalysisEngine snowballStemmer = createEngine(SnowballStemmer.class, SnowballStemmer.PARAM_LANGUAGE, language);
+        AnalysisEngineDescription stemmer = createEngineDescription(SnowballStemmer.class,
+                SnowballStemmer.PARAM_LANGUAGE, language);
+        String featureCacheKey = FeatureCache.getKey(posTagFile, stemmer, FEATURE_EXTRACTION_FILE, FEATURE_HASH_BITS);
+        boolean cached = new FeatureCache(new File(FEATURE_CACHE_DIRECTORY)).contains(featureCacheKey);
 
         AnalysisEngine nerAnnotator = createEngine(NERAnnotator.class,
-                NERAnnotator.PARAM_FEATURE_EXTRACTION_FILE, "src/main/resources/feature/features.xml",
+                NERAnnotator.PARAM_FEATURE_EXTRACTION_FILE, FEATURE_EXTRACTION_FILE,
                 NERAnnotator.PARAM_IS_TRAINING, true,
+                NERAnnotator.PARAM_FEATURE_HASH_BITS, FEATURE_HASH_BITS,
+                NERAnnotator.PARAM_FEATURE_CACHE_DIRECTORY, FEATURE_CACHE_DIRECTORY,
+                NERAnnotator.PARAM_FEATURE_CACHE_KEY, featureCacheKey,
+                NERAnnotator.PARAM_METRICS_NAME, TRAINING_METRICS,
                 DirectoryDataWriterFactory.PARAM_OUTPUT_DIRECTORY, modelDirectory,
                 DefaultDataWriterFactory.PARAM_DATA_WRITER_CLASS_NAME, CrfSuiteStringOutcomeDataWriter.class);
 
+        if (cached) {
+            // the annotator writes the cached training instances, the training file isn't read
+            UIMAFramework.getLogger().log(Level.INFO, "Using the cached training instances " + featureCacheKey);
+            nerAnnotator.collectionProcessComplete();
+            nerAnnotator.destroy();
+            PipelineMetrics.remove(TRAINING_METRICS);
+            return;
+        }
+
+        // stream the training file, one CAS per document
+        CollectionReader posTagFileReader = ConllCollectionReader.getCollectionReader(posTagFile, 0);
+
+        AnalysisEngine snowballStemmer = createEngine(stemmer);
+
         runPipeline(
+                PipelineMetrics.get(TRAINING_METRICS),
                 posTagFileReader,
-                createEngine(NERReader.class),
                 snowballStemmer,
                 nerAnnotator
         );
+        writeMetrics(TRAINING_METRICS, new File(METRICS_DIRECTORY + "training.json"));
+    }
+
+    /**
+     * Unregisters the metrics of a complete pipeline and dumps them as JSON
+     */
+    static void writeMetrics(String metricsName, File file) {
+        PipelineMetrics metrics = PipelineMetrics.remove(metricsName);
+        if (metrics == null)
+            return;
+        try {
+            metrics.writeJson(file);
+            UIMAFramework.getLogger().log(Level.INFO, String.format(Locale.ROOT,
+                    "%s: %.0f tokens/s, %.0f sentences/s, metrics written to %s", metricsName,
+                    metrics.getRate(PipelineMetrics.TOKENS, PipelineMetrics.PIPELINE_STAGE),
+                    metrics.getRate(PipelineMetrics.SENTENCES, PipelineMetrics.PIPELINE_STAGE), file));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
 	public static void trainModel(String modelDirectory) throws Exception {
@@ -67,8 +139,13 @@ public class ExecuteNER {
 		AnalysisEngine snowballStemmer = createEngine(SnowballStemmer.class, SnowballStemmer.PARAM_LANGUAGE, language);
 		AnalysisEngine nerAnnotator = createEngine(NERAnnotator.class,
 
-				NERAnnotator.PARAM_FEATURE_EXTRACTION_FILE, "src/main/resources/feature/features.xml",
-				GenericJarClassifierFactory.PARAM_CLASSIFIER_JAR_PATH, modelDirectory + "model.jar");
+				NERAnnotator.PARAM_FEATURE_EXTRACTION_FILE, FEATURE_EXTRACTION_FILE,
+				GenericJarClassifierFactory.PARAM_CLASSIFIER_JAR_PATH, modelDirectory + "model.jar",
+				// tag all sentences of the document inside the JVM, without running crfsuite
+				CleartkSequenceAnnotator.PARAM_CLASSIFIER_FACTORY_CLASS_NAME, ViterbiCrfClassifierFactory.class.getName(),
+				NERAnnotator.PARAM_CLASSIFICATION_BATCH_SIZE, 0,
+				NERAnnotator.PARAM_FEATURE_HASH_BITS, FEATURE_HASH_BITS,
+				NERAnnotator.PARAM_METRICS_NAME, CLASSIFICATION_METRICS);
 		AnalysisEngine nerWriter = createEngine(NERWriter.class,
 				NERWriter.PARAM_NULL_TYPE, "O",
 				NERWriter.PARAM_EXPECTED_ENTITY_TYPE_NUM, 9,
@@ -76,11 +153,38 @@ public class ExecuteNER {
 				NERWriter.PARAM_VERBOSE, true);
 		
 		runPipeline(
+				PipelineMetrics.get(CLASSIFICATION_METRICS),
 				testPosFileReader,
 				nerReader,
 				snowballStemmer,
 				nerAnnotator,
 				nerWriter);
+		writeMetrics(CLASSIFICATION_METRICS, new File(METRICS_DIRECTORY + "classification.json"));
+	}
+
+	/**
+	 * Tags a CoNLL file or all CoNLL files of a directory on several threads (see {@link ParallelPipeline}) and writes
+	 * the predictions to the output file
+	 */
+	public static void classifyParallel(String modelDirectory, File input, String language, int threads,
+			String outputFile) throws UIMAException, IOException {
+
+		CollectionReader reader = ConllCollectionReader.getCollectionReader(input, PARALLEL_SENTENCES_PER_CAS);
+
+		AnalysisEngineDescription tagger = createEngineDescription(
+				createEngineDescription(SnowballStemmer.class, SnowballStemmer.PARAM_LANGUAGE, language),
+				createEngineDescription(NERAnnotator.class,
+						NERAnnotator.PARAM_FEATURE_EXTRACTION_FILE, FEATURE_EXTRACTION_FILE,
+						GenericJarClassifierFactory.PARAM_CLASSIFIER_JAR_PATH, modelDirectory + "model.jar",
+						CleartkSequenceAnnotator.PARAM_CLASSIFIER_FACTORY_CLASS_NAME, ViterbiCrfClassifierFactory.class.getName(),
+						NERAnnotator.PARAM_CLASSIFICATION_BATCH_SIZE, 0,
+						NERAnnotator.PARAM_FEATURE_HASH_BITS, FEATURE_HASH_BITS));
+		AnalysisEngine nerWriter = createEngine(NERWriter.class,
+				NERWriter.PARAM_NULL_TYPE, "O",
+				NERWriter.PARAM_EXPECTED_ENTITY_TYPE_NUM, 9,
+				NERWriter.PARAM_FILENAME, outputFile);
+
+		ParallelPipeline.runPipeline(reader, threads, tagger, nerWriter);
 	}
 
     public static void main(String[] args) throws Exception {
@@ -0,0 +1,197 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.ner;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.util.Level;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Greedy selection of feature extractors. Forward selection starts without extractors and adds the best extractor
+ * in every round, backward elimination starts with all extractors and removes the extractor whose removal hurts the
+ * least. The candidates of a round are scored in parallel by the {@link AblationScheduler}, so a round costs one
+ * training run per remaining extractor instead of one per combination.
+ */
+public class FeatureSelection {
+
+    public enum Direction {
+        FORWARD, BACKWARD
+    }
+
+    /**
+     * Creates the job training and scoring a combination of extractors
+     */
+    public interface CandidateFactory {
+
+        /**
+         * @param extractors the indices of the extractors (ascending)
+         * @return the job, its name must be unique for the combination
+         * @throws IOException if the job can't be prepared (e.g. its configuration file can't be written)
+         */
+        AblationScheduler.Job create(int[] extractors) throws IOException;
+    }
+
+    /**
+     * The best combination found
+     */
+    public static final class Result {
+
+        private final int[] extractors;
+        private final double score;
+        private final int evaluatedCount;
+
+        Result(int[] extractors, double score, int evaluatedCount) {
+            this.extractors = extractors;
+            this.score = score;
+            this.evaluatedCount = evaluatedCount;
+        }
+
+        /**
+         * @return the indices of the selected extractors (ascending)
+         */
+        public int[] getExtractors() {
+            return extractors.clone();
+        }
+
+        /**
+         * @return the score of the selected extractors
+         */
+        public double getScore() {
+            return score;
+        }
+
+        /**
+         * @return the number of combinations trained and scored
+         */
+        public int getEvaluatedCount() {
+            return evaluatedCount;
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(extractors) + " score " + score + " (" + evaluatedCount + " combinations evaluated)";
+        }
+    }
+
+    private final int extractorCount;
+    private final AblationScheduler scheduler;
+    private final CandidateFactory candidateFactory;
+    private final String metric;
+    private final int patience;
+    private final double minImprovement;
+
+    /**
+     * @param extractorCount   the number of extractors to select from
+     * @param scheduler        the scheduler running the candidates of a round
+     * @param candidateFactory the factory of the jobs scoring the candidates
+     * @param metric           the name of the metric (returned by the jobs) to maximize
+     * @param patience         the number of rounds without improvement after which the selection stops early, 0 to
+     *                         run all rounds
+     * @param minImprovement   the minimal increase of the score counted as improvement
+     */
+    public FeatureSelection(int extractorCount, AblationScheduler scheduler, CandidateFactory candidateFactory,
+                            String metric, int patience, double minImprovement) {
+        this.extractorCount = extractorCount;
+        this.scheduler = scheduler;
+        this.candidateFactory = candidateFactory;
+        this.metric = metric;
+        this.patience = patience;
+        this.minImprovement = minImprovement;
+    }
+
+    /**
+     * @param direction forward selection or backward elimination
+     * @return the best combination of all rounds
+     * @throws IOException          if a candidate can't be prepared or the manifest of the scheduler fails
+     * @throws InterruptedException if interrupted while waiting for the candidates
+     */
+    public Result select(Direction direction) throws IOException, InterruptedException {
+        boolean[] selected = new boolean[extractorCount];
+        if (direction == Direction.BACKWARD)
+            Arrays.fill(selected, true);
+
+        int evaluated = 0;
+        int[] best = toIndices(selected);
+        double bestScore = Double.NEGATIVE_INFINITY;
+        if (direction == Direction.BACKWARD) {
+            // the score of all extractors is the one to beat
+            bestScore = score(scheduler.run(Arrays.asList(candidateFactory.create(best))).get(0));
+            ++evaluated;
+            log(direction, 0, best, bestScore);
+        }
+
+        int roundsWithoutImprovement = 0;
+        for (int round = 1; round <= extractorCount; ++round) {
+            // every candidate toggles one extractor
+            List<Integer> toggled = new ArrayList<>();
+            List<AblationScheduler.Job> candidates = new ArrayList<>();
+            for (int e = 0; e < extractorCount; ++e) {
+                if (selected[e] != (direction == Direction.FORWARD)) {
+                    selected[e] = !selected[e];
+                    int[] extractors = toIndices(selected);
+                    selected[e] = !selected[e];
+                    if (extractors.length == 0)
+                        continue;
+                    toggled.add(e);
+                    candidates.add(candidateFactory.create(extractors));
+                }
+            }
+            if (candidates.isEmpty())
+                break;
+
+            List<AblationScheduler.Result> results = scheduler.run(candidates);
+            evaluated += results.size();
+            int roundBest = -1;
+            double roundBestScore = Double.NEGATIVE_INFINITY;
+            for (int c = 0; c < results.size(); ++c) {
+                double score = score(results.get(c));
+                if (score > roundBestScore) {
+                    roundBest = c;
+                    roundBestScore = score;
+                }
+            }
+            if (roundBest < 0) {
+                UIMAFramework.getLogger().log(Level.SEVERE, "All candidates of round " + round + " failed");
+                break;
+            }
+            int e = toggled.get(roundBest);
+            selected[e] = !selected[e];
+            log(direction, round, toIndices(selected), roundBestScore);
+
+            if (roundBestScore > bestScore + minImprovement) {
+                best = toIndices(selected);
+                bestScore = roundBestScore;
+                roundsWithoutImprovement = 0;
+            } else if (patience > 0 && ++roundsWithoutImprovement >= patience) {
+                UIMAFramework.getLogger().log(Level.INFO, "Stopping early after " + round + " rounds");
+                break;
+            }
+        }
+        return new Result(best, bestScore, evaluated);
+    }
+
+    private double score(AblationScheduler.Result result) {
+        Double score = result.isSucceeded() ? result.getMetrics().get(metric) : null;
+        return score == null || score.isNaN() ? Double.NEGATIVE_INFINITY : score;
+    }
+
+    private static void log(Direction direction, int round, int[] extractors, double score) {
+        UIMAFramework.getLogger().log(Level.INFO, direction + " selection round " + round + ": "
+                + Arrays.toString(extractors) + " score " + score);
+    }
+
+    private static int[] toIndices(boolean[] selected) {
+        int count = 0;
+        for (boolean s : selected)
+            if (s)
+                ++count;
+        int[] indices = new int[count];
+        count = 0;
+        for (int e = 0; e < selected.length; ++e)
+            if (selected[e])
+                indices[count++] = e;
+        return indices;
+    }
+}
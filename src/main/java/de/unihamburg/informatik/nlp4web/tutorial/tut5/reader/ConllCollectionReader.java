@@ -0,0 +1,205 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.reader;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.collection.CollectionException;
+import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.fit.component.JCasCollectionReader_ImplBase;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.fit.factory.CollectionReaderFactory;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.Level;
+import org.apache.uima.util.Logger;
+import org.apache.uima.util.Progress;
+import org.apache.uima.util.ProgressImpl;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.type.NEIOBAnnotation;
+
+/**
+ * Collection reader streaming a CoNLL file line by line. Instead of one CAS holding the whole corpus it emits one CAS
+ * per document (starting with a -DOCSTART- line) or per batch of sentences, so the memory needed depends on the
+ * size of a document and not on the size of the corpus.
+ * <p>
+ * The CASes are annotated exactly like {@link NERReader} annotates its input: the -DOCSTART- line is kept as a
+ * sentence of its own, every token is followed by a space and every sentence by a new line.
+ * <p>
+ * If the input is a directory, its files are read one after the other (sorted by name), a CAS never spans two files.
+ */
+public class ConllCollectionReader extends JCasCollectionReader_ImplBase {
+
+    /**
+     * CoNLL file or directory of CoNLL files to read
+     */
+    public static final String PARAM_INPUT_FILE = "InputFile";
+
+    /**
+     * Encoding of the CoNLL file, the platform default if not set
+     */
+    public static final String PARAM_ENCODING = "Encoding";
+
+    /**
+     * Number of sentences per CAS. If not positive (the default), one CAS per -DOCSTART- document is created.
+     */
+    public static final String PARAM_SENTENCES_PER_CAS = "SentencesPerCas";
+
+    public static final String DOCUMENT_START = "-DOCSTART-";
+
+    @ConfigurationParameter(name = PARAM_INPUT_FILE, mandatory = true)
+    private File inputFile = null;
+    @ConfigurationParameter(name = PARAM_ENCODING, mandatory = false)
+    private String encoding = null;
+    @ConfigurationParameter(name = PARAM_SENTENCES_PER_CAS, mandatory = false, defaultValue = "0")
+    private int sentencesPerCas = 0;
+
+    private Logger logger = null;
+    private Charset charset = null;
+    // the files not opened yet
+    private final Deque<File> inputFiles = new ArrayDeque<>();
+    private BufferedReader reader = null;
+    // the first line of the next CAS (null if it isn't read yet)
+    private String nextLine = null;
+    private int casCount = 0;
+    private final ConllLineScanner scanner = new ConllLineScanner("");
+
+    /**
+     * @param inputFile       the CoNLL file or directory
+     * @param sentencesPerCas the number of sentences per CAS, not positive for one CAS per document
+     * @return the description of the reader
+     * @throws ResourceInitializationException if the reader can't be created
+     */
+    public static CollectionReader getCollectionReader(File inputFile, int sentencesPerCas)
+            throws ResourceInitializationException {
+        return CollectionReaderFactory.createReader(ConllCollectionReader.class,
+                PARAM_INPUT_FILE, inputFile.getAbsolutePath(),
+                PARAM_SENTENCES_PER_CAS, sentencesPerCas);
+    }
+
+    @Override
+    public void initialize(UimaContext context) throws ResourceInitializationException {
+        super.initialize(context);
+        logger = context.getLogger();
+        charset = encoding == null ? Charset.defaultCharset() : Charset.forName(encoding);
+        if (inputFile.isDirectory()) {
+            File[] files = inputFile.listFiles(File::isFile);
+            Arrays.sort(files);
+            inputFiles.addAll(Arrays.asList(files));
+        } else {
+            inputFiles.add(inputFile);
+        }
+        try {
+            openNextFile();
+        } catch (IOException e) {
+            throw new ResourceInitializationException(e);
+        }
+    }
+
+    /**
+     * Opens the next input file, if there is one
+     */
+    private void openNextFile() throws IOException {
+        File file = inputFiles.poll();
+        if (file != null)
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), charset));
+    }
+
+    @Override
+    public boolean hasNext() throws IOException, CollectionException {
+        while (nextLine == null && reader != null) {
+            // skip the empty lines between the sentences
+            while ((nextLine = reader.readLine()) != null && nextLine.trim().isEmpty())
+                ;
+            if (nextLine == null) {
+                reader.close();
+                reader = null;
+                openNextFile();
+            }
+        }
+        return nextLine != null;
+    }
+
+    @Override
+    public void getNext(JCas jCas) throws IOException, CollectionException {
+        if (!hasNext())
+            throw new CollectionException(new IOException("No more CoNLL sentences in " + inputFile));
+        StringBuilder docText = new StringBuilder();
+        Sentence sentence = null;
+        int sentenceCount = 0;
+        String line = nextLine;
+        nextLine = null;
+        while (line != null) {
+            if (line.trim().isEmpty()) {
+                if (sentence != null) {
+                    terminateSentence(sentence, docText);
+                    sentence = null;
+                    ++sentenceCount;
+                    if (sentencesPerCas > 0 && sentenceCount >= sentencesPerCas)
+                        break;
+                }
+            } else {
+                if (sentence == null && sentencesPerCas <= 0 && docText.length() > 0 && line.startsWith(DOCUMENT_START)) {
+                    // the next document starts
+                    nextLine = line;
+                    break;
+                }
+                scanner.reset(line);
+                scanner.next();
+                int idx = docText.length();
+                int wordEnd = scanner.getWordEnd();
+                docText.append(line, 0, wordEnd).append(' ');
+                if (sentence == null) {
+                    sentence = new Sentence(jCas);
+                    sentence.setBegin(idx);
+                }
+                Token token = new Token(jCas, idx, idx + wordEnd);
+                token.addToIndexes();
+                NEIOBAnnotation namedEntityTag = new NEIOBAnnotation(jCas, idx, idx + wordEnd);
+                namedEntityTag.setGoldValue(scanner.getTag());
+                namedEntityTag.addToIndexes();
+                sentence.setEnd(idx + wordEnd);
+                if (logger.isLoggable(Level.FINE))
+                    logger.log(Level.FINE, "Token: [" + line.substring(0, wordEnd) + "]" + token.getBegin() + "\t"
+                            + token.getEnd() + "\t" + namedEntityTag.getGoldValue());
+            }
+            line = reader.readLine();
+        }
+        if (sentence != null)
+            terminateSentence(sentence, docText);
+
+        jCas.setDocumentText(docText.toString());
+        ++casCount;
+    }
+
+    @Override
+    public Progress[] getProgress() {
+        return new Progress[]{new ProgressImpl(casCount, -1, Progress.ENTITIES)};
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+        inputFiles.clear();
+    }
+
+    private void terminateSentence(Sentence sentence, StringBuilder docText) {
+        sentence.addToIndexes();
+        docText.append('\n');
+        if (logger.isLoggable(Level.FINE))
+            logger.log(Level.FINE, "Sentence:[" + docText.substring(sentence.getBegin(), sentence.getEnd()) + "]\t"
+                    + sentence.getBegin() + "\t" + sentence.getEnd());
+    }
+}
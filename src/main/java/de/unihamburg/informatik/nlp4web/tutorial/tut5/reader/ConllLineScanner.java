@@ -0,0 +1,171 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.reader;
+
+/**
+ * Scans the lines of a CoNLL text and the columns of each line in place. Instead of splitting the text and every
+ * line into new strings, only the offsets of the current line, its first column (the word) and its last column
+ * (the named entity tag) are kept. The tags are taken from a small cache, so scanning allocates nothing for the
+ * common case.
+ * <p>
+ * Lines are separated by "\n" or "\r\n", columns by whitespace (as matched by the regex "\s"). Like
+ * {@link String#split(String)}, empty lines at the end of the text are ignored.
+ */
+public final class ConllLineScanner {
+
+    private static final int TAG_CACHE_SIZE = 32;
+
+    private CharSequence text;
+    private int position;
+    // the end of the text without trailing empty lines
+    private int limit;
+    private int lineBegin;
+    private int lineEnd;
+    private int wordEnd;
+    private int tagBegin;
+    private int tagEnd;
+    private final String[] tagCache = new String[TAG_CACHE_SIZE];
+    private int tagCount = 0;
+
+    /**
+     * @param text the CoNLL text
+     */
+    public ConllLineScanner(CharSequence text) {
+        reset(text);
+    }
+
+    /**
+     * Starts scanning a new text, the cached tags are kept.
+     *
+     * @param text the CoNLL text
+     */
+    public void reset(CharSequence text) {
+        this.text = text;
+        this.position = 0;
+        int limit = text.length();
+        while (limit > 0 && text.charAt(limit - 1) == '\n') {
+            --limit;
+            if (limit > 0 && text.charAt(limit - 1) == '\r')
+                --limit;
+        }
+        this.limit = limit;
+        this.lineBegin = 0;
+        this.lineEnd = 0;
+    }
+
+    /**
+     * Advances to the next line.
+     *
+     * @return false if there are no more lines
+     */
+    public boolean next() {
+        int length = limit;
+        if (position >= length)
+            return false;
+        lineBegin = position;
+        int end = lineBegin;
+        while (end < length && text.charAt(end) != '\n')
+            ++end;
+        position = end + 1;
+        if (end > lineBegin && text.charAt(end - 1) == '\r')
+            --end;
+        lineEnd = end;
+
+        // the word is everything up to the first whitespace
+        wordEnd = lineBegin;
+        while (wordEnd < lineEnd && !isSeparator(text.charAt(wordEnd)))
+            ++wordEnd;
+        // the tag is the last column (trailing whitespace is ignored)
+        tagEnd = lineEnd;
+        while (tagEnd > wordEnd && isSeparator(text.charAt(tagEnd - 1)))
+            --tagEnd;
+        tagBegin = tagEnd;
+        while (tagBegin > wordEnd && !isSeparator(text.charAt(tagBegin - 1)))
+            --tagBegin;
+        if (tagBegin == tagEnd)
+            tagBegin = lineBegin; // one column only
+        return true;
+    }
+
+    /**
+     * @return true if the current line is empty (a sentence boundary)
+     */
+    public boolean isEmpty() {
+        return lineBegin == lineEnd;
+    }
+
+    /**
+     * @return the begin of the current line in the text
+     */
+    public int getLineBegin() {
+        return lineBegin;
+    }
+
+    /**
+     * @return the end of the current line in the text (without the line separator)
+     */
+    public int getLineEnd() {
+        return lineEnd;
+    }
+
+    /**
+     * @return the begin of the word (the first column) in the text
+     */
+    public int getWordBegin() {
+        return lineBegin;
+    }
+
+    /**
+     * @return the end of the word (the first column) in the text
+     */
+    public int getWordEnd() {
+        return wordEnd;
+    }
+
+    /**
+     * @return the length of the word (the first column)
+     */
+    public int getWordLength() {
+        return wordEnd - lineBegin;
+    }
+
+    /**
+     * @return true if the current line starts with the prefix
+     */
+    public boolean startsWith(String prefix) {
+        if (lineEnd - lineBegin < prefix.length())
+            return false;
+        for (int i = 0; i < prefix.length(); ++i)
+            if (text.charAt(lineBegin + i) != prefix.charAt(i))
+                return false;
+        return true;
+    }
+
+    /**
+     * @return the named entity tag (the last column), a shared instance for all equal tags
+     */
+    public String getTag() {
+        int length = tagEnd - tagBegin;
+        for (int i = 0; i < tagCount; ++i) {
+            String tag = tagCache[i];
+            if (tag.length() == length && regionMatches(tag, tagBegin))
+                return tag;
+        }
+        String tag = text.subSequence(tagBegin, tagEnd).toString();
+        if (tagCount < TAG_CACHE_SIZE)
+            tagCache[tagCount++] = tag;
+        return tag;
+    }
+
+    private boolean regionMatches(String tag, int begin) {
+        for (int i = 0; i < tag.length(); ++i)
+            if (text.charAt(begin + i) != tag.charAt(i))
+                return false;
+        return true;
+    }
+
+    /**
+     * @return true for the characters matched by the regex "\s"
+     */
+    private static boolean isSeparator(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
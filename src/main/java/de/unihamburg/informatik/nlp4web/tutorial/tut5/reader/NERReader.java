@@ -61,79 +61,60 @@ public class NERReader
         catch (CASException e) {
             throw new AnalysisEngineProcessException(e);
         }
-        // a new sentence always starts with a new line
-        if (tbText.charAt(0) != '\n') {
-            tbText = "\n" + tbText;
-        }
-
-        String[] tokens = tbText.split("(\r\n|\n)");
+        ConllLineScanner scanner = new ConllLineScanner(tbText);
         Sentence sentence = null;
-        int idx = 0;
         Token token = null;
-        NEIOBAnnotation NamedEntityTag;
-        String NamedEntity;
-        boolean initSentence = false;
-        StringBuffer docText = new StringBuffer();
-
-        StringBuffer sentenceSb = new StringBuffer();
+        NEIOBAnnotation namedEntityTag;
+        StringBuilder docText = new StringBuilder(tbText.length() / 2);
+        boolean logTokens = logger.isLoggable(Level.FINE);
+        // the blank lines since the last token, ending the sentence once the next token is read
+        int blankLines = 0;
 
- 
-        for (String line : tokens) {
+        while (scanner.next()) {
 
             // new sentence if there's a new line
-            if (line.equals("")) {
-                if (sentence != null && token != null) {
-                    terminateSentence(sentence, token, docText);
-                    docText.append("\n");
-                    idx++;             
-                }
-                // init new sentence with the next recognized token
-                initSentence = true;
-                sentenceSb = new StringBuffer();
+            if (scanner.isEmpty()) {
+                blankLines++;
             }
             else {
-                String[] tag = line.split("\\s");
-                String word = tag[0];
-                NamedEntity = tag[tag.length - 1];
-
-
-                docText.append(word);
-                sentenceSb.append(word + " ");
-
-
-                token = new Token(docView, idx, idx + word.length());
-                NamedEntityTag = new NEIOBAnnotation(docView, idx, idx + word.length());
+                // every blank line (re)terminates the sentence and adds a line break, as the former split based
+                // reader did; blank lines at the end of the text are ignored
+                if (blankLines > 0 && sentence != null) {
+                    for (int i = 0; i < blankLines; i++) {
+                        terminateSentence(sentence, token, docText);
+                        docText.append('\n');
+                    }
+                }
+                int idx = docText.length();
+                int end = idx + scanner.getWordLength();
+                docText.append(tbText, scanner.getWordBegin(), scanner.getWordEnd());
+                docText.append(' ');
 
-                docText.append(" ");
-                idx++;
+                token = new Token(docView, idx, end);
+                namedEntityTag = new NEIOBAnnotation(docView, idx, end);
+                namedEntityTag.setGoldValue(scanner.getTag());
 
                 // start new sentence
-                if (initSentence) {
+                if (sentence == null || blankLines > 0) {
                     sentence = new Sentence(docView);
-                    sentence.setBegin(token.getBegin());
-                    initSentence = false;
+                    sentence.setBegin(idx);
+                    blankLines = 0;
                 }
-                // increment actual index of text
-                idx += word.length();
-                NamedEntityTag.setGoldValue(NamedEntity);
 
-
-
-                NamedEntityTag.addToIndexes();
+                namedEntityTag.addToIndexes();
                 token.addToIndexes();
 
-                logger.log(Level.FINE,
-                        "Token: [" + docText.substring(token.getBegin(), token.getEnd()) + "]"
-                                + token.getBegin() + "\t" + token.getEnd());
-                logger.log(
-                        Level.FINE,
-                        "NamedEnity: ["
-                                + docText.substring(NamedEntityTag.getBegin(),
-                                        NamedEntityTag.getEnd()) + "]" + NamedEntityTag.getBegin()
-                                + "\t" + NamedEntityTag.getEnd());
+                if (logTokens) {
+                    logger.log(Level.FINE,
+                            "Token: [" + docText.substring(token.getBegin(), token.getEnd()) + "]"
+                                    + token.getBegin() + "\t" + token.getEnd());
+                    logger.log(Level.FINE,
+                            "NamedEnity: [" + docText.substring(namedEntityTag.getBegin(), namedEntityTag.getEnd())
+                                    + "]" + namedEntityTag.getBegin() + "\t" + namedEntityTag.getEnd());
+                }
             }
         }
-        if (sentence != null && token != null) {
+        if (sentence != null) {
             terminateSentence(sentence, token, docText);
         }
 
@@ -141,12 +122,13 @@ public class NERReader
     }
 
 
-    private void terminateSentence(Sentence sentence, Token token, StringBuffer docText)
+    private void terminateSentence(Sentence sentence, Token token, StringBuilder docText)
     {
         sentence.setEnd(token.getEnd());
         sentence.addToIndexes();
-        logger.log(Level.FINE,
-                "Sentence:[" + docText.substring(sentence.getBegin(), sentence.getEnd()) + "]\t"
-                        + sentence.getBegin() + "\t" + sentence.getEnd());
+        if (logger.isLoggable(Level.FINE))
+            logger.log(Level.FINE,
+                    "Sentence:[" + docText.substring(sentence.getBegin(), sentence.getEnd()) + "]\t"
+                            + sentence.getBegin() + "\t" + sentence.getEnd());
     }
 }
\ No newline at end of file
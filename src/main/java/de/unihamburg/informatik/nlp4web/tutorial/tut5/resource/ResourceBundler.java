@@ -0,0 +1,92 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.resource;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.util.Level;
+
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.gazetteer.GazetteerCompiler;
+
+/**
+ * Offline step packing the resources needed for tagging into one bundle, read by {@link Resources} if the system
+ * property {@value Resources#BUNDLE_PROPERTY} points to it. Every file is stored under its
+ * {@link Resources#getName(String) resource name}, so the pipeline finds it under its usual path.
+ * <p>
+ * Usage: ResourceBundler bundle [files or directories]
+ * <p>
+ * Without files the gazetteer lists, the gazetteer image and the feature extraction files are packed. Add the model
+ * directory (e.g. the model of ExecuteNER) to pack the model as well.
+ */
+public class ResourceBundler {
+
+    public static final String DEFAULT_FEATURE_DIRECTORY = Resources.RESOURCE_DIRECTORY + "feature/";
+
+    /**
+     * Packs the files into the bundle, the files of a directory (not of its subdirectories) in the order of their names
+     *
+     * @param bundle the bundle to write
+     * @param paths  the files and directories to pack
+     * @return the number of packed files
+     * @throws IOException if error while reading the files or writing the bundle
+     */
+    public static int bundle(File bundle, List<String> paths) throws IOException {
+        List<String> files = new ArrayList<>();
+        for (String path : paths) {
+            File[] directoryFiles = new File(path).listFiles(File::isFile);
+            if (directoryFiles == null) {
+                files.add(path);
+                continue;
+            }
+            Arrays.sort(directoryFiles);
+            for (File file : directoryFiles)
+                files.add(new File(path, file.getName()).getPath());
+        }
+        try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(bundle), 1 << 16))) {
+            for (String file : files) {
+                zip.putNextEntry(new ZipEntry(Resources.getName(file)));
+                Files.copy(new File(file).toPath(), zip);
+                zip.closeEntry();
+            }
+        }
+        return files.size();
+    }
+
+    /**
+     * @return the gazetteer lists, the gazetteer image (if compiled) and the feature extraction files
+     */
+    private static List<String> getDefaultPaths() {
+        List<String> paths = new ArrayList<>();
+        File[] lists = new File(GazetteerCompiler.DEFAULT_LIST_DIRECTORY).listFiles(
+                (dir, name) -> name.endsWith(".txt"));
+        if (lists != null) {
+            Arrays.sort(lists);
+            for (File list : lists)
+                paths.add(GazetteerCompiler.DEFAULT_LIST_DIRECTORY + list.getName());
+        }
+        if (new File(GazetteerCompiler.DEFAULT_IMAGE).isFile())
+            paths.add(GazetteerCompiler.DEFAULT_IMAGE);
+        paths.add(DEFAULT_FEATURE_DIRECTORY);
+        return paths;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: ResourceBundler bundle [files or directories]");
+            System.exit(1);
+        }
+        File bundle = new File(args[0]);
+        List<String> paths = args.length > 1 ? Arrays.asList(args).subList(1, args.length) : getDefaultPaths();
+        int files = bundle(bundle, paths);
+        UIMAFramework.getLogger().log(Level.INFO, "Packed " + files + " files into " + bundle + " (" + bundle.length()
+                + " bytes)");
+    }
+}
@@ -0,0 +1,162 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.resource;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Process wide access to the resources of the pipeline (gazetteer lists, feature extraction files, models), so it runs
+ * from a source checkout as well as from a single self-contained jar.
+ * <p>
+ * Resources are named by their usual paths, e.g. src/main/resources/ner/eng_LOC.txt (these names are part of the
+ * features of the trained models, so they stay the same wherever the resource is read from). A path is resolved
+ * <ol>
+ * <li>in the file system, if the file exists (a source checkout, the files can be edited and reloaded)</li>
+ * <li>in the bundle given by the system property {@value #BUNDLE_PROPERTY}, see {@link ResourceBundler}</li>
+ * <li>on the classpath, e.g. in the jar built by Maven</li>
+ * </ol>
+ * In the bundle and on the classpath the resource has its {@link #getName(String) name} relative to
+ * {@value #RESOURCE_DIRECTORY}. The bundle is read once, sequentially, and kept in memory for all users of the JVM.
+ */
+public final class Resources {
+
+    /**
+     * the system property holding the path of the resource bundle
+     */
+    public static final String BUNDLE_PROPERTY = "ner.resources.bundle";
+
+    /**
+     * the directory of the resources in the source checkout, the root of the bundle and the classpath
+     */
+    public static final String RESOURCE_DIRECTORY = "src/main/resources/";
+
+    /**
+     * the content of the bundle by name, empty if there is no bundle
+     */
+    private static volatile Map<String, byte[]> bundle;
+
+    private Resources() {
+    }
+
+    /**
+     * @param path the path of the resource
+     * @return true if the resource is found in the file system, the bundle or on the classpath
+     * @throws UncheckedIOException if error while reading the bundle
+     */
+    public static boolean exists(String path) {
+        if (new File(path).isFile())
+            return true;
+        String name = getName(path);
+        try {
+            return getBundle().containsKey(name) || Resources.class.getClassLoader().getResource(name) != null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param path the path of the resource
+     * @return the stream of the resource, from the file system, the bundle or the classpath
+     * @throws IOException if the resource is not found or error while reading the bundle
+     */
+    public static InputStream open(String path) throws IOException {
+        File file = new File(path);
+        if (file.isFile())
+            return new FileInputStream(file);
+        String name = getName(path);
+        byte[] content = getBundle().get(name);
+        if (content != null)
+            return new ByteArrayInputStream(content);
+        InputStream stream = Resources.class.getClassLoader().getResourceAsStream(name);
+        if (stream == null)
+            throw new FileNotFoundException(path + " is neither a file nor a resource " + name);
+        return stream;
+    }
+
+    /**
+     * @param path the path of the resource
+     * @return the content of the resource
+     * @throws IOException if the resource is not found or error while reading
+     */
+    public static byte[] read(String path) throws IOException {
+        try (InputStream stream = open(path)) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1 << 16];
+            for (int read; (read = stream.read(buffer)) > 0; )
+                content.write(buffer, 0, read);
+            return content.toByteArray();
+        }
+    }
+
+    /**
+     * @param path the path of the resource
+     * @return the file of the resource, null if the resource isn't read from the file system
+     */
+    public static File getFile(String path) {
+        File file = new File(path);
+        return file.isFile() ? file : null;
+    }
+
+    /**
+     * @param path the path of the resource
+     * @return the name of the resource in the bundle and on the classpath, i.e. the path relative to
+     * {@value #RESOURCE_DIRECTORY} (or else without the leading separators), e.g. ner/eng_LOC.txt
+     */
+    public static String getName(String path) {
+        String name = path.replace(File.separatorChar, '/');
+        while (name.startsWith("./"))
+            name = name.substring(2);
+        int resourceDirectory = name.indexOf(RESOURCE_DIRECTORY);
+        if (resourceDirectory == 0 || resourceDirectory > 0 && name.charAt(resourceDirectory - 1) == '/')
+            name = name.substring(resourceDirectory + RESOURCE_DIRECTORY.length());
+        while (name.startsWith("/"))
+            name = name.substring(1);
+        return name;
+    }
+
+    private static Map<String, byte[]> getBundle() throws IOException {
+        Map<String, byte[]> loaded = bundle;
+        if (loaded == null) {
+            synchronized (Resources.class) {
+                loaded = bundle;
+                if (loaded == null) {
+                    String path = System.getProperty(BUNDLE_PROPERTY);
+                    loaded = path == null ? Collections.emptyMap() : readBundle(new File(path));
+                    bundle = loaded;
+                }
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Reads all entries of the bundle in one pass
+     */
+    private static Map<String, byte[]> readBundle(File file) throws IOException {
+        Map<String, byte[]> entries = new HashMap<>();
+        byte[] buffer = new byte[1 << 16];
+        try (ZipInputStream zip = new ZipInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            for (ZipEntry entry; (entry = zip.getNextEntry()) != null; ) {
+                if (entry.isDirectory())
+                    continue;
+                ByteArrayOutputStream content = new ByteArrayOutputStream(
+                        entry.getSize() > 0 ? (int) entry.getSize() : buffer.length);
+                for (int read; (read = zip.read(buffer)) > 0; )
+                    content.write(buffer, 0, read);
+                entries.put(entry.getName(), content.toByteArray());
+            }
+        }
+        return Collections.unmodifiableMap(entries);
+    }
+}
@@ -0,0 +1,363 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.service;
+
+import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngine;
+import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngineDescription;
+import static org.apache.uima.fit.util.JCasUtil.select;
+
+import java.io.Closeable;
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.CASException;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.util.CasPool;
+import org.cleartk.ml.CleartkSequenceAnnotator;
+import org.cleartk.ml.jar.GenericJarClassifierFactory;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import de.tudarmstadt.ukp.dkpro.core.snowball.SnowballStemmer;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.annotator.NERAnnotator;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.classifier.ViterbiCrfClassifierFactory;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.type.NEIOBAnnotation;
+
+/**
+ * Resident NER tagger: the stemmer and the NERAnnotator with its feature extractors, gazetteers and CRF model are
+ * created once, the CASes of the requests are taken from a pool and reset after every request. Thread safe, the
+ * requests prepare their CAS concurrently and take turns on the annotator.
+ * <p>
+ * Raw text is split into sentences and tokens by the {@link BreakIterator}s of the language, token lists are joined
+ * by spaces like the NERReader joins the tokens of a CoNLL file.
+ */
+public class NERTagger implements Closeable {
+
+    private static final String OUTSIDE = "O";
+
+    private final String language;
+    private final Locale locale;
+    private final AnalysisEngine engine;
+    private final CasPool casPool;
+
+    /**
+     * @param modelJar              the model.jar of the CRF (see ExecuteNER)
+     * @param featureExtractionFile the XStream file of the feature extractors the model was trained with, null for
+     *                              all feature extractors
+     * @param featureHashBits       the number of bits of the hashed features of the model, 0 if not hashed
+     * @param language              the language of the stemmer and of the sentence and word boundaries
+     * @param poolSize              the number of CASes, i.e. of requests in progress at the same time
+     */
+    public NERTagger(String modelJar, String featureExtractionFile, int featureHashBits, String language, int poolSize)
+            throws UIMAException {
+        this.language = language;
+        this.locale = new Locale(language);
+        this.engine = createEngine(createEngineDescription(
+                createEngineDescription(SnowballStemmer.class, SnowballStemmer.PARAM_LANGUAGE, language),
+                createEngineDescription(NERAnnotator.class,
+                        NERAnnotator.PARAM_FEATURE_EXTRACTION_FILE, featureExtractionFile,
+                        GenericJarClassifierFactory.PARAM_CLASSIFIER_JAR_PATH, modelJar,
+                        CleartkSequenceAnnotator.PARAM_CLASSIFIER_FACTORY_CLASS_NAME,
+                        ViterbiCrfClassifierFactory.class.getName(),
+                        NERAnnotator.PARAM_CLASSIFICATION_BATCH_SIZE, 0,
+                        NERAnnotator.PARAM_FEATURE_HASH_BITS, featureHashBits)));
+        this.casPool = new CasPool(poolSize, engine);
+    }
+
+    /**
+     * Tags raw text
+     */
+    public Result tag(String text) throws AnalysisEngineProcessException {
+        List<int[]> sentences = new ArrayList<>();
+        List<List<int[]>> tokens = new ArrayList<>();
+        BreakIterator sentenceBoundaries = BreakIterator.getSentenceInstance(locale);
+        BreakIterator wordBoundaries = BreakIterator.getWordInstance(locale);
+        sentenceBoundaries.setText(text);
+        wordBoundaries.setText(text);
+        for (int begin = sentenceBoundaries.first(), end = sentenceBoundaries.next(); end != BreakIterator.DONE;
+             begin = end, end = sentenceBoundaries.next()) {
+            List<int[]> sentenceTokens = new ArrayList<>();
+            for (int tokenBegin = begin, tokenEnd = wordBoundaries.following(begin); tokenEnd != BreakIterator.DONE
+                    && tokenEnd <= end; tokenBegin = tokenEnd, tokenEnd = wordBoundaries.next()) {
+                if (!isWhitespace(text, tokenBegin, tokenEnd))
+                    sentenceTokens.add(new int[]{tokenBegin, tokenEnd});
+            }
+            if (!sentenceTokens.isEmpty()) {
+                sentences.add(new int[]{sentenceTokens.get(0)[0], sentenceTokens.get(sentenceTokens.size() - 1)[1]});
+                tokens.add(sentenceTokens);
+            }
+        }
+        return tag(text, sentences, tokens);
+    }
+
+    /**
+     * Tags tokenized text
+     *
+     * @param sentences the tokens of every sentence
+     */
+    public Result tag(List<List<String>> sentences) throws AnalysisEngineProcessException {
+        StringBuilder text = new StringBuilder();
+        List<int[]> sentenceSpans = new ArrayList<>(sentences.size());
+        List<List<int[]>> tokens = new ArrayList<>(sentences.size());
+        for (List<String> sentence : sentences) {
+            if (sentence.isEmpty())
+                continue;
+            if (text.length() > 0)
+                text.append('\n');
+            List<int[]> sentenceTokens = new ArrayList<>(sentence.size());
+            for (String token : sentence) {
+                if (!sentenceTokens.isEmpty())
+                    text.append(' ');
+                sentenceTokens.add(new int[]{text.length(), text.append(token).length()});
+            }
+            sentenceSpans.add(new int[]{sentenceTokens.get(0)[0], text.length()});
+            tokens.add(sentenceTokens);
+        }
+        return tag(text.toString(), sentenceSpans, tokens);
+    }
+
+    private Result tag(String text, List<int[]> sentences, List<List<int[]>> tokens)
+            throws AnalysisEngineProcessException {
+        CAS cas = casPool.getCas(0);
+        try {
+            JCas jCas = cas.getJCas();
+            jCas.setDocumentText(text);
+            jCas.setDocumentLanguage(language);
+            for (int s = 0; s < sentences.size(); ++s) {
+                new Sentence(jCas, sentences.get(s)[0], sentences.get(s)[1]).addToIndexes();
+                for (int[] token : tokens.get(s))
+                    new Token(jCas, token[0], token[1]).addToIndexes();
+            }
+            // the annotators are not thread safe
+            synchronized (engine) {
+                engine.process(jCas);
+            }
+            // one prediction per token, in the order of the tokens
+            Iterator<NEIOBAnnotation> predictions = select(jCas, NEIOBAnnotation.class).iterator();
+            List<List<String>> tags = new ArrayList<>(sentences.size());
+            for (List<int[]> sentenceTokens : tokens) {
+                List<String> sentenceTags = new ArrayList<>(sentenceTokens.size());
+                for (int t = 0; t < sentenceTokens.size(); ++t)
+                    sentenceTags.add(predictions.next().getPredictValue());
+                tags.add(sentenceTags);
+            }
+            return new Result(text, tokens, tags);
+        } catch (CASException e) {
+            throw new AnalysisEngineProcessException(e);
+        } finally {
+            cas.reset();
+            casPool.releaseCas(cas);
+        }
+    }
+
+    private static boolean isWhitespace(String text, int begin, int end) {
+        for (int i = begin; i < end; ++i)
+            if (!Character.isWhitespace(text.charAt(i)))
+                return false;
+        return true;
+    }
+
+    @Override
+    public void close() {
+        synchronized (engine) {
+            engine.destroy();
+        }
+    }
+
+    /**
+     * A named entity: the type and the character offsets of its tokens
+     */
+    public static class Entity {
+        private final String type;
+        private final int begin;
+        private final int end;
+        private final String text;
+
+        Entity(String type, int begin, int end, String text) {
+            this.type = type;
+            this.begin = begin;
+            this.end = end;
+            this.text = text;
+        }
+
+        /**
+         * @return the type of the entity, e.g. PER
+         */
+        public String getType() {
+            return type;
+        }
+
+        public int getBegin() {
+            return begin;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        @Override
+        public String toString() {
+            return type + "[" + begin + "," + end + "]" + text;
+        }
+    }
+
+    /**
+     * The tags of the tokens of a request
+     */
+    public static class Result {
+        private final String text;
+        private final List<List<int[]>> tokens;
+        private final List<List<String>> tags;
+
+        Result(String text, List<List<int[]>> tokens, List<List<String>> tags) {
+            this.text = text;
+            this.tokens = tokens;
+            this.tags = tags;
+        }
+
+        /**
+         * @return the tagged text, for token lists the tokens joined by spaces and the sentences by new lines
+         */
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * @return the tokens of every sentence
+         */
+        public List<List<String>> getTokens() {
+            List<List<String>> tokenTexts = new ArrayList<>(tokens.size());
+            for (List<int[]> sentenceTokens : tokens) {
+                List<String> sentenceTexts = new ArrayList<>(sentenceTokens.size());
+                for (int[] token : sentenceTokens)
+                    sentenceTexts.add(text.substring(token[0], token[1]));
+                tokenTexts.add(sentenceTexts);
+            }
+            return tokenTexts;
+        }
+
+        /**
+         * @return the tags of the model for the tokens of every sentence (IOB like the training data)
+         */
+        public List<List<String>> getTags() {
+            return Collections.unmodifiableList(tags);
+        }
+
+        /**
+         * @return the tags in the BIO scheme: every entity starts with B-, continues with I-
+         */
+        public List<List<String>> getBioTags() {
+            List<List<String>> bioTags = new ArrayList<>(tags.size());
+            for (List<String> sentenceTags : tags) {
+                List<String> sentenceBioTags = new ArrayList<>(sentenceTags.size());
+                String previous = OUTSIDE;
+                for (String tag : sentenceTags) {
+                    sentenceBioTags.add(tag.equals(OUTSIDE) ? tag
+                            : (isChunkStart(previous, tag) ? "B-" : "I-") + getType(tag));
+                    previous = tag;
+                }
+                bioTags.add(sentenceBioTags);
+            }
+            return bioTags;
+        }
+
+        /**
+         * @return the named entities, in the order of the text
+         */
+        public List<Entity> getEntities() {
+            List<Entity> entities = new ArrayList<>();
+            for (int s = 0; s < tags.size(); ++s) {
+                List<String> sentenceTags = tags.get(s);
+                List<int[]> sentenceTokens = tokens.get(s);
+                int begin = -1;
+                for (int t = 0; t <= sentenceTags.size(); ++t) {
+                    String tag = t < sentenceTags.size() ? sentenceTags.get(t) : OUTSIDE;
+                    String previous = t > 0 ? sentenceTags.get(t - 1) : OUTSIDE;
+                    boolean start = isChunkStart(previous, tag);
+                    if (begin >= 0 && (start || tag.equals(OUTSIDE))) {
+                        int beginOffset = sentenceTokens.get(begin)[0];
+                        int endOffset = sentenceTokens.get(t - 1)[1];
+                        entities.add(new Entity(getType(previous), beginOffset, endOffset,
+                                text.substring(beginOffset, endOffset)));
+                        begin = -1;
+                    }
+                    if (start)
+                        begin = t;
+                }
+            }
+            return entities;
+        }
+
+        private static boolean isChunkStart(String previous, String tag) {
+            return !tag.equals(OUTSIDE)
+                    && (tag.startsWith("B-") || previous.equals(OUTSIDE) || !getType(previous).equals(getType(tag)));
+        }
+
+        private static String getType(String tag) {
+            int separator = tag.indexOf('-');
+            return separator < 0 ? tag : tag.substring(separator + 1);
+        }
+
+        /**
+         * @return the tokens, BIO tags and entities as JSON object
+         */
+        public String toJson() {
+            StringBuilder json = new StringBuilder("{\"sentences\":[");
+            List<List<String>> tokenTexts = getTokens();
+            List<List<String>> bioTags = getBioTags();
+            for (int s = 0; s < tokenTexts.size(); ++s) {
+                json.append(s == 0 ? "" : ",").append("{\"tokens\":");
+                appendArray(json, tokenTexts.get(s));
+                json.append(",\"tags\":");
+                appendArray(json, bioTags.get(s));
+                json.append('}');
+            }
+            json.append("],\"entities\":[");
+            List<Entity> entities = getEntities();
+            for (int e = 0; e < entities.size(); ++e) {
+                Entity entity = entities.get(e);
+                json.append(e == 0 ? "" : ",").append("{\"type\":");
+                appendString(json, entity.getType());
+                json.append(",\"begin\":").append(entity.getBegin()).append(",\"end\":").append(entity.getEnd())
+                        .append(",\"text\":");
+                appendString(json, entity.getText());
+                json.append('}');
+            }
+            return json.append("]}").toString();
+        }
+
+        private static void appendArray(StringBuilder json, List<String> values) {
+            json.append('[');
+            for (int i = 0; i < values.size(); ++i) {
+                if (i > 0)
+                    json.append(',');
+                appendString(json, values.get(i));
+            }
+            json.append(']');
+        }
+
+        private static void appendString(StringBuilder json, String value) {
+            json.append('"');
+            for (int i = 0; i < value.length(); ++i) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\')
+                    json.append('\\').append(c);
+                else if (c < 0x20)
+                    json.append(String.format("\\u%04x", (int) c));
+                else
+                    json.append(c);
+            }
+            json.append('"');
+        }
+    }
+}
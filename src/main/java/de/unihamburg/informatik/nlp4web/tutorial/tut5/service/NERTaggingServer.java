@@ -0,0 +1,146 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.util.Level;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.gazetteer.GazetteerWatcher;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.ner.ExecuteNER;
+
+/**
+ * Local HTTP endpoint of a {@link NERTagger}, bound to the loopback address.
+ * <p>
+ * POST /tag with the UTF-8 text as body returns the tokens, the BIO tags and the entities as JSON (see
+ * {@link NERTagger.Result#toJson()}). With the query "tokenized" the body holds one sentence per line and the tokens
+ * separated by spaces.
+ * <p>
+ * The gazetteer lists are watched while the server runs, edited lists are used without a restart.
+ * <p>
+ * Usage: NERTaggingServer modelDirectory language [port] [featureExtractionFile]
+ */
+public class NERTaggingServer {
+
+    public static final int DEFAULT_PORT = 8080;
+
+    private final NERTagger tagger;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * @param threads the number of requests handled at the same time, at most the pool size of the tagger
+     */
+    public NERTaggingServer(NERTagger tagger, int port, int threads) throws IOException {
+        this.tagger = tagger;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext("/tag", this::handleTag);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops the server, the tagger stays open
+     */
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handleTag(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "{\"error\":\"POST the text to tag\"}");
+                return;
+            }
+            String body = new String(readAll(exchange.getRequestBody()), StandardCharsets.UTF_8);
+            String query = exchange.getRequestURI().getQuery();
+            NERTagger.Result result;
+            if (query != null && Arrays.asList(query.split("&")).contains("tokenized")) {
+                List<List<String>> sentences = new ArrayList<>();
+                for (String line : body.split("\r?\n")) {
+                    String trimmed = line.trim();
+                    if (!trimmed.isEmpty())
+                        sentences.add(Arrays.asList(trimmed.split("\\s+")));
+                }
+                result = tagger.tag(sentences);
+            } else {
+                result = tagger.tag(body);
+            }
+            respond(exchange, 200, result.toJson());
+        } catch (Exception e) {
+            UIMAFramework.getLogger().log(Level.WARNING, "Tagging request failed", e);
+            respond(exchange, 500, "{\"error\":\"tagging failed\"}");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int read; (read = in.read(buffer)) > 0; )
+            bytes.write(buffer, 0, read);
+        return bytes.toByteArray();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: NERTaggingServer modelDirectory language [port] [featureExtractionFile]");
+            System.exit(1);
+        }
+        String modelJar = args[0] + (args[0].endsWith("/") ? "" : "/") + "model.jar";
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_PORT;
+        String featureExtractionFile = args.length > 3 ? args[3] : null;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        long start = System.currentTimeMillis();
+        NERTagger tagger = new NERTagger(modelJar, featureExtractionFile, ExecuteNER.FEATURE_HASH_BITS, args[1],
+                threads);
+        // the tagger has loaded the gazetteers, so their directories are watched from the start
+        GazetteerWatcher watcher = new GazetteerWatcher().start();
+        NERTaggingServer server = new NERTaggingServer(tagger, port, threads);
+        server.start();
+        UIMAFramework.getLogger().log(Level.INFO, "Tagging on http://localhost:" + server.getPort() + "/tag, started in "
+                + (System.currentTimeMillis() - start) + "ms");
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            tagger.close();
+            try {
+                watcher.close();
+            } catch (IOException e) {
+                UIMAFramework.getLogger().log(Level.WARNING, "Closing the gazetteer watcher failed", e);
+            }
+        }));
+    }
+}
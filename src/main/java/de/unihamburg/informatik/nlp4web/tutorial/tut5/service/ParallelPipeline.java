@@ -0,0 +1,152 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.service;
+
+import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngine;
+import static org.apache.uima.fit.util.LifeCycleUtil.close;
+import static org.apache.uima.fit.util.LifeCycleUtil.collectionProcessComplete;
+import static org.apache.uima.fit.util.LifeCycleUtil.destroy;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.resource.metadata.ProcessingResourceMetaData;
+import org.apache.uima.util.CasPool;
+
+/**
+ * Runs a pipeline on several threads. The analysis engines of the description are replicated once per thread (the
+ * NERAnnotators share the model, see the ViterbiCrfClassifierFactory, and the gazetteers, see the
+ * GazetteerRegistry), the consumers (e.g. the NERWriter) run once on the calling thread and see the CASes in the order
+ * of the reader.
+ * <p>
+ * The CASes are pre-allocated in a pool of {@value #CASES_PER_THREAD} per thread. The reader only fills a CAS when
+ * one is free, so a fast reader waits for the engines and consumers instead of filling the memory.
+ */
+public final class ParallelPipeline {
+
+    /**
+     * number of CASes per thread: one being processed and one read ahead
+     */
+    public static final int CASES_PER_THREAD = 2;
+
+    private ParallelPipeline() {
+    }
+
+    /**
+     * @param reader    the reader, best with small CASes (e.g. the ConllCollectionReader with a number of sentences
+     *                  per CAS) so the threads are evenly loaded
+     * @param threads   the number of threads and replicated engines
+     * @param engines   the description of the replicated engines, e.g. an aggregate of the stemmer and NERAnnotator
+     * @param consumers the engines run in order on the calling thread
+     */
+    public static void runPipeline(CollectionReader reader, int threads, AnalysisEngineDescription engines,
+                                   AnalysisEngine... consumers) throws UIMAException, IOException {
+        threads = Math.max(1, threads);
+        List<AnalysisEngine> replicas = new ArrayList<>(threads);
+        BlockingQueue<AnalysisEngine> idleReplicas = new ArrayBlockingQueue<>(threads);
+        ExecutorService executor = null;
+        Deque<Future<CAS>> inFlight = new ArrayDeque<>();
+        try {
+            for (int i = 0; i < threads; ++i)
+                replicas.add(createEngine(engines));
+            idleReplicas.addAll(replicas);
+
+            List<ProcessingResourceMetaData> metaData = new ArrayList<>();
+            metaData.add(reader.getProcessingResourceMetaData());
+            metaData.add(replicas.get(0).getProcessingResourceMetaData());
+            for (AnalysisEngine consumer : consumers)
+                metaData.add(consumer.getProcessingResourceMetaData());
+            int casCount = threads * CASES_PER_THREAD;
+            CasPool casPool = new CasPool(casCount, metaData, null, null);
+
+            executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "ParallelPipeline-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+            boolean typeSystemInitialized = false;
+            while (reader.hasNext()) {
+                // all CASes in flight: wait for the oldest one and consume it, the reader has to wait
+                if (inFlight.size() >= casCount)
+                    consume(inFlight.poll(), casPool, consumers);
+                CAS cas = casPool.getCas(0);
+                if (!typeSystemInitialized) {
+                    reader.typeSystemInit(cas.getTypeSystem());
+                    typeSystemInitialized = true;
+                }
+                try {
+                    reader.getNext(cas);
+                } catch (IOException | UIMAException | RuntimeException e) {
+                    casPool.releaseCas(cas);
+                    throw e;
+                }
+                inFlight.add(executor.submit(() -> process(cas, idleReplicas)));
+            }
+            while (!inFlight.isEmpty())
+                consume(inFlight.poll(), casPool, consumers);
+
+            collectionProcessComplete(replicas.toArray(new AnalysisEngine[0]));
+            collectionProcessComplete(consumers);
+        } finally {
+            for (Future<CAS> future : inFlight)
+                future.cancel(true);
+            if (executor != null)
+                executor.shutdownNow();
+            close(reader);
+            destroy(reader);
+            destroy(replicas.toArray(new AnalysisEngine[0]));
+            destroy(consumers);
+        }
+    }
+
+    /**
+     * Processes the CAS with an idle replica, on a worker thread
+     */
+    private static CAS process(CAS cas, BlockingQueue<AnalysisEngine> idleReplicas)
+            throws AnalysisEngineProcessException, InterruptedException {
+        AnalysisEngine replica = idleReplicas.take();
+        try {
+            replica.process(cas);
+        } finally {
+            idleReplicas.add(replica);
+        }
+        return cas;
+    }
+
+    /**
+     * Waits for the processing of the CAS, runs the consumers on it and returns it to the pool
+     */
+    private static void consume(Future<CAS> future, CasPool casPool, AnalysisEngine... consumers)
+            throws AnalysisEngineProcessException {
+        CAS cas;
+        try {
+            cas = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AnalysisEngineProcessException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof AnalysisEngineProcessException)
+                throw (AnalysisEngineProcessException) e.getCause();
+            throw new AnalysisEngineProcessException(e.getCause());
+        }
+        try {
+            for (AnalysisEngine consumer : consumers)
+                consumer.process(cas);
+        } finally {
+            casPool.releaseCas(cas);
+        }
+    }
+}
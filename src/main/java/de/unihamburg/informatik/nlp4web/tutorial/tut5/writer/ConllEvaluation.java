@@ -0,0 +1,279 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.writer;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Chunk level evaluation of IOB tags like the CoNLL evaluation script (conlleval), computed incrementally from the
+ * gold and predicted tags of the tokens. A chunk is counted as correct if it has the same boundaries and the same
+ * type in the gold tags and in the predictions.
+ * <p>
+ * Usage: ConllEvaluation [file...] evaluates files in the format of conlleval (tokens in lines, the gold and the
+ * predicted tag in the last two columns, empty lines between the sentences) and prints the report of conlleval.
+ */
+public class ConllEvaluation {
+
+	private static final String OUTSIDE = "O";
+	private static final int[] NO_COUNTS = new int[3];
+
+	private int tokenCount = 0;
+	private int correctTags = 0;
+	private int correctChunks = 0;
+	private int goldChunks = 0;
+	private int predictedChunks = 0;
+	// per chunk type: correct, gold and predicted chunks
+	private final Map<String, int[]> typeCounts = new HashMap<>();
+	// prefix and chunk type of the tags
+	private final Map<String, String[]> splitTags = new HashMap<>();
+
+	// state of the previous token
+	private String lastGold = OUTSIDE;
+	private String lastGoldType = "";
+	private String lastPredicted = OUTSIDE;
+	private String lastPredictedType = "";
+	// the current chunk is correct until now
+	private boolean inCorrect = false;
+
+	/**
+	 * Adds the next token.
+	 *
+	 * @param gold      the gold tag, e.g. I-PER
+	 * @param predicted the predicted tag
+	 */
+	public void add(String gold, String predicted) {
+		add(gold, predicted, false);
+	}
+
+	/**
+	 * Ends the current sentence, no chunk continues into the next sentence.
+	 */
+	public void endSentence() {
+		add(OUTSIDE, OUTSIDE, true);
+	}
+
+	private void add(String goldTag, String predictedTag, boolean boundary) {
+		String[] goldSplit = split(goldTag);
+		String gold = goldSplit[0];
+		String goldType = goldSplit[1];
+		String[] predictedSplit = split(predictedTag);
+		String predicted = predictedSplit[0];
+		String predictedType = predictedSplit[1];
+
+		if (inCorrect) {
+			boolean goldEnd = endOfChunk(lastGold, gold, lastGoldType, goldType);
+			boolean predictedEnd = endOfChunk(lastPredicted, predicted, lastPredictedType, predictedType);
+			if (goldEnd && predictedEnd && lastPredictedType.equals(lastGoldType)) {
+				inCorrect = false;
+				++correctChunks;
+				++getTypeCounts(lastGoldType)[0];
+			} else if (goldEnd != predictedEnd || !predictedType.equals(goldType)) {
+				inCorrect = false;
+			}
+		}
+
+		boolean goldStart = startOfChunk(lastGold, gold, lastGoldType, goldType);
+		boolean predictedStart = startOfChunk(lastPredicted, predicted, lastPredictedType, predictedType);
+		if (goldStart && predictedStart && predictedType.equals(goldType))
+			inCorrect = true;
+		if (goldStart) {
+			++goldChunks;
+			++getTypeCounts(goldType)[1];
+		}
+		if (predictedStart) {
+			++predictedChunks;
+			++getTypeCounts(predictedType)[2];
+		}
+		if (!boundary) {
+			if (gold.equals(predicted) && predictedType.equals(goldType))
+				++correctTags;
+			++tokenCount;
+		}
+
+		lastGold = gold;
+		lastGoldType = goldType;
+		lastPredicted = predicted;
+		lastPredictedType = predictedType;
+	}
+
+	/**
+	 * Splits a tag into its prefix and its chunk type, e.g. I-PER into I and PER, once per distinct tag
+	 */
+	private String[] split(String tag) {
+		String[] split = splitTags.get(tag);
+		if (split == null) {
+			int separator = tag.indexOf('-');
+			split = new String[] { separator < 0 ? tag : tag.substring(0, separator),
+					separator < 0 ? "" : tag.substring(separator + 1) };
+			splitTags.put(tag, split);
+		}
+		return split;
+	}
+
+	private int[] getTypeCounts(String type) {
+		int[] counts = typeCounts.get(type);
+		if (counts == null) {
+			counts = new int[3];
+			typeCounts.put(type, counts);
+		}
+		return counts;
+	}
+
+	private static boolean endOfChunk(String prevTag, String tag, String prevType, String type) {
+		return prevTag.equals("B") && tag.equals("B")
+				|| prevTag.equals("B") && tag.equals("O")
+				|| prevTag.equals("I") && tag.equals("B")
+				|| prevTag.equals("I") && tag.equals("O")
+				|| prevTag.equals("E") && (tag.equals("E") || tag.equals("I") || tag.equals("O"))
+				|| !prevTag.equals("O") && !prevTag.equals(".") && !prevType.equals(type)
+				|| prevTag.equals("]") || prevTag.equals("[");
+	}
+
+	private static boolean startOfChunk(String prevTag, String tag, String prevType, String type) {
+		return prevTag.equals("B") && tag.equals("B")
+				|| prevTag.equals("I") && tag.equals("B")
+				|| prevTag.equals("O") && (tag.equals("B") || tag.equals("I") || tag.equals("E"))
+				|| prevTag.equals("E") && (tag.equals("E") || tag.equals("I"))
+				|| !tag.equals("O") && !tag.equals(".") && !prevType.equals(type)
+				|| tag.equals("[") || tag.equals("]");
+	}
+
+	/**
+	 * @return the number of tokens
+	 */
+	public int getTokenCount() {
+		return tokenCount;
+	}
+
+	/**
+	 * @return the number of correctly identified chunks (including a chunk at the end of the tokens)
+	 */
+	public int getCorrectChunks() {
+		return correctChunks + (inCorrect ? 1 : 0);
+	}
+
+	/**
+	 * @return the number of chunks in the gold tags
+	 */
+	public int getGoldChunks() {
+		return goldChunks;
+	}
+
+	/**
+	 * @return the number of chunks in the predicted tags
+	 */
+	public int getPredictedChunks() {
+		return predictedChunks;
+	}
+
+	/**
+	 * @return the fraction of tokens with correct tags
+	 */
+	public double getAccuracy() {
+		return tokenCount == 0 ? 0 : (double) correctTags / tokenCount;
+	}
+
+	/**
+	 * @return the fraction of predicted chunks which are correct
+	 */
+	public double getPrecision() {
+		return predictedChunks == 0 ? 0 : (double) getCorrectChunks() / predictedChunks;
+	}
+
+	/**
+	 * @return the fraction of gold chunks which are predicted correctly
+	 */
+	public double getRecall() {
+		return goldChunks == 0 ? 0 : (double) getCorrectChunks() / goldChunks;
+	}
+
+	/**
+	 * @return the harmonic mean of precision and recall
+	 */
+	public double getF1() {
+		return f1(getPrecision(), getRecall());
+	}
+
+	/**
+	 * @return the chunk types of the gold and the predicted tags
+	 */
+	public TreeSet<String> getTypes() {
+		return new TreeSet<>(typeCounts.keySet());
+	}
+
+	/**
+	 * @param type the chunk type
+	 * @return the precision of the chunks of the type
+	 */
+	public double getPrecision(String type) {
+		int[] counts = typeCounts.getOrDefault(type, NO_COUNTS);
+		return counts[2] == 0 ? 0 : (double) getCorrectChunks(type) / counts[2];
+	}
+
+	/**
+	 * @param type the chunk type
+	 * @return the recall of the chunks of the type
+	 */
+	public double getRecall(String type) {
+		int[] counts = typeCounts.getOrDefault(type, NO_COUNTS);
+		return counts[1] == 0 ? 0 : (double) getCorrectChunks(type) / counts[1];
+	}
+
+	/**
+	 * @param type the chunk type
+	 * @return the F1 score of the chunks of the type
+	 */
+	public double getF1(String type) {
+		return f1(getPrecision(type), getRecall(type));
+	}
+
+	private int getCorrectChunks(String type) {
+		return typeCounts.getOrDefault(type, NO_COUNTS)[0] + (inCorrect && lastGoldType.equals(type) ? 1 : 0);
+	}
+
+	private static double f1(double precision, double recall) {
+		return precision + recall == 0 ? 0 : 2 * precision * recall / (precision + recall);
+	}
+
+	/**
+	 * @return the report of conlleval
+	 */
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+		s.append(String.format(Locale.ROOT, "processed %d tokens with %d phrases; found: %d phrases; correct: %d.%n",
+				tokenCount, goldChunks, predictedChunks, getCorrectChunks()));
+		if (tokenCount > 0)
+			s.append(String.format(Locale.ROOT, "accuracy: %6.2f%%; precision: %6.2f%%; recall: %6.2f%%; FB1: %6.2f%n",
+					100 * getAccuracy(), 100 * getPrecision(), 100 * getRecall(), 100 * getF1()));
+		for (String type : getTypes())
+			s.append(String.format(Locale.ROOT, "%17s: precision: %6.2f%%; recall: %6.2f%%; FB1: %6.2f  %d%n",
+					type, 100 * getPrecision(type), 100 * getRecall(type), 100 * getF1(type), typeCounts.get(type)[2]));
+		return s.toString();
+	}
+
+	public static void main(String[] args) throws IOException {
+		for (String file : args) {
+			ConllEvaluation evaluation = new ConllEvaluation();
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+					Charset.defaultCharset()))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					String[] columns = line.split(" ");
+					if (line.isEmpty() || columns[0].equals("-X-"))
+						evaluation.endSentence();
+					else
+						evaluation.add(columns[columns.length - 2], columns[columns.length - 1]);
+				}
+			}
+			System.out.println(file);
+			System.out.print(evaluation);
+		}
+	}
+}
@@ -1,215 +1,369 @@
-package de.unihamburg.informatik.nlp4web.tutorial.tut5.writer;
-
-import java.io.BufferedWriter;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.File;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
-
-import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
-import org.apache.uima.fit.component.JCasConsumer_ImplBase;
-import org.apache.uima.fit.descriptor.ConfigurationParameter;
-import org.apache.uima.jcas.JCas;
-import org.apache.uima.util.Level;
-import org.uimafit.util.JCasUtil;
-
-import de.unihamburg.informatik.nlp4web.tutorial.tut5.type.NEIOBAnnotation;
-
-/**
- * Consumer to output gold/prediction pairs and to calculate statistics as performance measurements.
- */
-public class NERWriter extends JCasConsumer_ImplBase {
-	private static final String LS = System.lineSeparator();
-	
-	/**
-	 * String used to identify a non-named entity
-	 */
-	public static final String PARAM_NULL_TYPE = "Null type";
-	
-	/**
-	 * Expected number of entity types
-	 */
-	public static final String PARAM_EXPECTED_ENTITY_TYPE_NUM = "Expected entity type num";
-	
-	/**
-	 * File to write the output for evaluation to
-	 */
-	public static final String PARAM_FILENAME = "Filename";
-	
-	/**
-	 * Set for verbose output.
-	 * When true is set for this parameter, all incorrect classifications are shown.
-	 */
-	public static final String PARAM_VERBOSE = "Verbose";
-	
-	@ConfigurationParameter(name = PARAM_NULL_TYPE, mandatory = true)
-	private String nullType = null;
-	@ConfigurationParameter(name = PARAM_EXPECTED_ENTITY_TYPE_NUM, mandatory = false)
-	private int expectedEntityTypeNum = 9;
-	@ConfigurationParameter(name = PARAM_FILENAME, mandatory = true)
-	private String filename = null;
-	@ConfigurationParameter(name = PARAM_VERBOSE, mandatory = false)
-	private boolean verbose = false;
-	private final String FS = " ";
-	
-	/**
-	 * Helper class to be used in a HashMap.
-	 * @param <A> the first element of the pair
-	 * @param <B> the second element of the pair
-	 */
-	private class Pair<A, B> {
-		private A a;
-		private B b;
-		
-		private Pair(A a, B b) {
-			this.a = a;
-			this.b = b;
-		}
-		
-		@Override
-		public boolean equals(Object o) {
-			if (o instanceof Pair) {
-				Pair<?, ?> p = (Pair<?, ?>) o;
-				return this.a.equals(p.a) && this.b.equals(p.b);
-			}
-			return false;
-		}
-		
-		@Override
-		public int hashCode() {
-			return a.hashCode() + b.hashCode();
-		}
-	}
-	
-	/**
-	 * Processes the JCas to write gold/prediction pairs to the log and to calculate statistics.
-	 * @param aJCas a JCas
-	 */
-	@Override
-	public void process(JCas aJCas) throws AnalysisEngineProcessException {
-		// Lists all seen entity types
-		List<String> entityTypes = new ArrayList<>(expectedEntityTypeNum);
-		// Maps pairs of gold/prediction entity types to the number of their joint appearance 
-		Map<Pair<String, String>, Integer> classifications = new HashMap<>();
-		// Stores the log
-		StringBuilder s = new StringBuilder();
-		s.append("-- Wrong NER Annotations --" + LS);
-		s.append(LS);
-		try (BufferedWriter w = new BufferedWriter(new FileWriter(new File(filename)))) {
-			Iterator<NEIOBAnnotation> it = JCasUtil.select(aJCas, NEIOBAnnotation.class).iterator();
-			while (it.hasNext()) {
-				/* When classifying, NERReader and NERAnnotator create NEIOBAnnotations independently.
-				 * One is used to store the gold value, the other one to store the predicted value.
-				 * This setup assures that classification can also be done when not in a test situation.
-				 * Here, both pieces of information are combined. */
-				NEIOBAnnotation pred = it.next();
-				if (pred.getPredictValue() == null)
-					continue; // Only consider predicted values
-				NEIOBAnnotation gold = null;
-				for (NEIOBAnnotation annotation : JCasUtil.selectCovered(aJCas, NEIOBAnnotation.class, pred)) {
-					if (annotation.getGoldValue() != null) {
-						gold = annotation;
-						break;
-					}
-				}
-				if (gold == null) {
-					System.err.println("No gold annotation found for "
-							+ "[" + pred.getType().getShortName() + "] " + pred.getCoveredText() + " "
-							+ "(" + pred.getBegin() + ", " + pred.getEnd() + ")");
-					continue; // Only consider predictions for which there are gold values
-				}
-				String goldType = gold.getGoldValue();
-				String predType = pred.getPredictValue();
-				// Append information to evaluation file
-				w.write(pred.getCoveredText());
-				w.write(FS + goldType);
-				w.write(FS + predType);
-				w.write(LS);
-				// Collect statistics
-				if (!entityTypes.contains(goldType))
-					entityTypes.add(goldType);
-				if (!entityTypes.contains(predType))
-					entityTypes.add(predType);
-				Pair<String, String> key = new Pair<>(goldType, predType);
-				if (classifications.containsKey(key))
-					classifications.put(key, classifications.get(key) + 1);
-				else
-					classifications.put(key, 1);
-				// Append information onto log
-				if (!goldType.equals(predType)) {
-					s.append("Gold:\t" + goldType + "\t");
-					s.append("Pred.:\t" + predType + "\t");
-					s.append("(" + pred.getBegin() + ", " + pred.getEnd() + ") ");
-					s.append(pred.getCoveredText() + " ");
-					s.append(LS);
-				}
-			}
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		s.append(LS);
-		if (verbose)
-			getContext().getLogger().log(Level.INFO, s.toString());
-		// Compute statistics
-		int truePositives = 0;
-		int falsePositives = 0;
-		int trueNegatives = 0;
-		int falseNegatives = 0;
-		int correct = 0;
-		int all = 0;
-		// Append statistics onto log
-		s = new StringBuilder();
-		s.append("-- Statistics --" + LS);
-		s.append(LS);
-		s.append("Classifications (correct classes on the left, predictions on top):" + LS);
-		s.append("\t");
-		for (String predType : entityTypes)
-			s.append(predType + "\t");
-		s.append(LS);
-		for (String goldType : entityTypes) {
-			s.append(goldType + "\t");
-			for (String predType : entityTypes) {
-				Pair<String, String> key = new Pair<>(goldType, predType);
-				int num = classifications.containsKey(key) ? classifications.get(key) : 0;
-				s.append(num + "\t");
-				if (goldType.equals(nullType))
-					if (predType.equals(nullType)) {
-						trueNegatives += num;
-						correct += num;
-					}
-					else
-						falsePositives += num;
-				else
-					if (predType.equals(nullType))
-						falseNegatives += num;
-					else {
-						truePositives += num;
-						if (goldType.equals(predType))
-							correct += num;
-					}
-				all += num;
-			}
-			s.append(LS);
-		}
-		s.append(LS);
-		// Append aggregate statistics onto log
-		s.append("Correct classifications:" + LS);
-		s.append("  " + correct + "/" + all + " (" + (((double) correct * 100) / all) + "%)" + LS);
-		s.append(LS);
-		s.append("Aggregate classification results (correct on the left, predictions on top):" + LS);
-		s.append("\tNE\tO" + LS);
-		s.append("NE\t" + truePositives + "\t" + falseNegatives + LS);
-		s.append("O\t" + falsePositives + "\t" + trueNegatives + LS);
-		s.append(LS);
-		int correctNEs = correct - trueNegatives;
-		int NEs = all - trueNegatives - falsePositives;
-		s.append("Correct classifications for tokens that are named entities:" + LS);
-		s.append("  " + correctNEs + "/" + NEs + " (" + (((double) correctNEs * 100) / NEs) + "%)" + LS);
-		s.append(LS);
-		getContext().getLogger().log(Level.INFO, s.toString());
-	}
-}
\ No newline at end of file
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.writer;
+
+import java.io.IOException;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.fit.component.JCasConsumer_ImplBase;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.Level;
+import org.uimafit.util.JCasUtil;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.unihamburg.informatik.nlp4web.tutorial.tut5.type.NEIOBAnnotation;
+
+/**
+ * Consumer to output gold/prediction pairs and to calculate statistics as performance measurements.
+ */
+public class NERWriter extends JCasConsumer_ImplBase {
+	private static final String LS = System.lineSeparator();
+	
+	/**
+	 * String used to identify a non-named entity
+	 */
+	public static final String PARAM_NULL_TYPE = "Null type";
+	
+	/**
+	 * Expected number of entity types
+	 */
+	public static final String PARAM_EXPECTED_ENTITY_TYPE_NUM = "Expected entity type num";
+	
+	/**
+	 * File to write the output for evaluation to, no file is written if not set.
+	 * The output of all CASes of the collection is appended to the file.
+	 */
+	public static final String PARAM_FILENAME = "Filename";
+	
+	/**
+	 * Format of the output file: CONLL (default), JSONL or BINARY, see {@link PredictionSink.Format}
+	 */
+	public static final String PARAM_FORMAT = "Format";
+	
+	/**
+	 * Name under which the chunk evaluation of the collection is published when the collection is complete,
+	 * see {@link #removeEvaluation(String)}
+	 */
+	public static final String PARAM_EVALUATION_NAME = "Evaluation name";
+	
+	/**
+	 * Set for verbose output.
+	 * When true is set for this parameter, a sample of the incorrect classifications of every CAS is shown.
+	 */
+	public static final String PARAM_VERBOSE = "Verbose";
+	
+	/**
+	 * Maximal number of incorrect classifications shown per CAS in verbose output
+	 */
+	public static final String PARAM_ERROR_SAMPLE_SIZE = "Error sample size";
+	
+	@ConfigurationParameter(name = PARAM_NULL_TYPE, mandatory = true)
+	private String nullType = null;
+	@ConfigurationParameter(name = PARAM_EXPECTED_ENTITY_TYPE_NUM, mandatory = false)
+	private int expectedEntityTypeNum = 9;
+	@ConfigurationParameter(name = PARAM_FILENAME, mandatory = false)
+	private String filename = null;
+	@ConfigurationParameter(name = PARAM_EVALUATION_NAME, mandatory = false)
+	private String evaluationName = null;
+	@ConfigurationParameter(name = PARAM_FORMAT, mandatory = false)
+	private String format = PredictionSink.Format.CONLL.name();
+	@ConfigurationParameter(name = PARAM_VERBOSE, mandatory = false)
+	private boolean verbose = false;
+	@ConfigurationParameter(name = PARAM_ERROR_SAMPLE_SIZE, mandatory = false)
+	private int errorSampleSize = 100;
+	
+	/**
+	 * Output file of the predictions, open while the collection is processed
+	 */
+	private PredictionSink.Format sinkFormat = null;
+	private PredictionSink sink = null;
+	
+	/**
+	 * Uniform sample of the incorrect classifications of the current CAS (reservoir sampling)
+	 */
+	private String[] errorSample = new String[0];
+	private int errorCount = 0;
+	private final Random random = new Random(0);
+	
+	/**
+	 * The chunk evaluations of the finished collections by their names
+	 */
+	private static final Map<String, ConllEvaluation> EVALUATIONS = new ConcurrentHashMap<>();
+	
+	/**
+	 * Chunk evaluation of all CASes of the collection, computed while the CASes are processed
+	 */
+	private ConllEvaluation evaluation = null;
+	
+	/**
+	 * Ids of the labels, in the order the labels were first seen
+	 */
+	private final Map<String, Integer> labelIds = new HashMap<>();
+	private final List<String> labels = new ArrayList<>();
+	
+	/**
+	 * Confusion matrix of the current JCas: number of tokens by the ids of their gold (row) and predicted (column)
+	 * labels
+	 */
+	private int[][] confusion = new int[0][0];
+	
+	/**
+	 * Predicted annotations of the current token, reused for all tokens
+	 */
+	private final List<NEIOBAnnotation> tokenPredictions = new ArrayList<>();
+	
+	@Override
+	public void initialize(UimaContext context) throws ResourceInitializationException {
+		super.initialize(context);
+		evaluation = new ConllEvaluation();
+		confusion = new int[expectedEntityTypeNum][expectedEntityTypeNum];
+		errorSample = new String[errorSampleSize];
+		try {
+			sinkFormat = PredictionSink.Format.valueOf(format);
+		} catch (IllegalArgumentException e) {
+			throw new ResourceInitializationException(e);
+		}
+	}
+	
+	/**
+	 * Adds an incorrect classification to the sample, replacing a random one if the sample is full.
+	 */
+	private void sampleError(String goldType, String predType, int begin, int end, String text) {
+		int slot = errorCount < errorSample.length ? errorCount : random.nextInt(errorCount + 1);
+		++errorCount;
+		if (slot < errorSample.length)
+			errorSample[slot] = "Gold:\t" + goldType + "\t" + "Pred.:\t" + predType + "\t"
+					+ "(" + begin + ", " + end + ") " + text + " ";
+	}
+	
+	/**
+	 * @param label a label
+	 * @return the id of the label, the confusion matrix has a row and a column for it
+	 */
+	private int getLabelId(String label) {
+		Integer id = labelIds.get(label);
+		if (id != null)
+			return id;
+		id = labels.size();
+		labels.add(label);
+		labelIds.put(label, id);
+		if (id >= confusion.length) {
+			int[][] grown = new int[2 * id + 1][2 * id + 1];
+			for (int i = 0; i < confusion.length; ++i)
+				System.arraycopy(confusion[i], 0, grown[i], 0, confusion.length);
+			confusion = grown;
+		}
+		return id;
+	}
+	
+	/**
+	 * @param name the evaluation name of a NERWriter
+	 * @return the chunk evaluation of the collection processed by the NERWriter, null if it isn't complete (or
+	 * removed before)
+	 */
+	public static ConllEvaluation removeEvaluation(String name) {
+		return EVALUATIONS.remove(name);
+	}
+	
+	/**
+	 * Processes the JCas to write gold/prediction pairs to the log and to calculate statistics.
+	 * @param aJCas a JCas
+	 */
+	@Override
+	public void process(JCas aJCas) throws AnalysisEngineProcessException {
+		for (int[] row : confusion)
+			Arrays.fill(row, 0);
+		errorCount = 0;
+		// the sentences delimit the chunks of the evaluation
+		Iterator<Sentence> sentences = JCasUtil.select(aJCas, Sentence.class).iterator();
+		int sentenceEnd = -1;
+		boolean inSentence = false;
+		try {
+			if (filename != null && sink == null)
+				sink = PredictionSink.create(new File(filename), sinkFormat);
+			/* When classifying, NERReader and NERAnnotator create NEIOBAnnotations independently.
+			 * One is used to store the gold value, the other one to store the predicted value.
+			 * This setup assures that classification can also be done when not in a test situation.
+			 * Here, both pieces of information are combined: the annotations of a token are next to each other in
+			 * the sorted annotation index, so they are collected in a single pass over the index. */
+			Iterator<NEIOBAnnotation> it = JCasUtil.select(aJCas, NEIOBAnnotation.class).iterator();
+			NEIOBAnnotation next = it.hasNext() ? it.next() : null;
+			while (next != null) {
+				int begin = next.getBegin();
+				int end = next.getEnd();
+				String goldType = null;
+				tokenPredictions.clear();
+				while (next != null && next.getBegin() == begin && next.getEnd() == end) {
+					if (next.getPredictValue() != null)
+						tokenPredictions.add(next); // Only consider predicted values
+					if (goldType == null && next.getGoldValue() != null)
+						goldType = next.getGoldValue();
+					next = it.hasNext() ? it.next() : null;
+				}
+				for (NEIOBAnnotation pred : tokenPredictions) {
+					if (goldType == null) {
+						System.err.println("No gold annotation found for "
+								+ "[" + pred.getType().getShortName() + "] " + pred.getCoveredText() + " "
+								+ "(" + pred.getBegin() + ", " + pred.getEnd() + ")");
+						continue; // Only consider predictions for which there are gold values
+					}
+					String predType = pred.getPredictValue();
+					// Evaluate the chunks, sentence by sentence
+					if (begin >= sentenceEnd) {
+						if (inSentence)
+							endSentence();
+						sentenceEnd = Integer.MAX_VALUE;
+						while (sentences.hasNext()) {
+							Sentence sentence = sentences.next();
+							if (sentence.getEnd() > begin) {
+								sentenceEnd = sentence.getEnd();
+								break;
+							}
+						}
+						inSentence = true;
+					}
+					// Append information to evaluation file
+					if (sink != null)
+						sink.writeToken(pred.getCoveredText(), begin, end, goldType, predType);
+					evaluation.add(goldType, predType);
+					// Collect statistics
+					++confusion[getLabelId(goldType)][getLabelId(predType)];
+					// Sample information for the log
+					if (verbose && !goldType.equals(predType))
+						sampleError(goldType, predType, begin, end, pred.getCoveredText());
+				}
+			}
+			if (inSentence)
+				endSentence();
+			if (sink != null)
+				sink.endDocument();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		if (verbose) {
+			StringBuilder s = new StringBuilder();
+			s.append("-- Wrong NER Annotations (" + Math.min(errorCount, errorSample.length) + " of " + errorCount
+					+ ") --" + LS);
+			s.append(LS);
+			for (int i = 0; i < errorCount && i < errorSample.length; ++i)
+				s.append(errorSample[i] + LS);
+			s.append(LS);
+			getContext().getLogger().log(Level.INFO, s.toString());
+		}
+		// Lists the ids of the labels of this JCas
+		int[] entityTypes = new int[labels.size()];
+		int entityTypeNum = 0;
+		for (int id = 0; id < labels.size(); ++id) {
+			boolean seen = false;
+			for (int other = 0; other < labels.size() && !seen; ++other)
+				seen = confusion[id][other] != 0 || confusion[other][id] != 0;
+			if (seen)
+				entityTypes[entityTypeNum++] = id;
+		}
+		// Compute statistics
+		int truePositives = 0;
+		int falsePositives = 0;
+		int trueNegatives = 0;
+		int falseNegatives = 0;
+		int correct = 0;
+		int all = 0;
+		// Append statistics onto log
+		StringBuilder s = new StringBuilder();
+		s.append("-- Statistics --" + LS);
+		s.append(LS);
+		s.append("Classifications (correct classes on the left, predictions on top):" + LS);
+		s.append("\t");
+		for (int i = 0; i < entityTypeNum; ++i)
+			s.append(labels.get(entityTypes[i]) + "\t");
+		s.append(LS);
+		for (int i = 0; i < entityTypeNum; ++i) {
+			int goldId = entityTypes[i];
+			boolean goldNull = labels.get(goldId).equals(nullType);
+			s.append(labels.get(goldId) + "\t");
+			for (int j = 0; j < entityTypeNum; ++j) {
+				int predId = entityTypes[j];
+				int num = confusion[goldId][predId];
+				s.append(num + "\t");
+				if (goldNull)
+					if (labels.get(predId).equals(nullType)) {
+						trueNegatives += num;
+						correct += num;
+					}
+					else
+						falsePositives += num;
+				else
+					if (labels.get(predId).equals(nullType))
+						falseNegatives += num;
+					else {
+						truePositives += num;
+						if (goldId == predId)
+							correct += num;
+					}
+				all += num;
+			}
+			s.append(LS);
+		}
+		s.append(LS);
+		// Append aggregate statistics onto log
+		s.append("Correct classifications:" + LS);
+		s.append("  " + correct + "/" + all + " (" + (((double) correct * 100) / all) + "%)" + LS);
+		s.append(LS);
+		s.append("Aggregate classification results (correct on the left, predictions on top):" + LS);
+		s.append("\tNE\tO" + LS);
+		s.append("NE\t" + truePositives + "\t" + falseNegatives + LS);
+		s.append("O\t" + falsePositives + "\t" + trueNegatives + LS);
+		s.append(LS);
+		int correctNEs = correct - trueNegatives;
+		int NEs = all - trueNegatives - falsePositives;
+		s.append("Correct classifications for tokens that are named entities:" + LS);
+		s.append("  " + correctNEs + "/" + NEs + " (" + (((double) correctNEs * 100) / NEs) + "%)" + LS);
+		s.append(LS);
+		getContext().getLogger().log(Level.INFO, s.toString());
+	}
+	
+	private void endSentence() throws IOException {
+		evaluation.endSentence();
+		if (sink != null)
+			sink.endSentence();
+	}
+	
+	/**
+	 * Closes the output file, logs the chunk evaluation of the collection and publishes it under the evaluation name.
+	 */
+	@Override
+	public void collectionProcessComplete() throws AnalysisEngineProcessException {
+		super.collectionProcessComplete();
+		closeSink();
+		getContext().getLogger().log(Level.INFO, "-- Chunk evaluation --" + LS + LS + evaluation);
+		if (evaluationName != null)
+			EVALUATIONS.put(evaluationName, evaluation);
+		evaluation = new ConllEvaluation();
+	}
+	
+	@Override
+	public void destroy() {
+		closeSink();
+		super.destroy();
+	}
+	
+	private void closeSink() {
+		if (sink == null)
+			return;
+		try {
+			sink.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		sink = null;
+	}
+}
@@ -0,0 +1,315 @@
+package de.unihamburg.informatik.nlp4web.tutorial.tut5.writer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Streams the gold and predicted labels of the tokens of all documents into one file. The file is opened once and
+ * written through a fixed size buffer, so the memory use doesn't depend on the number of tokens.
+ * <p>
+ * The format is chosen by {@link Format}, other formats can be added by subclassing.
+ */
+public abstract class PredictionSink implements Closeable {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * The formats of the predictions
+	 */
+	public enum Format {
+		/**
+		 * Lines of token, gold label and predicted label separated by spaces, an empty line after every sentence
+		 * (the input of conlleval and {@link ConllEvaluation})
+		 */
+		CONLL,
+		/**
+		 * One JSON object per token: document, sentence, begin, end, token, gold and predicted label
+		 */
+		JSONL,
+		/**
+		 * Compact binary records (see {@link BinarySink})
+		 */
+		BINARY
+	}
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	/**
+	 * Replaces malformed text (e.g. a lone surrogate in a token) by '?' like String.getBytes, so a record is never
+	 * cut short
+	 */
+	private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+	/**
+	 * Text of the current record, reused for all records
+	 */
+	protected final StringBuilder line = new StringBuilder();
+
+	/**
+	 * @param file the file to write the predictions to, an existing file is overwritten
+	 * @throws IOException if the file can't be opened
+	 */
+	protected PredictionSink(File file) throws IOException {
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null)
+			parent.mkdirs();
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	/**
+	 * @param file   the file to write the predictions to, an existing file is overwritten
+	 * @param format the format of the file
+	 * @return a sink writing the format
+	 * @throws IOException if the file can't be opened
+	 */
+	public static PredictionSink create(File file, Format format) throws IOException {
+		switch (format) {
+		case CONLL:
+			return new ConllSink(file);
+		case JSONL:
+			return new JsonLinesSink(file);
+		case BINARY:
+			return new BinarySink(file);
+		default:
+			throw new IllegalArgumentException("Unknown format " + format);
+		}
+	}
+
+	/**
+	 * Writes the next token of the current sentence.
+	 *
+	 * @param token     the covered text of the token
+	 * @param begin     the begin of the token in the document
+	 * @param end       the end of the token in the document
+	 * @param gold      the gold label
+	 * @param predicted the predicted label
+	 * @throws IOException if error while writing
+	 */
+	public abstract void writeToken(String token, int begin, int end, String gold, String predicted)
+			throws IOException;
+
+	/**
+	 * Ends the current sentence.
+	 *
+	 * @throws IOException if error while writing
+	 */
+	public abstract void endSentence() throws IOException;
+
+	/**
+	 * Ends the current document.
+	 *
+	 * @throws IOException if error while writing
+	 */
+	public abstract void endDocument() throws IOException;
+
+	/**
+	 * Encodes the record in {@link #line} as UTF-8 into the buffer and clears it.
+	 */
+	protected void writeLine() throws IOException {
+		CharBuffer chars = CharBuffer.wrap(line);
+		encoder.reset();
+		CoderResult result;
+		while ((result = encoder.encode(chars, buffer, true)).isOverflow())
+			flush();
+		if (result.isError())
+			result.throwException();
+		while ((result = encoder.flush(buffer)).isOverflow())
+			flush();
+		if (result.isError())
+			result.throwException();
+		line.setLength(0);
+	}
+
+	/**
+	 * @param b a byte to append to the buffer
+	 */
+	protected void writeByte(int b) throws IOException {
+		if (!buffer.hasRemaining())
+			flush();
+		buffer.put((byte) b);
+	}
+
+	/**
+	 * @param value a non-negative int to append to the buffer in 7 bit groups, least significant group first
+	 */
+	protected void writeVarInt(int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		writeByte(value);
+	}
+
+	/**
+	 * Writes the buffer to the file.
+	 */
+	public void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!channel.isOpen())
+			return;
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+
+	private static class ConllSink extends PredictionSink {
+
+		private ConllSink(File file) throws IOException {
+			super(file);
+		}
+
+		@Override
+		public void writeToken(String token, int begin, int end, String gold, String predicted) throws IOException {
+			line.append(token).append(' ').append(gold).append(' ').append(predicted).append('\n');
+			writeLine();
+		}
+
+		@Override
+		public void endSentence() throws IOException {
+			line.append('\n');
+			writeLine();
+		}
+
+		@Override
+		public void endDocument() {
+		}
+	}
+
+	private static class JsonLinesSink extends PredictionSink {
+
+		private int document = 0;
+		private int sentence = 0;
+
+		private JsonLinesSink(File file) throws IOException {
+			super(file);
+		}
+
+		@Override
+		public void writeToken(String token, int begin, int end, String gold, String predicted) throws IOException {
+			line.append("{\"document\":").append(document).append(",\"sentence\":").append(sentence)
+					.append(",\"begin\":").append(begin).append(",\"end\":").append(end).append(",\"token\":");
+			appendString(token);
+			line.append(",\"gold\":");
+			appendString(gold);
+			line.append(",\"predicted\":");
+			appendString(predicted);
+			line.append("}\n");
+			writeLine();
+		}
+
+		private void appendString(String value) {
+			line.append('"');
+			for (int i = 0; i < value.length(); ++i) {
+				char c = value.charAt(i);
+				if (c == '"' || c == '\\')
+					line.append('\\').append(c);
+				else if (c < ' ')
+					line.append(String.format("\\u%04x", (int) c));
+				else
+					line.append(c);
+			}
+			line.append('"');
+		}
+
+		@Override
+		public void endSentence() {
+			++sentence;
+		}
+
+		@Override
+		public void endDocument() {
+			++document;
+			sentence = 0;
+		}
+	}
+
+	/**
+	 * Binary records, every record starts with its type byte, all numbers are var ints:
+	 * <ul>
+	 * <li>{@value #LABEL}: id and UTF-8 length and bytes of a label, written before the first use of the label</li>
+	 * <li>{@value #TOKEN}: begin of the token relative to the end of the previous token of the document, length of
+	 * the token, id of the gold label, id of the predicted label</li>
+	 * <li>{@value #SENTENCE_END}: end of the sentence</li>
+	 * <li>{@value #DOCUMENT_END}: end of the document</li>
+	 * </ul>
+	 * The file starts with the magic bytes "NERP" and the version 1.
+	 */
+	static class BinarySink extends PredictionSink {
+
+		static final int LABEL = 1;
+		static final int TOKEN = 2;
+		static final int SENTENCE_END = 3;
+		static final int DOCUMENT_END = 4;
+
+		private final Map<String, Integer> labelIds = new HashMap<>();
+		private int lastEnd = 0;
+
+		private BinarySink(File file) throws IOException {
+			super(file);
+			for (char c : "NERP".toCharArray())
+				writeByte(c);
+			writeByte(1);
+		}
+
+		@Override
+		public void writeToken(String token, int begin, int end, String gold, String predicted) throws IOException {
+			int goldId = getLabelId(gold);
+			int predictedId = getLabelId(predicted);
+			writeByte(TOKEN);
+			writeVarInt(Math.max(0, begin - lastEnd));
+			writeVarInt(end - begin);
+			writeVarInt(goldId);
+			writeVarInt(predictedId);
+			lastEnd = Math.max(lastEnd, end);
+		}
+
+		private int getLabelId(String label) throws IOException {
+			Integer id = labelIds.get(label);
+			if (id != null)
+				return id;
+			id = labelIds.size();
+			labelIds.put(label, id);
+			byte[] bytes = label.getBytes(StandardCharsets.UTF_8);
+			writeByte(LABEL);
+			writeVarInt(id);
+			writeVarInt(bytes.length);
+			for (byte b : bytes)
+				writeByte(b);
+			return id;
+		}
+
+		@Override
+		public void endSentence() throws IOException {
+			writeByte(SENTENCE_END);
+		}
+
+		@Override
+		public void endDocument() throws IOException {
+			writeByte(DOCUMENT_END);
+			lastEnd = 0;
+		}
+	}
+}
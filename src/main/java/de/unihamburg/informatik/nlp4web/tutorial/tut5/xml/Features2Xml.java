@@ -9,16 +9,32 @@ import org.apache.uima.UIMAFramework;
 import org.apache.uima.util.Level;
 import org.cleartk.ml.feature.extractor.FeatureExtractor1;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 public class Features2Xml {
 
     private static final String OUTPUT_DIRECTORY = "src/main/resources/feature/";
 
+    /**
+     * prefix of the file names of the feature ablation test configurations
+     */
+    public static final String FEATURE_ABLATION_FILE_PREFIX = "featureExtractorCombination_";
+
+    /**
+     * names of the feature extractors (in the order of
+     * {@link FeatureExtractorFactory#createAblationFeatureExtractors()}), just for better readability in file names
+     */
+    public static final List<String> EXTRACTOR_NAMES = Collections.unmodifiableList(Arrays.asList(
+            "stem", "tokenFeature", "contextFeature", "nameList", "cityList", "countryList", "miscList", "orgList",
+            "locList", "gazetteerSpan"));
+
     private static void generateTokenFeatureExtractors(String filename) throws IOException {
 
         List<FeatureExtractor1<Token>> featureExtractors = FeatureExtractorFactory.createAllFeatureExtractors();
@@ -66,7 +82,7 @@ public class Features2Xml {
     public static void generateFeatureAblationTestFiles(Integer minUsedExtractors, String outputDir) throws IOException {
 
         //create all feature extractors
-        List<FeatureExtractor1<Token>> allFeatureExtractors = FeatureExtractorFactory.createAllFeatureExtractors();
+        List<FeatureExtractor1<Token>> allFeatureExtractors = FeatureExtractorFactory.createAblationFeatureExtractors();
 
         //compute all possible combinations of the feature extractors
         int numOfCombinations = 0;
@@ -78,42 +94,63 @@ public class Features2Xml {
         }
         UIMAFramework.getLogger().log(Level.INFO, "Generating " + numOfCombinations + " different combinations of FeatureExtractor config files for the Feature Ablation Test!");
 
-        //list of extractor names just for better readability in file names
-        List<String> extractorNames = new ArrayList<>();
-        extractorNames.add("stem");
-        extractorNames.add("tokenFeature");
-        extractorNames.add("contextFeature");
-        extractorNames.add("nameList");
-        extractorNames.add("cityList");
-        extractorNames.add("countryList");
-        extractorNames.add("miscList");
-        extractorNames.add("orgList");
-        extractorNames.add("locList");
-
-
-        StringBuilder fileName = new StringBuilder();
-        fileName.append(outputDir).append("featureExtractorCombination_");
         for (Combinations combination : combinations) {
             for (int[] tuple : combination) {
                 //the tuple contains the indices of feature extractors that'll be used in this combination
-                List<FeatureExtractor1<Token>> featureExtractorCombination = new ArrayList<>();
-                for (int i : tuple) {
-                    //use the current extractor in this combination
-                    featureExtractorCombination.add(allFeatureExtractors.get(i));
-                    //append the extractors name to the file name (better readability)
-                    fileName.append(extractorNames.get(i)).append(",");
-                    //remove last "," in file name
-                }
-                fileName.setLength(fileName.length() - 1);
-                fileName.append(".xml");
-                writeXML(fileName.toString(), featureExtractorCombination);
-                //reset filename
-                fileName.setLength(0);
-                fileName.append(outputDir).append("featureExtractorCombination_");
+                writeFeatureAblationTestFile(allFeatureExtractors, tuple, outputDir);
             }
         }
     }
 
+    /**
+     * Writes the configuration file of one combination of feature extractors
+     *
+     * @param extractors the indices of the feature extractors (ascending)
+     * @param outputDir  the directory of the configuration file
+     * @return the configuration file
+     */
+    public static File writeFeatureAblationTestFile(int[] extractors, String outputDir) throws IOException {
+        return writeFeatureAblationTestFile(FeatureExtractorFactory.createAblationFeatureExtractors(), extractors,
+                outputDir);
+    }
+
+    private static File writeFeatureAblationTestFile(List<FeatureExtractor1<Token>> allFeatureExtractors,
+                                                     int[] extractors, String outputDir) throws FileNotFoundException {
+        List<FeatureExtractor1<Token>> featureExtractorCombination = new ArrayList<>();
+        StringBuilder fileName = new StringBuilder();
+        fileName.append(outputDir).append(FEATURE_ABLATION_FILE_PREFIX);
+        for (int i : extractors) {
+            //use the current extractor in this combination
+            featureExtractorCombination.add(allFeatureExtractors.get(i));
+            //append the extractors name to the file name (better readability)
+            fileName.append(EXTRACTOR_NAMES.get(i)).append(",");
+        }
+        //remove last "," in file name
+        fileName.setLength(fileName.length() - 1);
+        fileName.append(".xml");
+        writeXML(fileName.toString(), featureExtractorCombination);
+        return new File(fileName.toString());
+    }
+
+    /**
+     * @param configFileName the name of a configuration file written by {@link #generateFeatureAblationTestFiles}
+     * @return the indices of the feature extractors of the configuration (ascending), null if the file is no feature
+     * ablation test configuration
+     */
+    public static int[] getFeatureAblationExtractors(String configFileName) {
+        if (!configFileName.startsWith(FEATURE_ABLATION_FILE_PREFIX) || !configFileName.endsWith(".xml"))
+            return null;
+        String[] names = configFileName.substring(FEATURE_ABLATION_FILE_PREFIX.length(),
+                configFileName.length() - ".xml".length()).split(",");
+        int[] extractors = new int[names.length];
+        for (int i = 0; i < names.length; ++i) {
+            extractors[i] = EXTRACTOR_NAMES.indexOf(names[i]);
+            if (extractors[i] < 0)
+                return null;
+        }
+        return extractors;
+    }
+
     public static void generateFeatureExtractionCombination(String fileName) throws IOException {
         // the  result (best combination of extractors) of the ablation test was:
         // stem,tokenFeature,contextFeature,nameList,cityList,countryList,locList